@@ -1,6 +1,7 @@
 package org.point85.domain.collector;
 
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.DiscriminatorColumn;
@@ -10,6 +11,8 @@ import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.point85.domain.DomainUtils;
 import org.point85.domain.persistence.DataSourceConverter;
 import org.point85.domain.plant.NamedObject;
@@ -19,6 +22,8 @@ import org.point85.domain.plant.NamedObject;
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "TYPE", discriminatorType = DiscriminatorType.STRING)
 @AttributeOverride(name = "primaryKey", column = @Column(name = "SOURCE_KEY"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 public abstract class CollectorDataSource extends NamedObject {
 	public static final int DEFAULT_UPDATE_PERIOD_MSEC = 5000;
@@ -6,14 +6,21 @@ import java.net.InetAddress;
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
@@ -54,6 +61,8 @@ import org.point85.domain.mqtt.MqttMessageListener;
 import org.point85.domain.mqtt.MqttOeeClient;
 import org.point85.domain.mqtt.MqttSource;
 import org.point85.domain.mqtt.QualityOfService;
+import org.point85.domain.oee.LiveEquipmentLoss;
+import org.point85.domain.oee.RollupManager;
 import org.point85.domain.opc.da.DaOpcClient;
 import org.point85.domain.opc.da.OpcDaDataChangeListener;
 import org.point85.domain.opc.da.OpcDaMonitoredGroup;
@@ -65,6 +74,7 @@ import org.point85.domain.opc.da.TagItemInfo;
 import org.point85.domain.opc.ua.OpcUaAsynchListener;
 import org.point85.domain.opc.ua.OpcUaSource;
 import org.point85.domain.opc.ua.UaOpcClient;
+import org.point85.domain.persistence.EventPartitionManager;
 import org.point85.domain.persistence.PersistenceService;
 import org.point85.domain.plant.Equipment;
 import org.point85.domain.plant.EquipmentEventResolver;
@@ -92,9 +102,48 @@ public class CollectorService
 	// sec between status checks
 	private static final long HEARTBEAT_SEC = 60;
 
-	// thread pool service
+	// thread pool service for commands
 	private final ExecutorService executorService = Executors.newCachedThreadPool();
 
+	// ordered per-equipment processing of data source events
+	private final EventPipeline eventPipeline = new EventPipeline();
+
+	// group commit of resolved events
+	private final OeeEventWriter eventWriter = new OeeEventWriter();
+
+	// latest non-production event of each equipment
+	private final LastEventCache lastEventCache = new LastEventCache();
+
+	// write-ahead journal of events not yet committed
+	private EventJournal eventJournal;
+
+	// folder for the journal, null to disable it
+	private String journalDirectory = EventJournal.DEFAULT_DIRECTORY;
+
+	// equipment with events from this collector
+	private final Set<Equipment> collectedEquipment = ConcurrentHashMap.newKeySet();
+
+	// removes expired events in the background
+	private final RetentionJob retentionJob = new RetentionJob(() -> new ArrayList<>(collectedEquipment));
+
+	// publishes resolution messages for events saved in the background
+	private final ExecutorService notificationExecutor = Executors.newSingleThreadExecutor();
+
+	// current shift and day losses by equipment
+	private final Map<Equipment, LiveEquipmentLoss> liveLosses = new ConcurrentHashMap<>();
+
+	// optional rollups of the saved events
+	private RollupManager rollupManager;
+
+	// applies the rollup increments in the order saved
+	private final ExecutorService rollupExecutor = Executors.newSingleThreadExecutor();
+
+	// latest state change save of each equipment
+	private final Map<Equipment, CompletableFuture<OeeEvent>> pendingStateChanges = new ConcurrentHashMap<>();
+
+	// action when a pipeline lane is full, by data source type
+	private final Map<DataSourceType, OverloadPolicy> overloadPolicies = new ConcurrentHashMap<>();
+
 	// timer to broadcast status
 	private Timer heartbeatTimer;
 
@@ -163,6 +212,7 @@ public class CollectorService
 		gson = new Gson();
 		appContext = new OeeContext();
 		equipmentResolver = new EquipmentEventResolver();
+		equipmentResolver.setLastEventCache(lastEventCache);
 		collectors = new ArrayList<>();
 	}
 
@@ -625,6 +675,10 @@ public class CollectorService
 				}
 			}
 
+			if (resolver.getEquipment() != null) {
+				collectedEquipment.add(resolver.getEquipment());
+			}
+
 			// add to our collectors
 			if (!collectors.contains(collector)) {
 				collectors.add(collector);
@@ -691,6 +745,20 @@ public class CollectorService
 	}
 
 	public synchronized void startDataCollection() throws Exception {
+		// open events to close off
+		if (!lastEventCache.isLoaded()) {
+			lastEventCache.load(collectedEquipment);
+		}
+
+		// compile the resolver scripts in the engine of the lane that runs them
+		eventPipeline.executeOnEachLane(lane -> {
+			try {
+				equipmentResolver
+						.precompile(resolver -> eventPipeline.getLaneIndex(resolver.getEquipment()) == lane);
+			} catch (Exception e) {
+				onException("Unable to compile resolver scripts.", e);
+			}
+		});
 
 		// collect data for OPC DA
 		monitorOpcDaTags(opcDaSubscriptionMap);
@@ -765,6 +833,15 @@ public class CollectorService
 		// connect to broker for notifications and commands
 		startPublishingNotifications();
 
+		// recover events that were not committed
+		openJournal();
+
+		// batch database writes
+		eventWriter.start();
+
+		// remove expired events
+		retentionJob.start();
+
 		// start collecting data
 		startDataCollection();
 
@@ -948,6 +1025,7 @@ public class CollectorService
 	public synchronized void stopDataCollection() throws Exception {
 		// clear resolution caches
 		equipmentResolver.clearCache();
+		lastEventCache.clear();
 
 		// stop polling file servers
 		for (FileEventClient fileClient : appContext.getFileEventClients()) {
@@ -1016,6 +1094,20 @@ public class CollectorService
 			onException("Unable to stop data collection.", e);
 		}
 
+		// drain the event lanes
+		eventPipeline.shutdown(1000);
+
+		retentionJob.stop();
+
+		// commit pending writes
+		eventWriter.stop(5000);
+		notificationExecutor.shutdown();
+		rollupExecutor.shutdown();
+
+		if (eventJournal != null) {
+			eventJournal.close();
+		}
+
 		// shutdown executor service
 		executorService.shutdown();
 
@@ -1141,49 +1233,176 @@ public class CollectorService
 		return this.executorService;
 	}
 
+	protected EventPipeline getEventPipeline() {
+		return this.eventPipeline;
+	}
+
+	public OeeEventWriter getEventWriter() {
+		return this.eventWriter;
+	}
+
+	public String getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	public void setJournalDirectory(String directory) {
+		this.journalDirectory = directory;
+	}
+
+	private void openJournal() throws Exception {
+		if (journalDirectory == null || eventJournal != null) {
+			return;
+		}
+
+		eventJournal = new EventJournal(journalDirectory);
+		eventJournal.open();
+
+		// replay in the original order
+		Map<Long, EventJournal.UnitOfWork> pending = eventJournal.readPending();
+
+		boolean replayLater = false;
+
+		for (Entry<Long, EventJournal.UnitOfWork> entry : pending.entrySet()) {
+			EventJournal.UnitOfWork unit = entry.getValue();
+
+			if (!replayLater) {
+				try {
+					// it may have been committed before it was marked as applied
+					OeeEventWriter.saveJournaled(unit.getRecords(), unit.getInserted());
+					eventJournal.markApplied(entry.getKey());
+					continue;
+				} catch (Exception e) {
+					if (!OeeEventWriter.isUnavailable(e)) {
+						// discard it
+						eventJournal.markApplied(entry.getKey());
+						onException("Discarding journaled event.", e);
+						continue;
+					}
+					onException("Unable to replay the event journal, retrying in the background.", e);
+					replayLater = true;
+				}
+			}
+
+			// by the writer before any new event
+			eventWriter.resubmit(entry.getKey(), unit.getRecords(), unit.getInserted()).thenRun(() -> {
+				for (KeyedObject record : unit.getRecords()) {
+					lastEventCache.invalidate(((OeeEvent) record).getEquipment());
+				}
+			});
+		}
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Replayed event journal, " + eventJournal.getPendingCount() + " events still pending");
+		}
+
+		eventWriter.setJournal(eventJournal);
+	}
+
+	public RetentionJob getRetentionJob() {
+		return this.retentionJob;
+	}
+
+	public EventPartitionManager getPartitionManager() {
+		return retentionJob.getPartitionManager();
+	}
+
+	public void setPartitionManager(EventPartitionManager partitionManager) {
+		retentionJob.setPartitionManager(partitionManager);
+	}
+
+	/**
+	 * Get the losses accumulated for the equipment's current shift and day since
+	 * the collector started
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @return {@link LiveEquipmentLoss} or null if no event has been recorded
+	 */
+	public LiveEquipmentLoss getLiveLoss(Equipment equipment) {
+		return liveLosses.get(equipment);
+	}
+
+	public RollupManager getRollupManager() {
+		return rollupManager;
+	}
+
+	public void setRollupManager(RollupManager rollupManager) {
+		this.rollupManager = rollupManager;
+	}
+
+	public OverloadPolicy getOverloadPolicy(DataSourceType sourceType) {
+		OverloadPolicy policy = overloadPolicies.get(sourceType);
+		return policy != null ? policy : OverloadPolicy.BLOCK;
+	}
+
+	public void setOverloadPolicy(DataSourceType sourceType, OverloadPolicy policy) {
+		// read by the source callback threads
+		if (policy != null) {
+			overloadPolicies.put(sourceType, policy);
+		} else {
+			overloadPolicies.remove(sourceType);
+		}
+	}
+
+	// events for the same equipment are processed in order on one lane
+	private void dispatchEvent(DataSourceType sourceType, String sourceId, Runnable task) {
+		dispatchEvent(sourceId, getOverloadPolicy(sourceType), task);
+	}
+
+	private void dispatchEvent(String sourceId, OverloadPolicy policy, Runnable task) {
+		Object key = sourceId;
+
+		try {
+			key = equipmentResolver.getResolver(sourceId).getEquipment();
+		} catch (Exception e) {
+			// no resolver, the task will report it
+		}
+		getEventPipeline().execute(key, sourceId, policy, task);
+	}
+
+	// equipment events go to a lane, commands to the thread pool
+	private void dispatchMessage(DataSourceType sourceType, ApplicationMessage message, Runnable task) {
+		if (message.getMessageType().equals(MessageType.EQUIPMENT_EVENT)) {
+			dispatchEvent(sourceType, ((EquipmentEventMessage) message).getSourceId(), task);
+		} else {
+			getExecutorService().execute(task);
+		}
+	}
+
 	// HTTP request
 	@Override
 	public void onHttpEquipmentEvent(String sourceId, String dataValue, String timestamp, String reason) {
-		getExecutorService().execute(new HttpTask(sourceId, dataValue, timestamp, reason));
+		dispatchEvent(DataSourceType.HTTP, sourceId, new HttpTask(sourceId, dataValue, timestamp, reason));
 	}
 
 	// File request
 	@Override
 	public void resolveFileEvents(FileEventClient client, String sourceId, List<File> files) {
-		getExecutorService().execute(new FileTask(client, sourceId, files));
+		dispatchEvent(DataSourceType.FILE, sourceId, new FileTask(client, sourceId, files));
 	}
 
 	// Modbus event
 	@Override
 	public void resolveModbusEvents(ModbusEvent event) {
-		getExecutorService().execute(new ModbusTask(event));
+		dispatchEvent(DataSourceType.MODBUS, event.getSourceId(), new ModbusTask(event));
 	}
 
 	@Override
 	public void onOpcDaDataChange(OpcDaMonitoredItem item) {
-		// execute on separate thread
-		getExecutorService().execute(new OpcDaTask(item));
+		// execute on the equipment's lane
+		dispatchEvent(DataSourceType.OPC_DA, item.getPathName(), new OpcDaTask(item));
 	}
 
-	private void purgeRecords(OeeEvent event) throws Exception {
-		Equipment equipment = event.getEquipment();
-
-		Duration days = equipment.findRetentionPeriod();
-
-		if (days == null) {
-			days = Equipment.DEFAULT_RETENTION_PERIOD;
-		}
-
-		OffsetDateTime cutoff = OffsetDateTime.now().minusDays(days.toDays());
-
-		logger.info("Purging records for equipment " + equipment.getName() + " older than " + cutoff);
-
-		// purge database tables
-		PersistenceService.instance().purge(equipment, cutoff);
+	public OeeEvent saveOeeEvent(OeeEvent event) throws Exception {
+		return waitForSave(saveOeeEventAsync(event, true));
 	}
 
-	public OeeEvent saveOeeEvent(OeeEvent event) throws Exception {
+	// save the event in the next batch if the writer is running, committing it at
+	// once if the caller waits for it
+	private CompletableFuture<OeeEvent> saveOeeEventAsync(OeeEvent event, boolean wait) throws Exception {
 		Equipment equipment = event.getEquipment();
+
+		// before the last events are closed off
+		recordLiveLoss(event);
 		Duration days = equipment.findRetentionPeriod();
 
 		if (days != null && days.equals(Duration.ZERO)) {
@@ -1191,24 +1410,106 @@ public class CollectorService
 			if (logger.isInfoEnabled()) {
 				logger.info("Retention period is zero.  No record will be saved.");
 			}
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
 		if (logger.isInfoEnabled()) {
 			logger.info("Saving OEE event to database: " + event);
 		}
 
+		// expired by the retention job
+		collectedEquipment.add(equipment);
+
+		OeeEventType type = event.getEventType();
+
+		if (!eventWriter.isRunning()) {
+			// save records now
+			List<OeeEvent> rollupEvents = new ArrayList<>();
+			List<KeyedObject> savedRecords = null;
+
+			try {
+				savedRecords = PersistenceService.instance().save(createRecords(event, rollupEvents));
+			} catch (Exception e) {
+				// the closed off record was not saved
+				lastEventCache.invalidate(equipment);
+				throw e;
+			}
+			lastEventCache.update((OeeEvent) savedRecords.get(0));
+			rollUp(rollupEvents);
+
+			return CompletableFuture.completedFuture((OeeEvent) savedRecords.get(0));
+		}
+
+		if (type.isProduction()) {
+			List<KeyedObject> records = new ArrayList<>();
+			records.add(event);
+
+			CompletableFuture<OeeEvent> saved = eventWriter.submit(records, wait)
+					.thenApply(savedRecords -> (OeeEvent) savedRecords.get(0));
+			saved.thenRun(() -> rollUp(Collections.singletonList(event)));
+
+			return saved;
+		}
+
+		// the next state change of the equipment closes off the committed record,
+		// so it is submitted once this one is committed instead of blocking the lane
+		CompletableFuture<OeeEvent> previous = pendingStateChanges.get(equipment);
+		CompletableFuture<?> ready = previous != null ? previous : eventWriter.whenReplayed();
+
+		CompletableFuture<OeeEvent> saved = ready.handle((result, failure) -> null)
+				.thenCompose(result -> submitStateChange(event));
+
+		pendingStateChanges.put(equipment, saved);
+		saved.whenComplete((savedEvent, failure) -> pendingStateChanges.remove(equipment, saved));
+
+		return saved;
+	}
+
+	private CompletableFuture<OeeEvent> submitStateChange(OeeEvent event) {
+		Equipment equipment = event.getEquipment();
+		List<OeeEvent> rollupEvents = new ArrayList<>();
+
+		try {
+			// committed without waiting for the batch to fill
+			return eventWriter.submit(createRecords(event, rollupEvents), true)
+					.thenApply(savedRecords -> (OeeEvent) savedRecords.get(0)).whenComplete((savedEvent, failure) -> {
+						if (failure != null) {
+							// the closed off record was not saved
+							lastEventCache.invalidate(equipment);
+						} else {
+							lastEventCache.update(savedEvent);
+							rollUp(rollupEvents);
+						}
+					});
+		} catch (Exception e) {
+			lastEventCache.invalidate(equipment);
+
+			CompletableFuture<OeeEvent> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	// the event and the previous event it closes off, if not summarized
+	private List<KeyedObject> createRecords(OeeEvent event, List<OeeEvent> rollupEvents) {
 		List<KeyedObject> records = new ArrayList<>();
 		records.add(event);
 
-		// close off previous events if not summarized
+		// events with a loss or quantity to roll up
+		rollupEvents.add(event);
+
 		OeeEventType type = event.getEventType();
 
 		if (!type.isProduction() && event.getOffsetEndTime() == null) {
 			// availability, material or job change
-			OeeEvent lastRecord = PersistenceService.instance().fetchLastEvent(event.getEquipment(), type);
+			OeeEvent lastRecord = lastEventCache.getLastEvent(event.getEquipment(), type);
 
 			if (lastRecord != null) {
+				if (lastRecord.getOffsetEndTime() == null) {
+					// not rolled up while open
+					rollupEvents.add(lastRecord);
+				}
+
 				lastRecord.setOffsetEndTime(event.getOffsetStartTime());
 				Duration duration = Duration.between(lastRecord.getStartTime(), lastRecord.getEndTime());
 				lastRecord.setDuration(duration);
@@ -1216,16 +1517,65 @@ public class CollectorService
 				records.add(lastRecord);
 			}
 		}
+		return records;
+	}
+
+	private void recordLiveLoss(OeeEvent event) {
+		Equipment equipment = event.getEquipment();
+
+		try {
+			LiveEquipmentLoss liveLoss = liveLosses.get(equipment);
+
+			if (liveLoss == null) {
+				liveLoss = new LiveEquipmentLoss(equipment);
 
-		// save records
-		List<KeyedObject> savedRecords = PersistenceService.instance().save(records);
+				// resume the setup and availability in effect
+				for (OeeEventType type : new OeeEventType[] { OeeEventType.MATL_CHANGE, OeeEventType.AVAILABILITY }) {
+					OeeEvent lastEvent = lastEventCache.getLastEvent(equipment, type);
 
-		// purge old data
-		if (!type.isProduction()) {
-			purgeRecords(event);
+					if (lastEvent != null && lastEvent.getOffsetEndTime() == null) {
+						liveLoss.record(lastEvent);
+					}
+				}
+				liveLosses.put(equipment, liveLoss);
+			}
+			liveLoss.record(event);
+		} catch (Exception e) {
+			logger.warn("Unable to record the live loss of event " + event + ". " + e.getMessage());
 		}
+	}
+
+	// add committed events to the rollups in the background
+	private void rollUp(List<OeeEvent> events) {
+		RollupManager manager = rollupManager;
 
-		return (OeeEvent) savedRecords.get(0);
+		if (manager == null) {
+			return;
+		}
+
+		try {
+			rollupExecutor.execute(() -> {
+				try {
+					manager.update(events);
+				} catch (Exception e) {
+					logger.error("Unable to update the OEE rollups.", e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// shutting down
+			logger.warn("OEE rollups not updated for " + events.size() + " events");
+		}
+	}
+
+	private OeeEvent waitForSave(CompletableFuture<OeeEvent> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
 	}
 
 	@Override
@@ -1240,7 +1590,8 @@ public class CollectorService
 
 	@Override
 	public void onOpcUaSubscription(DataValue dataValue, UaMonitoredItem item) {
-		getExecutorService().execute(new OpcUaTask(dataValue, item));
+		String sourceId = item.getReadValueId().getNodeId().toParseableString();
+		dispatchEvent(DataSourceType.OPC_UA, sourceId, new OpcUaTask(dataValue, item));
 	}
 
 	public void onException(String preface, Exception any) {
@@ -1284,31 +1635,36 @@ public class CollectorService
 	@Override
 	public void onRmqMessage(ApplicationMessage message) {
 		// execute on worker thread
-		RmqTask task = new RmqTask(message);
-		executorService.execute(task);
+		dispatchMessage(DataSourceType.RMQ, message, new RmqTask(message));
 	}
 
 	@Override
 	public void onJmsMessage(ApplicationMessage message) {
 		// execute on worker thread
-		executorService.execute(new JmsTask(message));
+		dispatchMessage(DataSourceType.JMS, message, new JmsTask(message));
 	}
 
 	@Override
 	public void onMqttMessage(ApplicationMessage message) {
 		// execute on worker thread
-		executorService.execute(new MqttTask(message));
+		dispatchMessage(DataSourceType.MQTT, message, new MqttTask(message));
 	}
 
 	@Override
 	public void resolveDatabaseEvents(DatabaseEventClient databaseClient, List<DatabaseEvent> events) {
 		for (DatabaseEvent event : events) {
 			// execute on worker thread
-			DatabaseEventTask task = new DatabaseEventTask(databaseClient, event);
-			executorService.execute(task);
+			dispatchEvent(DataSourceType.DATABASE, event.getSourceId(), new DatabaseEventTask(databaseClient, event));
 		}
 	}
 
+	@Override
+	public void resolveClaimedDatabaseEvents(DatabaseEventClient databaseClient, List<DatabaseEvent> events) {
+		// a dropped batch would stay in processing
+		dispatchEvent(events.get(0).getSourceId(), OverloadPolicy.BLOCK,
+				new DatabaseBatchTask(databaseClient, events));
+	}
+
 	// subscribed OPC DA items by source
 	private class OpcDaInfo {
 		private final OpcDaSource source;
@@ -1508,7 +1864,7 @@ public class CollectorService
 		}
 	}
 
-	public synchronized void recordResolution(OeeEvent resolvedEvent) throws Exception {
+	public void recordResolution(OeeEvent resolvedEvent) throws Exception {
 		if (resolvedEvent.getOffsetEndTime() != null && resolvedEvent.getDuration() != null) {
 			Duration delta = Duration.between(resolvedEvent.getStartTime(), resolvedEvent.getEndTime());
 
@@ -1519,13 +1875,29 @@ public class CollectorService
 		}
 
 		// save in database
-		OeeEvent savedEvent = saveOeeEvent(resolvedEvent);
+		CompletableFuture<OeeEvent> saved = saveOeeEventAsync(resolvedEvent, false);
+
+		if (saved.isDone()) {
+			// send event message
+			sendResolutionMessage(waitForSave(saved));
+			return;
+		}
 
-		// send event message
-		sendResolutionMessage(savedEvent);
+		// committed in the background
+		saved.whenCompleteAsync((savedEvent, failure) -> {
+			try {
+				if (failure != null) {
+					Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+					throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+				}
+				sendResolutionMessage(savedEvent);
+			} catch (Exception e) {
+				onException("Unable to save resolved event.", e);
+			}
+		}, notificationExecutor);
 	}
 
-	private void sendResolutionMessage(OeeEvent resolvedEvent) throws Exception {
+	private synchronized void sendResolutionMessage(OeeEvent resolvedEvent) throws Exception {
 		// send resolution message to each subscriber
 		CollectorResolvedEventMessage message = new CollectorResolvedEventMessage(hostname, ip);
 		message.fromResolvedEvent(resolvedEvent);
@@ -1765,6 +2137,8 @@ public class CollectorService
 
 				if (logger.isInfoEnabled()) {
 					logger.info("Sent status message for host " + getId());
+					logger.info("Event pipeline queued: " + eventPipeline.getQueuedCount() + ", dropped: "
+							+ eventPipeline.getDroppedCount() + ", coalesced: " + eventPipeline.getCoalescedCount());
 				}
 			} catch (Exception e) {
 				onException("Sending server status message failed.", e);
@@ -1773,6 +2147,35 @@ public class CollectorService
 	}
 
 	/********************* Database Event Task ***********************************/
+	// resolve the event and set its final status
+	private void resolveDatabaseEvent(DatabaseEvent databaseEvent) {
+		try {
+			String sourceId = databaseEvent.getSourceId();
+			String dataValue = databaseEvent.getInputValue();
+			OffsetDateTime timestamp = databaseEvent.getEventTime();
+			String reason = databaseEvent.getReason();
+
+			if (logger.isInfoEnabled()) {
+				logger.info(
+						"Database event, source: " + sourceId + ", value: " + dataValue + ", timestamp: " + timestamp);
+			}
+
+			// resolve event
+			resolveEvent(sourceId, dataValue, timestamp, reason);
+
+			// pass
+			databaseEvent.setStatus(DatabaseEventStatus.PASS);
+			databaseEvent.setError(null);
+
+		} catch (Exception e) {
+			// fail
+			databaseEvent.setStatus(DatabaseEventStatus.FAIL);
+			databaseEvent.setError(e.getMessage());
+
+			onException("Unable to invoke script resolver.", e);
+		}
+	}
+
 	private class DatabaseEventTask implements Runnable {
 		private final DatabaseEventClient databaseClient;
 		private final DatabaseEvent databaseEvent;
@@ -1784,46 +2187,47 @@ public class CollectorService
 
 		@Override
 		public void run() {
-			try {
-				String sourceId = databaseEvent.getSourceId();
-				String dataValue = databaseEvent.getInputValue();
-				OffsetDateTime timestamp = databaseEvent.getEventTime();
-				String reason = databaseEvent.getReason();
+			// set status to processing
+			databaseEvent.setStatus(DatabaseEventStatus.PROCESSING);
+			databaseEvent.setError(null);
 
-				if (logger.isInfoEnabled()) {
-					logger.info("Database event, source: " + sourceId + ", value: " + dataValue + ", timestamp: "
-							+ timestamp);
-				}
+			try {
+				databaseClient.save(databaseEvent);
+			} catch (Exception ex) {
+				onException("Unable to save database event.", ex);
+			}
 
-				// set status to processing
-				databaseEvent.setStatus(DatabaseEventStatus.PROCESSING);
-				databaseEvent.setError(null);
+			resolveDatabaseEvent(databaseEvent);
 
-				try {
-					databaseClient.save(databaseEvent);
-				} catch (Exception ex) {
-					onException("Unable to save database event.", ex);
-				}
+			try {
+				databaseClient.save(databaseEvent);
+			} catch (Exception ex) {
+				onException("Unable to save database event.", ex);
+			}
+		}
+	}
 
-				// resolve event
-				resolveEvent(sourceId, dataValue, timestamp, reason);
+	// claimed events of one source id in event time order
+	private class DatabaseBatchTask implements Runnable {
+		private final DatabaseEventClient databaseClient;
+		private final List<DatabaseEvent> databaseEvents;
 
-				// pass
-				databaseEvent.setStatus(DatabaseEventStatus.PASS);
-				databaseEvent.setError(null);
+		DatabaseBatchTask(DatabaseEventClient databaseClient, List<DatabaseEvent> databaseEvents) {
+			this.databaseClient = databaseClient;
+			this.databaseEvents = databaseEvents;
+		}
 
-			} catch (Exception e) {
-				// fail
-				databaseEvent.setStatus(DatabaseEventStatus.FAIL);
-				databaseEvent.setError(e.getMessage());
+		@Override
+		public void run() {
+			for (DatabaseEvent databaseEvent : databaseEvents) {
+				resolveDatabaseEvent(databaseEvent);
+			}
 
-				onException("Unable to invoke script resolver.", e);
-			} finally {
-				try {
-					databaseClient.save(databaseEvent);
-				} catch (Exception ex) {
-					onException("Unable to save database event.", ex);
-				}
+			try {
+				databaseClient.complete(databaseEvents);
+			} catch (Exception ex) {
+				// held by the client until it can be saved
+				onException("Unable to save database events, retrying on the next poll.", ex);
 			}
 		}
 	}
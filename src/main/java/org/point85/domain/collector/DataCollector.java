@@ -1,11 +1,14 @@
 package org.point85.domain.collector;
 
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.point85.domain.DomainUtils;
 import org.point85.domain.persistence.CollectorStateConverter;
 import org.point85.domain.persistence.DataSourceConverter;
@@ -14,6 +17,8 @@ import org.point85.domain.plant.NamedObject;
 @Entity
 @Table(name = "COLLECTOR")
 @AttributeOverride(name = "primaryKey", column = @Column(name = "COLLECT_KEY"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 public class DataCollector extends NamedObject {
 	// machine running on
@@ -0,0 +1,475 @@
+package org.point85.domain.collector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.point85.domain.i18n.DomainLocalizer;
+import org.point85.domain.persistence.PersistenceService;
+import org.point85.domain.plant.KeyedObject;
+import org.point85.domain.script.OeeEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * The EventJournal is an append-only, memory-mapped file of resolved event
+ * records waiting to be committed to the database. Each unit of work is
+ * appended before it is queued for the database and is marked as applied
+ * after the commit. The file is reset once every record has been applied, and
+ * records still pending at startup are replayed. New events are marked as
+ * inserted, so that a replay can tell whether the unit of work was already
+ * committed.
+ * Appended records are flushed to disk by {@link #force()}, which the writer
+ * calls once per batch before committing it. Applied marks are not flushed on
+ * their own; a lost mark only causes a replay that finds the unit committed.
+ *
+ * A record is laid out as: payload length (int), state (byte), sequence
+ * (long), CRC32 of the payload (int), and the JSON payload.
+ *
+ */
+public class EventJournal {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+
+	// default folder for the journal file
+	public static final String DEFAULT_DIRECTORY = "journal";
+
+	// journal file name
+	public static final String FILE_NAME = "oee-events.wal";
+
+	// default mapped size in bytes
+	public static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+	// record states
+	private static final byte PENDING = 1;
+	private static final byte APPLIED = 2;
+
+	// length, state, sequence and CRC
+	private static final int HEADER_SIZE = 17;
+
+	// offset of the state byte in the header
+	private static final int STATE_OFFSET = 4;
+
+	// serializer
+	private final Gson gson = new Gson();
+
+	private final File file;
+
+	private final int capacity;
+
+	private RandomAccessFile randomAccessFile;
+
+	private MappedByteBuffer buffer;
+
+	// next write position
+	private int writePosition = 0;
+
+	// last assigned sequence
+	private long sequence = 0;
+
+	// position of each pending record by sequence
+	private final Map<Long, Integer> pendingPositions = new LinkedHashMap<>();
+
+	// appended since the last force
+	private boolean dirty = false;
+
+	public EventJournal(String directory) {
+		this(new File(directory, FILE_NAME), DEFAULT_CAPACITY);
+	}
+
+	public EventJournal(File file, int capacity) {
+		this.file = file;
+		this.capacity = capacity;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Map the journal file and locate the pending records
+	 *
+	 * @throws IOException Exception
+	 */
+	public synchronized void open() throws IOException {
+		if (buffer != null) {
+			return;
+		}
+
+		File parent = file.getAbsoluteFile().getParentFile();
+
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+		pendingPositions.clear();
+		writePosition = 0;
+
+		// scan to the end of the valid records
+		while (writePosition + HEADER_SIZE <= capacity) {
+			int length = buffer.getInt(writePosition);
+
+			if (length <= 0 || writePosition + HEADER_SIZE + length > capacity) {
+				break;
+			}
+
+			byte state = buffer.get(writePosition + STATE_OFFSET);
+			long recordSequence = buffer.getLong(writePosition + 5);
+			int crc = buffer.getInt(writePosition + 13);
+
+			if (crc != computeCrc(writePosition + HEADER_SIZE, length)) {
+				// torn write at the tail
+				logger.warn("Ignoring invalid journal record at position " + writePosition + " in " + file);
+				break;
+			}
+
+			if (state == PENDING) {
+				pendingPositions.put(recordSequence, writePosition);
+			}
+			sequence = Math.max(sequence, recordSequence);
+			writePosition += HEADER_SIZE + length;
+		}
+
+		if (pendingPositions.isEmpty()) {
+			reset();
+		}
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Opened event journal " + file.getAbsolutePath() + " with " + pendingPositions.size()
+					+ " pending records");
+		}
+	}
+
+	/**
+	 * Unmap and close the journal file
+	 */
+	public synchronized void close() {
+		try {
+			if (buffer != null) {
+				buffer.force();
+			}
+
+			if (randomAccessFile != null) {
+				randomAccessFile.close();
+			}
+		} catch (IOException e) {
+			logger.error("Unable to close event journal " + file, e);
+		} finally {
+			buffer = null;
+			randomAccessFile = null;
+		}
+	}
+
+	/**
+	 * Get the number of records not yet applied
+	 *
+	 * @return pending count
+	 */
+	public synchronized int getPendingCount() {
+		return pendingPositions.size();
+	}
+
+	/**
+	 * Write the unit of work to the journal
+	 *
+	 * @param records  Records saved together
+	 * @param inserted New records in the list
+	 * @return Sequence number of the journal record
+	 * @throws Exception Exception
+	 */
+	public synchronized long append(List<KeyedObject> records, Set<KeyedObject> inserted) throws Exception {
+		byte[] payload = serialize(records, inserted);
+		int size = HEADER_SIZE + payload.length;
+
+		if (writePosition + size > capacity) {
+			compact();
+
+			if (writePosition + size > capacity) {
+				throw new Exception(
+						DomainLocalizer.instance().getErrorString("journal.full", file, pendingPositions.size()));
+			}
+		}
+
+		long recordSequence = ++sequence;
+		int position = writePosition;
+
+		buffer.position(position + HEADER_SIZE);
+		buffer.put(payload);
+
+		buffer.putInt(position + 13, computeCrc(position + HEADER_SIZE, payload.length));
+		buffer.putLong(position + 5, recordSequence);
+		buffer.put(position + STATE_OFFSET, PENDING);
+		buffer.putInt(position, payload.length);
+
+		writePosition += size;
+		terminate();
+		dirty = true;
+
+		pendingPositions.put(recordSequence, position);
+
+		return recordSequence;
+	}
+
+	/**
+	 * Mark the record as committed to the database
+	 *
+	 * @param recordSequence Sequence number from the append
+	 */
+	public synchronized void markApplied(long recordSequence) {
+		Integer position = pendingPositions.remove(recordSequence);
+
+		if (position == null || buffer == null) {
+			return;
+		}
+
+		buffer.put(position + STATE_OFFSET, APPLIED);
+
+		if (pendingPositions.isEmpty()) {
+			// everything is in the database
+			reset();
+		}
+	}
+
+	/**
+	 * Flush the records appended since the last call to disk. Appends are not
+	 * blocked while the file is flushed.
+	 */
+	public void force() {
+		MappedByteBuffer toForce = null;
+
+		synchronized (this) {
+			if (!dirty || buffer == null) {
+				return;
+			}
+			dirty = false;
+			toForce = buffer;
+		}
+		toForce.force();
+	}
+
+	/**
+	 * Get the payloads of the records not yet applied in append order
+	 *
+	 * @return Map of sequence number to {@link UnitOfWork}
+	 * @throws Exception Exception
+	 */
+	public synchronized Map<Long, UnitOfWork> readPending() throws Exception {
+		Map<Long, UnitOfWork> pending = new LinkedHashMap<>();
+
+		for (Entry<Long, Integer> entry : pendingPositions.entrySet()) {
+			int position = entry.getValue();
+			int length = buffer.getInt(position);
+
+			byte[] payload = new byte[length];
+			buffer.position(position + HEADER_SIZE);
+			buffer.get(payload);
+
+			pending.put(entry.getKey(), deserialize(payload));
+		}
+		return pending;
+	}
+
+	// move the pending records to the front of the file
+	private void compact() {
+		List<byte[]> records = new ArrayList<>();
+
+		for (Integer position : pendingPositions.values()) {
+			byte[] record = new byte[HEADER_SIZE + buffer.getInt(position)];
+			buffer.position(position);
+			buffer.get(record);
+			records.add(record);
+		}
+
+		List<Long> sequences = new ArrayList<>(pendingPositions.keySet());
+		pendingPositions.clear();
+		writePosition = 0;
+
+		for (int i = 0; i < records.size(); i++) {
+			byte[] record = records.get(i);
+			buffer.position(writePosition);
+			buffer.put(record);
+
+			pendingPositions.put(sequences.get(i), writePosition);
+			writePosition += record.length;
+		}
+		terminate();
+		buffer.force();
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Compacted event journal to " + records.size() + " pending records");
+		}
+	}
+
+	private void reset() {
+		writePosition = 0;
+		terminate();
+	}
+
+	// mark the end of the records
+	private void terminate() {
+		if (writePosition + 4 <= capacity) {
+			buffer.putInt(writePosition, 0);
+		}
+	}
+
+	private int computeCrc(int position, int length) {
+		byte[] bytes = new byte[length];
+		buffer.position(position);
+		buffer.get(bytes);
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+	private byte[] serialize(List<KeyedObject> records, Set<KeyedObject> inserted) {
+		List<JournalEntry> entries = new ArrayList<>();
+
+		for (KeyedObject record : records) {
+			entries.add(new JournalEntry((OeeEvent) record, inserted.contains(record)));
+		}
+		return gson.toJson(entries.toArray(new JournalEntry[entries.size()])).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private UnitOfWork deserialize(byte[] payload) throws Exception {
+		JournalEntry[] entries = gson.fromJson(new String(payload, StandardCharsets.UTF_8), JournalEntry[].class);
+
+		UnitOfWork unit = new UnitOfWork();
+
+		for (JournalEntry entry : entries) {
+			OeeEvent event = entry.toEvent();
+			unit.records.add(event);
+
+			// written without a key it can only be new
+			if (entry.inserted || entry.key == null) {
+				unit.inserted.add(event);
+			}
+		}
+		return unit;
+	}
+
+	/**
+	 * The records of a journaled unit of work and which of them are new
+	 */
+	public static class UnitOfWork {
+		private final List<KeyedObject> records = new ArrayList<>();
+		private final Set<KeyedObject> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		public List<KeyedObject> getRecords() {
+			return records;
+		}
+
+		public Set<KeyedObject> getInserted() {
+			return inserted;
+		}
+	}
+
+	// serialized OEE event with references by primary key
+	private static class JournalEntry {
+		private Long key;
+		private boolean inserted;
+		private String eventType;
+		private Long equipmentKey;
+		private String startTime;
+		private String endTime;
+		private Long shiftKey;
+		private Long teamKey;
+		private String duration;
+		private Long reasonKey;
+		private Double amount;
+		private Long uomKey;
+		private Long materialKey;
+		private String job;
+		private String input;
+		private String sourceId;
+		private String collector;
+
+		JournalEntry(OeeEvent event, boolean inserted) {
+			key = event.getKey();
+			this.inserted = inserted;
+			eventType = event.getEventType() != null ? event.getEventType().name() : null;
+			equipmentKey = event.getEquipment() != null ? event.getEquipment().getKey() : null;
+			startTime = toString(event.getStartTime());
+			endTime = toString(event.getEndTime());
+			shiftKey = event.getShift() != null ? event.getShift().getKey() : null;
+			teamKey = event.getTeam() != null ? event.getTeam().getKey() : null;
+			duration = event.getDuration() != null ? event.getDuration().toString() : null;
+			reasonKey = event.getReason() != null ? event.getReason().getKey() : null;
+			amount = event.getAmount();
+			uomKey = event.getUOM() != null ? event.getUOM().getKey() : null;
+			materialKey = event.getMaterial() != null ? event.getMaterial().getKey() : null;
+			job = event.getJob();
+			input = event.getInputValue() != null ? event.getInputValue().toString() : null;
+			sourceId = event.getSourceId();
+			collector = event.getCollector();
+		}
+
+		// ISO 8601 with full precision
+		private static String toString(OffsetDateTime dateTime) {
+			return dateTime != null ? dateTime.toString() : null;
+		}
+
+		private static OffsetDateTime fromString(String dateTime) {
+			return dateTime != null ? OffsetDateTime.parse(dateTime) : null;
+		}
+
+		private OeeEvent toEvent() throws Exception {
+			PersistenceService service = PersistenceService.instance();
+
+			OeeEvent event = new OeeEvent(service.fetchEquipmentByKey(equipmentKey));
+			event.setKey(key);
+			event.setEventType(eventType != null ? OeeEventType.valueOf(eventType) : null);
+			event.setStartTime(fromString(startTime));
+			event.setEndTime(fromString(endTime));
+			event.setDuration(duration != null ? Duration.parse(duration) : null);
+			event.setAmount(amount);
+			event.setJob(job);
+			event.setSourceId(sourceId);
+			event.setCollector(collector);
+
+			if (input != null) {
+				event.setInputValue(input);
+			}
+
+			if (shiftKey != null) {
+				event.setShift(service.fetchShiftByKey(shiftKey));
+			}
+
+			if (teamKey != null) {
+				event.setTeam(service.fetchTeamByKey(teamKey));
+			}
+
+			if (reasonKey != null) {
+				event.setReason(service.fetchReasonByKey(reasonKey));
+			}
+
+			if (uomKey != null) {
+				event.setUOM(service.fetchUomByKey(uomKey));
+			}
+
+			if (materialKey != null) {
+				event.setMaterial(service.fetchMaterialByKey(materialKey));
+			}
+			return event;
+		}
+	}
+}
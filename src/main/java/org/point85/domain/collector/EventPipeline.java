@@ -0,0 +1,341 @@
+package org.point85.domain.collector;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The EventPipeline distributes collector tasks onto a fixed set of
+ * single-threaded lanes. Tasks with the same key (normally the
+ * {@link org.point85.domain.plant.Equipment}) always run on the same lane and
+ * therefore in arrival order, while tasks for different keys run in parallel.
+ * Each lane holds a bounded number of tasks. When a lane is full the
+ * {@link OverloadPolicy} of the task decides whether the producer waits, the
+ * oldest task is dropped or a queued task for the same source is replaced.
+ *
+ */
+public class EventPipeline {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(EventPipeline.class);
+
+	// default maximum number of queued tasks per lane
+	public static final int DEFAULT_LANE_CAPACITY = 1000;
+
+	// processing lanes
+	private final Lane[] lanes;
+
+	// overload counters
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * Construct a pipeline with one lane per available processor
+	 */
+	public EventPipeline() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_LANE_CAPACITY);
+	}
+
+	/**
+	 * Construct a pipeline with the specified number of lanes
+	 *
+	 * @param laneCount    Number of lanes
+	 * @param laneCapacity Maximum queued tasks per lane
+	 */
+	public EventPipeline(int laneCount, int laneCapacity) {
+		int count = laneCount > 0 ? laneCount : 1;
+		int capacity = laneCapacity > 0 ? laneCapacity : DEFAULT_LANE_CAPACITY;
+
+		lanes = new Lane[count];
+
+		for (int i = 0; i < count; i++) {
+			lanes[i] = new Lane(i, capacity);
+			lanes[i].start();
+		}
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Created event pipeline with " + count + " lanes of capacity " + capacity);
+		}
+	}
+
+	/**
+	 * Get the number of lanes
+	 *
+	 * @return lane count
+	 */
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Queue the task on the lane for this key, waiting if the lane is full
+	 *
+	 * @param key  Ordering key
+	 * @param task {@link Runnable}
+	 */
+	public void execute(Object key, Runnable task) {
+		execute(key, null, OverloadPolicy.BLOCK, task);
+	}
+
+	/**
+	 * Queue the task on the lane for this key
+	 *
+	 * @param key      Ordering key
+	 * @param sourceId Source identifier for coalescing
+	 * @param policy   {@link OverloadPolicy}
+	 * @param task     {@link Runnable}
+	 */
+	public void execute(Object key, String sourceId, OverloadPolicy policy, Runnable task) {
+		lanes[getLaneIndex(key)].offer(sourceId, policy != null ? policy : OverloadPolicy.BLOCK, task);
+	}
+
+	/**
+	 * Queue the task once on every lane, for example to prepare thread-confined
+	 * state
+	 *
+	 * @param task Consumer of the lane index
+	 */
+	public void executeOnEachLane(IntConsumer task) {
+		for (int i = 0; i < lanes.length; i++) {
+			final int index = i;
+			lanes[i].offer(null, OverloadPolicy.BLOCK, () -> task.accept(index));
+		}
+	}
+
+	/**
+	 * Get the lane that processes tasks for this key
+	 *
+	 * @param key Ordering key
+	 * @return lane index
+	 */
+	public int getLaneIndex(Object key) {
+		if (key == null) {
+			return 0;
+		}
+
+		// spread the hash bits
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+
+		return Math.floorMod(hash, lanes.length);
+	}
+
+	/**
+	 * Get the number of tasks discarded because a lane was full
+	 *
+	 * @return dropped count
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Get the number of tasks replaced by a later value for the same source
+	 *
+	 * @return coalesced count
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * Get the number of tasks waiting in all lanes
+	 *
+	 * @return queued count
+	 */
+	public int getQueuedCount() {
+		int count = 0;
+		for (Lane lane : lanes) {
+			count += lane.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Stop the lanes, waiting for queued tasks to finish
+	 *
+	 * @param timeoutMsec Maximum wait time in milliseconds
+	 */
+	public void shutdown(long timeoutMsec) {
+		for (Lane lane : lanes) {
+			lane.close();
+		}
+
+		long deadline = System.currentTimeMillis() + timeoutMsec;
+
+		try {
+			for (Lane lane : lanes) {
+				long remaining = deadline - System.currentTimeMillis();
+
+				if (remaining > 0) {
+					lane.join(remaining);
+				}
+
+				if (lane.isAlive()) {
+					lane.interrupt();
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Lane lane : lanes) {
+				lane.interrupt();
+			}
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// queued task
+	private static class LaneTask {
+		private final String sourceId;
+		private Runnable runnable;
+
+		LaneTask(String sourceId, Runnable runnable) {
+			this.sourceId = sourceId;
+			this.runnable = runnable;
+		}
+	}
+
+	// bounded single-threaded lane
+	private class Lane extends Thread {
+		private final int capacity;
+
+		private final ArrayDeque<LaneTask> queue;
+
+		// coalescable tasks still in the queue by source id
+		private final Map<String, LaneTask> pending = new HashMap<>();
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+
+		private boolean running = true;
+
+		Lane(int index, int capacity) {
+			super("oee-lane-" + index);
+			setDaemon(true);
+
+			this.capacity = capacity;
+			this.queue = new ArrayDeque<>(capacity);
+		}
+
+		private int size() {
+			lock.lock();
+			try {
+				return queue.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void offer(String sourceId, OverloadPolicy policy, Runnable runnable) {
+			lock.lock();
+			try {
+				if (!running) {
+					logger.warn("Event pipeline is shut down, ignoring event for source " + sourceId);
+					return;
+				}
+
+				while (queue.size() >= capacity) {
+					if (policy.equals(OverloadPolicy.COALESCE) && sourceId != null) {
+						LaneTask queued = pending.get(sourceId);
+
+						if (queued != null) {
+							// keep the position, take the latest value
+							queued.runnable = runnable;
+							coalescedCount.incrementAndGet();
+							return;
+						}
+					}
+
+					if (policy.equals(OverloadPolicy.BLOCK)) {
+						notFull.awaitUninterruptibly();
+
+						if (!running) {
+							logger.warn("Event pipeline is shut down, ignoring event for source " + sourceId);
+							return;
+						}
+					} else {
+						// DROP_OLDEST, and COALESCE for a new source id
+						LaneTask oldest = queue.poll();
+
+						if (oldest.sourceId != null && pending.get(oldest.sourceId) == oldest) {
+							pending.remove(oldest.sourceId);
+						}
+						droppedCount.incrementAndGet();
+
+						if (logger.isDebugEnabled()) {
+							logger.debug("Lane " + getName() + " is full, dropped event for source " + oldest.sourceId);
+						}
+					}
+				}
+
+				LaneTask task = new LaneTask(sourceId, runnable);
+				queue.add(task);
+
+				if (policy.equals(OverloadPolicy.COALESCE) && sourceId != null) {
+					pending.put(sourceId, task);
+				}
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private LaneTask take() throws InterruptedException {
+			lock.lock();
+			try {
+				while (queue.isEmpty()) {
+					if (!running) {
+						return null;
+					}
+					notEmpty.await(1, TimeUnit.SECONDS);
+				}
+
+				LaneTask task = queue.poll();
+
+				if (task.sourceId != null && pending.get(task.sourceId) == task) {
+					pending.remove(task.sourceId);
+				}
+				notFull.signal();
+
+				return task;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void close() {
+			lock.lock();
+			try {
+				running = false;
+				notEmpty.signalAll();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				LaneTask task = null;
+
+				while ((task = take()) != null) {
+					try {
+						task.runnable.run();
+					} catch (Exception e) {
+						logger.error("Event task failed on lane " + getName(), e);
+					}
+				}
+			} catch (InterruptedException e) {
+				// shutting down
+			}
+		}
+	}
+}
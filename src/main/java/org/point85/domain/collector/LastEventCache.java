@@ -0,0 +1,149 @@
+package org.point85.domain.collector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.point85.domain.persistence.PersistenceService;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.script.OeeEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The LastEventCache holds the latest availability, material, job and custom
+ * event of each piece of equipment. The equipment of the collector is loaded
+ * with one query and then kept current as events are saved, so that the
+ * previous event can be closed off without reading it from the database. The
+ * cache is authoritative for equipment that is loaded. Other equipment is
+ * loaded on first access, and equipment is reloaded from the database after
+ * its entry has been invalidated.
+ *
+ */
+public class LastEventCache {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(LastEventCache.class);
+
+	// latest event by equipment and type
+	private final ConcurrentMap<Equipment, ConcurrentMap<OeeEventType, OeeEvent>> lastEvents = new ConcurrentHashMap<>();
+
+	// equipment read from the database
+	private final Set<Equipment> loadedEquipment = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean loaded = false;
+
+	// event types that are closed off by the next event
+	public static List<OeeEventType> getCachedTypes() {
+		List<OeeEventType> types = new ArrayList<>();
+
+		for (OeeEventType type : OeeEventType.values()) {
+			if (!type.isProduction()) {
+				types.add(type);
+			}
+		}
+		return types;
+	}
+
+	/**
+	 * Load the latest event of each type for the equipment
+	 *
+	 * @param equipment Collection of {@link Equipment}
+	 */
+	public synchronized void load(Collection<Equipment> equipment) {
+		lastEvents.clear();
+		loadedEquipment.clear();
+
+		List<OeeEvent> events = equipment.isEmpty() ? new ArrayList<>()
+				: PersistenceService.instance().fetchLastEvents(new ArrayList<>(equipment), getCachedTypes());
+
+		for (OeeEvent event : events) {
+			update(event);
+		}
+		loadedEquipment.addAll(equipment);
+		loaded = true;
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Loaded " + events.size() + " last events for " + lastEvents.size() + " equipment");
+		}
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Get the latest event of this type for the equipment
+	 *
+	 * @param equipment {@link Equipment}
+	 * @param type      {@link OeeEventType}
+	 * @return {@link OeeEvent} or null if there is none
+	 */
+	public OeeEvent getLastEvent(Equipment equipment, OeeEventType type) {
+		if (!loaded) {
+			return PersistenceService.instance().fetchLastEvent(equipment, type);
+		}
+
+		if (!loadedEquipment.contains(equipment)) {
+			reload(equipment);
+		}
+
+		ConcurrentMap<OeeEventType, OeeEvent> events = lastEvents.get(equipment);
+
+		return events != null ? events.get(type) : null;
+	}
+
+	/**
+	 * Record a saved event if it is the latest of its type
+	 *
+	 * @param event Saved {@link OeeEvent}
+	 */
+	public void update(OeeEvent event) {
+		if (event == null || event.getEventType() == null || event.getEventType().isProduction()
+				|| event.getStartTime() == null) {
+			return;
+		}
+
+		ConcurrentMap<OeeEventType, OeeEvent> events = lastEvents.computeIfAbsent(event.getEquipment(),
+				equipment -> new ConcurrentHashMap<>());
+
+		events.merge(event.getEventType(), event, (current, latest) -> {
+			if (current.getOffsetStartTime().getLocalDateTime()
+					.isAfter(latest.getOffsetStartTime().getLocalDateTime())) {
+				return current;
+			}
+			return latest;
+		});
+	}
+
+	/**
+	 * Discard the cached events for the equipment, for example after a failed
+	 * save. They are read from the database on the next access.
+	 *
+	 * @param equipment {@link Equipment}
+	 */
+	public void invalidate(Equipment equipment) {
+		loadedEquipment.remove(equipment);
+		lastEvents.remove(equipment);
+	}
+
+	/**
+	 * Empty the cache
+	 */
+	public synchronized void clear() {
+		lastEvents.clear();
+		loadedEquipment.clear();
+		loaded = false;
+	}
+
+	private void reload(Equipment equipment) {
+		lastEvents.remove(equipment);
+
+		for (OeeEvent event : PersistenceService.instance().fetchLastEvents(equipment, getCachedTypes())) {
+			update(event);
+		}
+		loadedEquipment.add(equipment);
+	}
+}
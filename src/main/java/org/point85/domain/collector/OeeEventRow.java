@@ -0,0 +1,191 @@
+package org.point85.domain.collector;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.point85.domain.oee.TimeLoss;
+import org.point85.domain.script.OeeEventType;
+
+/**
+ * The OeeEventRow is a read-only projection of an {@link OeeEvent} holding
+ * only the columns needed for a loss calculation. Times are UTC epoch
+ * nanoseconds and the reason and unit of measure are referenced by key, so
+ * that no associated entities are loaded.
+ *
+ */
+public final class OeeEventRow {
+	// value of a time or duration that is not set
+	public static final long NOT_SET = Long.MIN_VALUE;
+
+	// value of a key that is not set
+	public static final long NO_KEY = 0;
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final OeeEventType eventType;
+
+	// start and end in UTC epoch nanoseconds
+	private final long startTime;
+	private final long endTime;
+
+	// duration in nanoseconds
+	private final long duration;
+
+	private final double amount;
+
+	private final long reasonKey;
+
+	// loss category of the reason
+	private final TimeLoss lossCategory;
+
+	private final long uomKey;
+
+	private final String sourceId;
+
+	// attributes to group by, only for a grouped calculation
+	private final long equipmentKey;
+	private final long materialKey;
+	private final String shiftName;
+	private final String teamName;
+	private final String job;
+
+	/**
+	 * Constructor for the JPQL projection
+	 *
+	 * @param eventType    {@link OeeEventType}
+	 * @param startTime    Local starting date and time
+	 * @param startOffset  Starting UTC offset in seconds
+	 * @param endTime      Local ending date and time
+	 * @param endOffset    Ending UTC offset in seconds
+	 * @param duration     Event duration
+	 * @param amount       Production amount
+	 * @param reasonKey    Reason key
+	 * @param lossCategory Reason {@link TimeLoss}
+	 * @param uomKey       Unit of measure key
+	 * @param sourceId     Source identifier
+	 */
+	public OeeEventRow(OeeEventType eventType, LocalDateTime startTime, Integer startOffset, LocalDateTime endTime,
+			Integer endOffset, Duration duration, Double amount, Long reasonKey, TimeLoss lossCategory, Long uomKey,
+			String sourceId) {
+		this(eventType, startTime, startOffset, endTime, endOffset, duration, amount, reasonKey, lossCategory, uomKey,
+				sourceId, null, null, null, null, null);
+	}
+
+	/**
+	 * Constructor for the JPQL projection of a grouped loss calculation
+	 *
+	 * @param eventType    {@link OeeEventType}
+	 * @param startTime    Local starting date and time
+	 * @param startOffset  Starting UTC offset in seconds
+	 * @param endTime      Local ending date and time
+	 * @param endOffset    Ending UTC offset in seconds
+	 * @param duration     Event duration
+	 * @param amount       Production amount
+	 * @param reasonKey    Reason key
+	 * @param lossCategory Reason {@link TimeLoss}
+	 * @param uomKey       Unit of measure key
+	 * @param sourceId     Source identifier
+	 * @param equipmentKey Equipment key
+	 * @param materialKey  Material key
+	 * @param shiftName    Shift name
+	 * @param teamName     Team name
+	 * @param job          Job
+	 */
+	public OeeEventRow(OeeEventType eventType, LocalDateTime startTime, Integer startOffset, LocalDateTime endTime,
+			Integer endOffset, Duration duration, Double amount, Long reasonKey, TimeLoss lossCategory, Long uomKey,
+			String sourceId, Long equipmentKey, Long materialKey, String shiftName, String teamName, String job) {
+		this.eventType = eventType;
+		this.startTime = toNanos(startTime, startOffset);
+		this.endTime = toNanos(endTime, endOffset);
+		this.duration = duration != null ? duration.toNanos() : NOT_SET;
+		this.amount = amount != null ? amount : 0.0d;
+		this.reasonKey = reasonKey != null ? reasonKey : NO_KEY;
+		this.lossCategory = lossCategory;
+		this.uomKey = uomKey != null ? uomKey : NO_KEY;
+		this.sourceId = sourceId;
+		this.equipmentKey = equipmentKey != null ? equipmentKey : NO_KEY;
+		this.materialKey = materialKey != null ? materialKey : NO_KEY;
+		this.shiftName = shiftName;
+		this.teamName = teamName;
+		this.job = job;
+	}
+
+	private static long toNanos(LocalDateTime dateTime, Integer offset) {
+		if (dateTime == null) {
+			return NOT_SET;
+		}
+		long seconds = dateTime.toEpochSecond(ZoneOffset.ofTotalSeconds(offset != null ? offset : 0));
+		return seconds * NANOS_PER_SECOND + dateTime.getNano();
+	}
+
+	public OeeEventType getEventType() {
+		return eventType;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getEndTime() {
+		return endTime;
+	}
+
+	public boolean hasEndTime() {
+		return endTime != NOT_SET;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public boolean hasDuration() {
+		return duration != NOT_SET;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	public long getReasonKey() {
+		return reasonKey;
+	}
+
+	public TimeLoss getLossCategory() {
+		return lossCategory;
+	}
+
+	public long getUomKey() {
+		return uomKey;
+	}
+
+	public String getSourceId() {
+		return sourceId;
+	}
+
+	public long getEquipmentKey() {
+		return equipmentKey;
+	}
+
+	public long getMaterialKey() {
+		return materialKey;
+	}
+
+	public String getShiftName() {
+		return shiftName;
+	}
+
+	public String getTeamName() {
+		return teamName;
+	}
+
+	public String getJob() {
+		return job;
+	}
+
+	@Override
+	public String toString() {
+		return "Type: " + eventType + ", start: " + startTime + ", end: " + endTime + ", duration: " + duration
+				+ ", amount: " + amount + ", reason: " + reasonKey + ", loss: " + lossCategory;
+	}
+}
@@ -0,0 +1,578 @@
+package org.point85.domain.collector;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.exception.JDBCConnectionException;
+import org.point85.domain.persistence.PersistenceService;
+import org.point85.domain.plant.KeyedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The OeeEventWriter saves resolved events on a background thread. Pending
+ * writes are grouped and committed in a single transaction when either the
+ * maximum batch size is reached or the oldest write has waited for the linger
+ * time. A write with a caller waiting on it is committed without the linger,
+ * together with whatever is already queued. Each write is completed through a
+ * future holding the merged records.
+ * If an {@link EventJournal} is set, each write is journaled before it is
+ * queued and marked as applied after its commit. The journal is flushed to
+ * disk once per batch. A journaled write that fails
+ * because the database is unavailable is left pending in the journal and is
+ * retried in the background, in journal order and ahead of any later write.
+ * Its future completes once it has been committed.
+ * New events are given their keys before they are journaled when the keys are
+ * allocated from the pooled sequence, so a journaled write that is saved again
+ * after it was committed, for example after a crash before it was marked as
+ * applied, is recognized by its keys and not inserted twice. Events journaled
+ * without a key are recognized by their equipment, type, start time and values.
+ *
+ */
+public class OeeEventWriter {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(OeeEventWriter.class);
+
+	// default maximum number of writes per transaction
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	// default maximum wait in msec for a batch to fill
+	public static final long DEFAULT_LINGER_MSEC = 200;
+
+	// default wait in msec before retrying writes while the database is
+	// unavailable
+	public static final long DEFAULT_RETRY_MSEC = 5000;
+
+	// maximum number of writes per transaction
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	// maximum wait for a batch to fill
+	private long lingerMsec = DEFAULT_LINGER_MSEC;
+
+	// wait before retrying
+	private long retryMsec = DEFAULT_RETRY_MSEC;
+
+	// pending writes
+	private final BlockingQueue<WriteRequest> queue = new LinkedBlockingQueue<>();
+
+	// journaled writes waiting for the database, in journal order
+	private final Deque<WriteRequest> retries = new ConcurrentLinkedDeque<>();
+
+	// completed when no write is waiting for the database
+	private volatile CompletableFuture<Void> replayed = CompletableFuture.completedFuture(null);
+
+	// time of the next retry in msec
+	private long nextRetry = 0;
+
+	// optional write-ahead journal
+	private EventJournal journal;
+
+	// background thread
+	private Thread writerThread;
+
+	private volatile boolean running = false;
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize > 0 ? batchSize : 1;
+	}
+
+	public long getLingerTime() {
+		return lingerMsec;
+	}
+
+	public void setLingerTime(long lingerMsec) {
+		this.lingerMsec = lingerMsec >= 0 ? lingerMsec : 0;
+	}
+
+	public long getRetryTime() {
+		return retryMsec;
+	}
+
+	public void setRetryTime(long retryMsec) {
+		this.retryMsec = retryMsec >= 0 ? retryMsec : 0;
+	}
+
+	/**
+	 * Get the number of journaled writes waiting for the database
+	 *
+	 * @return retry count
+	 */
+	public int getRetryCount() {
+		return retries.size();
+	}
+
+	/**
+	 * Get a future that completes once no journaled write is waiting for the
+	 * database
+	 *
+	 * @return {@link CompletableFuture}
+	 */
+	public CompletableFuture<Void> whenReplayed() {
+		return replayed;
+	}
+
+	public EventJournal getJournal() {
+		return journal;
+	}
+
+	public void setJournal(EventJournal journal) {
+		this.journal = journal;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Start the background writer thread
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+
+		running = true;
+		writerThread = new Thread(this::writeBatches, "oee-event-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Started event writer with batch size " + batchSize + " and linger time (msec) " + lingerMsec);
+		}
+	}
+
+	/**
+	 * Stop the writer after committing the pending writes
+	 *
+	 * @param timeoutMsec Maximum wait time in milliseconds
+	 */
+	public synchronized void stop(long timeoutMsec) {
+		if (!running) {
+			return;
+		}
+
+		running = false;
+
+		try {
+			writerThread.join(timeoutMsec);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// fail anything left behind, the journaled writes are replayed on the next
+		// start
+		List<WriteRequest> abandoned = new ArrayList<>(retries);
+		retries.clear();
+		queue.drainTo(abandoned);
+
+		for (WriteRequest request : abandoned) {
+			request.future.completeExceptionally(new IllegalStateException("Event writer is stopped."));
+		}
+		replayed.completeExceptionally(new IllegalStateException("Event writer is stopped."));
+		writerThread = null;
+	}
+
+	/**
+	 * Queue a journaled write that could not be replayed, to be retried before
+	 * any write submitted after it. Call before the writer is started.
+	 *
+	 * @param sequence Journal record sequence
+	 * @param records  Records for one unit of work
+	 * @param inserted New records in the unit of work
+	 * @return Future with the merged records in the same order
+	 */
+	public CompletableFuture<List<KeyedObject>> resubmit(long sequence, List<KeyedObject> records,
+			Set<KeyedObject> inserted) {
+		WriteRequest request = new WriteRequest(records, false);
+		request.sequence = sequence;
+		request.inserted.addAll(inserted);
+		hold(request);
+
+		return request.future;
+	}
+
+	/**
+	 * Queue records to be saved together in the next batch
+	 *
+	 * @param records Records for one unit of work
+	 * @return Future with the merged records in the same order
+	 */
+	public CompletableFuture<List<KeyedObject>> submit(List<KeyedObject> records) {
+		return submit(records, false);
+	}
+
+	/**
+	 * Queue records to be saved together in the next batch
+	 *
+	 * @param records Records for one unit of work
+	 * @param flush   True if a caller waits for the commit, so the batch is
+	 *                committed without waiting for it to fill
+	 * @return Future with the merged records in the same order
+	 */
+	public CompletableFuture<List<KeyedObject>> submit(List<KeyedObject> records, boolean flush) {
+		WriteRequest request = new WriteRequest(records, flush);
+
+		if (!running) {
+			request.future.completeExceptionally(new IllegalStateException("Event writer is stopped."));
+			return request.future;
+		}
+
+		if (journal != null) {
+			for (KeyedObject record : records) {
+				if (record.getKey() == null) {
+					request.inserted.add(record);
+				}
+			}
+
+			if (retries.isEmpty()) {
+				// a replay finds them by key, not while the database is unavailable
+				try {
+					PersistenceService.instance().assignKeys(records);
+				} catch (Exception e) {
+					logger.warn("Unable to assign event keys, journaling without them. " + e.getMessage());
+				}
+			}
+
+			try {
+				request.sequence = journal.append(records, request.inserted);
+			} catch (Exception e) {
+				logger.error("Unable to journal event, saving without it. " + e.getMessage());
+			}
+		}
+		queue.add(request);
+
+		return request.future;
+	}
+
+	private void writeBatches() {
+		List<WriteRequest> batch = new ArrayList<>();
+
+		while (running || !queue.isEmpty()) {
+			try {
+				WriteRequest first = queue.poll(1, TimeUnit.SECONDS);
+
+				// the writes waiting for the database go first
+				replay();
+
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+
+				// let the batch fill unless a caller is waiting
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMsec);
+				boolean flush = first.flush;
+
+				while (batch.size() < batchSize) {
+					long remaining = deadline - System.nanoTime();
+
+					if (flush || remaining <= 0) {
+						queue.drainTo(batch, batchSize - batch.size());
+						break;
+					}
+
+					WriteRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+					flush = next.flush;
+				}
+
+				if (journal != null) {
+					// group commit of the journal
+					journal.force();
+				}
+
+				commit(batch);
+			} catch (InterruptedException e) {
+				running = false;
+			} catch (Exception e) {
+				logger.error("Event writer failed.", e);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	// retry the waiting writes in order until one fails for lack of a database
+	private void replay() {
+		if (retries.isEmpty() || System.currentTimeMillis() < nextRetry) {
+			return;
+		}
+
+		int count = 0;
+
+		while (!retries.isEmpty()) {
+			WriteRequest request = retries.peek();
+
+			try {
+				List<KeyedObject> saved = saveJournaled(request.records, request.inserted);
+				retries.poll();
+				markApplied(request);
+				request.future.complete(saved);
+				count++;
+			} catch (Exception e) {
+				if (isUnavailable(e)) {
+					nextRetry = System.currentTimeMillis() + retryMsec;
+					logger.warn("Database is still unavailable, " + retries.size() + " journaled events are waiting. "
+							+ e.getMessage());
+					return;
+				}
+
+				// the data itself is bad
+				retries.poll();
+				markApplied(request);
+				request.future.completeExceptionally(e);
+				logger.error("Discarding journaled event.", e);
+			}
+		}
+
+		replayed.complete(null);
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Database is available, committed " + count + " journaled events");
+		}
+	}
+
+	// hold the write until the database is available
+	private void hold(WriteRequest request) {
+		if (retries.isEmpty()) {
+			nextRetry = System.currentTimeMillis() + retryMsec;
+
+			if (replayed.isDone()) {
+				replayed = new CompletableFuture<>();
+			}
+		}
+		retries.add(request);
+	}
+
+	private void commit(List<WriteRequest> batch) {
+		if (!retries.isEmpty()) {
+			// in order behind the writes waiting for the database
+			List<WriteRequest> direct = new ArrayList<>();
+
+			for (WriteRequest request : batch) {
+				if (request.sequence != null) {
+					hold(request);
+				} else {
+					direct.add(request);
+				}
+			}
+
+			if (direct.isEmpty()) {
+				return;
+			}
+			batch = direct;
+		}
+
+		List<KeyedObject> records = new ArrayList<>();
+		Set<KeyedObject> inserted = newInsertedSet();
+
+		for (WriteRequest request : batch) {
+			records.addAll(request.records);
+			inserted.addAll(request.inserted);
+		}
+
+		try {
+			List<KeyedObject> merged = PersistenceService.instance().save(records, inserted);
+
+			// hand each caller its own records
+			int index = 0;
+			for (WriteRequest request : batch) {
+				int count = request.records.size();
+				markApplied(request);
+				request.future.complete(new ArrayList<>(merged.subList(index, index + count)));
+				index += count;
+			}
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Committed " + batch.size() + " event writes with " + records.size() + " records");
+			}
+		} catch (Exception e) {
+			if (batch.size() == 1) {
+				fail(batch.get(0), e);
+				return;
+			}
+
+			// isolate the failing write
+			logger.warn("Batch of " + batch.size() + " event writes failed, saving individually. " + e.getMessage());
+
+			for (WriteRequest request : batch) {
+				if (!retries.isEmpty() && request.sequence != null) {
+					hold(request);
+					continue;
+				}
+
+				try {
+					// the batch may have been committed after all
+					List<KeyedObject> saved = request.sequence != null
+							? saveJournaled(request.records, request.inserted)
+							: PersistenceService.instance().save(request.records);
+					markApplied(request);
+					request.future.complete(saved);
+				} catch (Exception ex) {
+					fail(request, ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Save a unit of work read back from the journal. It may already have been
+	 * committed before it was marked as applied. Its new records are looked up
+	 * by key, or by their values if they were journaled without one. If every
+	 * new record is found the unit is not saved again.
+	 *
+	 * @param records  Records for one unit of work
+	 * @param inserted New records in the unit of work
+	 * @return The saved records in the same order
+	 * @throws Exception Exception
+	 */
+	public static List<KeyedObject> saveJournaled(List<KeyedObject> records, Set<KeyedObject> inserted)
+			throws Exception {
+		PersistenceService service = PersistenceService.instance();
+		boolean committed = !inserted.isEmpty();
+
+		for (KeyedObject record : inserted) {
+			OeeEvent event = (OeeEvent) record;
+			OeeEvent saved = event.getKey() != null ? service.fetchEventByKey(event.getKey()) : findSaved(event);
+
+			if (saved == null) {
+				committed = false;
+				break;
+			}
+		}
+
+		if (committed) {
+			if (logger.isInfoEnabled()) {
+				logger.info("Journaled events were already committed: " + records.size());
+			}
+			return records;
+		}
+		return service.save(records, inserted);
+	}
+
+	// the same event saved under a key that was not journaled
+	private static OeeEvent findSaved(OeeEvent event) throws Exception {
+		OffsetDateTime start = event.getStartTime();
+
+		if (event.getEquipment() == null || start == null) {
+			return null;
+		}
+
+		// the database may store less precision
+		List<OeeEvent> candidates = PersistenceService.instance().fetchEvents(event.getEquipment(),
+				event.getEventType(), start.minusSeconds(1), start.plusSeconds(1));
+
+		for (OeeEvent candidate : candidates) {
+			long difference = Duration.between(candidate.getStartTime(), start).abs().toMillis();
+
+			if (difference < 1000 && Objects.equals(candidate.getSourceId(), event.getSourceId())
+					&& Objects.equals(candidate.getCollector(), event.getCollector())
+					&& Objects.equals(candidate.getInputValue(), event.getInputValue())
+					&& Objects.equals(candidate.getAmount(), event.getAmount())) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private static Set<KeyedObject> newInsertedSet() {
+		return Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+
+	private void markApplied(WriteRequest request) {
+		if (journal != null && request.sequence != null) {
+			journal.markApplied(request.sequence);
+		}
+	}
+
+	private void fail(WriteRequest request, Exception e) {
+		if (!isUnavailable(e)) {
+			// the data itself is bad, a replay would fail again
+			markApplied(request);
+		} else if (request.sequence != null) {
+			// keep it in the journal and retry it
+			logger.warn("Database is unavailable, event remains in the journal. " + e.getMessage());
+			hold(request);
+			return;
+		}
+		request.future.completeExceptionally(e);
+	}
+
+	/**
+	 * Determine if the failure is caused by a lost or unavailable database
+	 * connection as opposed to a problem with the data
+	 *
+	 * @param e Failure
+	 * @return True if the database could not be reached
+	 */
+	public static boolean isUnavailable(Throwable e) {
+		Throwable cause = e;
+
+		while (cause != null) {
+			if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException
+					|| cause instanceof SQLNonTransientConnectionException
+					|| cause instanceof JDBCConnectionException) {
+				return true;
+			}
+
+			if (cause instanceof SQLException) {
+				// connection exception class
+				String state = ((SQLException) cause).getSQLState();
+
+				if (state != null && state.startsWith("08")) {
+					return true;
+				}
+			}
+
+			if (cause.getCause() == cause) {
+				break;
+			}
+			cause = cause.getCause();
+		}
+		return false;
+	}
+
+	// records to be saved in one unit
+	private static class WriteRequest {
+		private final List<KeyedObject> records;
+		private final CompletableFuture<List<KeyedObject>> future = new CompletableFuture<>();
+
+		// a caller waits for the commit
+		private final boolean flush;
+
+		// journal record sequence
+		private Long sequence;
+
+		// new records
+		private final Set<KeyedObject> inserted = newInsertedSet();
+
+		WriteRequest(List<KeyedObject> records, boolean flush) {
+			this.records = records;
+			this.flush = flush;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package org.point85.domain.collector;
+
+/**
+ * Action taken when an event pipeline lane is full
+ *
+ */
+public enum OverloadPolicy {
+	// wait until the lane has room
+	BLOCK,
+
+	// discard the oldest queued event
+	DROP_OLDEST,
+
+	// replace a queued event for the same source id with the latest one
+	COALESCE;
+}
@@ -0,0 +1,267 @@
+package org.point85.domain.collector;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.function.Supplier;
+
+import org.point85.domain.persistence.EventPartitionManager;
+import org.point85.domain.persistence.PersistenceService;
+import org.point85.domain.plant.Equipment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The RetentionJob removes events older than the retention period of their
+ * equipment on a background timer, away from the event saving path. Events
+ * are deleted in bounded chunks, each in its own transaction, with a pause in
+ * between so that inserts are not blocked for long. The rollups of the
+ * equipment are then purged with the same cutoff. If an
+ * {@link EventPartitionManager} is set, old partitions are dropped instead.
+ *
+ */
+public class RetentionJob {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(RetentionJob.class);
+
+	// default time between runs
+	public static final Duration DEFAULT_INTERVAL = Duration.ofHours(1);
+
+	// default wait before the first run
+	public static final Duration DEFAULT_INITIAL_DELAY = Duration.ofMinutes(5);
+
+	// default maximum events deleted per transaction
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	// default wait in msec between chunks
+	public static final long DEFAULT_PAUSE_MSEC = 200;
+
+	// equipment to check
+	private final Supplier<Collection<Equipment>> equipmentSupplier;
+
+	private Duration interval = DEFAULT_INTERVAL;
+
+	private Duration initialDelay = DEFAULT_INITIAL_DELAY;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private long pauseMsec = DEFAULT_PAUSE_MSEC;
+
+	// optional partitioned event storage
+	private EventPartitionManager partitionManager;
+
+	// background timer
+	private Timer timer;
+
+	private volatile boolean running = false;
+
+	// ends a run in progress
+	private volatile boolean cancelled = false;
+
+	// one run at a time, separate from start and stop
+	private final Object runLock = new Object();
+
+	// wakes a run pausing between chunks
+	private final Object pauseLock = new Object();
+
+	// summary of the latest run
+	private volatile RetentionReport lastReport;
+
+	public RetentionJob(Supplier<Collection<Equipment>> equipmentSupplier) {
+		this.equipmentSupplier = equipmentSupplier;
+	}
+
+	public Duration getInterval() {
+		return interval;
+	}
+
+	public void setInterval(Duration interval) {
+		this.interval = interval;
+	}
+
+	public Duration getInitialDelay() {
+		return initialDelay;
+	}
+
+	public void setInitialDelay(Duration initialDelay) {
+		this.initialDelay = initialDelay;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize > 0 ? chunkSize : 1;
+	}
+
+	public long getPauseTime() {
+		return pauseMsec;
+	}
+
+	public void setPauseTime(long pauseMsec) {
+		this.pauseMsec = pauseMsec >= 0 ? pauseMsec : 0;
+	}
+
+	public EventPartitionManager getPartitionManager() {
+		return partitionManager;
+	}
+
+	public void setPartitionManager(EventPartitionManager partitionManager) {
+		this.partitionManager = partitionManager;
+	}
+
+	public RetentionReport getLastReport() {
+		return lastReport;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Schedule the job
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+
+		running = true;
+		cancelled = false;
+		timer = new Timer("oee-retention", true);
+		timer.schedule(new RetentionTask(), initialDelay.toMillis(), interval.toMillis());
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Scheduled retention job for interval (min): " + interval.toMinutes());
+		}
+	}
+
+	/**
+	 * Cancel the job without waiting for a run in progress. The run stops after
+	 * its current chunk.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+
+		running = false;
+		cancelled = true;
+		timer.cancel();
+		timer = null;
+
+		synchronized (pauseLock) {
+			pauseLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Remove the expired events now
+	 *
+	 * @return {@link RetentionReport}
+	 * @throws Exception Exception
+	 */
+	public RetentionReport execute() throws Exception {
+		synchronized (runLock) {
+			return executeRun();
+		}
+	}
+
+	private RetentionReport executeRun() throws Exception {
+		RetentionReport report = new RetentionReport(OffsetDateTime.now());
+		long startNanos = System.nanoTime();
+
+		if (partitionManager != null) {
+			// retention applies to the whole partition
+			report.setDroppedPartitions(partitionManager.maintain());
+		} else {
+			for (Equipment equipment : equipmentSupplier.get()) {
+				if (cancelled) {
+					break;
+				}
+
+				try {
+					purge(equipment, report);
+				} catch (InterruptedException e) {
+					throw e;
+				} catch (Exception e) {
+					// carry on with the other equipment
+					logger.error("Unable to purge records for equipment " + equipment.getName(), e);
+				}
+			}
+		}
+
+		report.setElapsed(Duration.ofNanos(System.nanoTime() - startNanos));
+		lastReport = report;
+
+		if (logger.isInfoEnabled()) {
+			logger.info(report.toString());
+		}
+		return report;
+	}
+
+	private void purge(Equipment equipment, RetentionReport report) throws Exception {
+		Duration days = equipment.findRetentionPeriod();
+
+		if (days == null) {
+			days = Equipment.DEFAULT_RETENTION_PERIOD;
+		} else if (days.equals(Duration.ZERO)) {
+			// nothing is saved
+			return;
+		}
+
+		OffsetDateTime cutoff = OffsetDateTime.now().minusDays(days.toDays());
+		report.incrementEquipmentCount();
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Purging records for equipment " + equipment.getName() + " older than " + cutoff);
+		}
+
+		int deleted = 0;
+
+		do {
+			deleted = PersistenceService.instance().purge(equipment, cutoff, chunkSize);
+			report.addDeletedCount(deleted);
+
+			if (deleted == chunkSize && pauseMsec > 0) {
+				// let the inserts through
+				pause();
+			}
+		} while (deleted == chunkSize && !cancelled);
+
+		if (!cancelled) {
+			report.addDeletedRollups(PersistenceService.instance().purgeRollups(equipment, cutoff));
+		}
+	}
+
+	// wait between chunks unless the job is stopped
+	private void pause() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + pauseMsec;
+
+		synchronized (pauseLock) {
+			long remaining = pauseMsec;
+
+			while (!cancelled && remaining > 0) {
+				pauseLock.wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+		}
+	}
+
+	// runs on the timer thread
+	private class RetentionTask extends TimerTask {
+		@Override
+		public void run() {
+			try {
+				execute();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				logger.error("Retention job failed.", e);
+			}
+		}
+	}
+}
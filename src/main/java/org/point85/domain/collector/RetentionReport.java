@@ -0,0 +1,83 @@
+package org.point85.domain.collector;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * The RetentionReport summarizes one run of the {@link RetentionJob}
+ *
+ */
+public class RetentionReport {
+	// when the run started
+	private final OffsetDateTime startTime;
+
+	// number of equipment checked
+	private int equipmentCount = 0;
+
+	// number of events deleted
+	private long deletedCount = 0;
+
+	// number of rollups deleted
+	private long deletedRollups = 0;
+
+	// number of event partitions dropped
+	private int droppedPartitions = 0;
+
+	// time spent
+	private Duration elapsed = Duration.ZERO;
+
+	RetentionReport(OffsetDateTime startTime) {
+		this.startTime = startTime;
+	}
+
+	public OffsetDateTime getStartTime() {
+		return startTime;
+	}
+
+	public int getEquipmentCount() {
+		return equipmentCount;
+	}
+
+	void incrementEquipmentCount() {
+		equipmentCount++;
+	}
+
+	public long getDeletedCount() {
+		return deletedCount;
+	}
+
+	void addDeletedCount(int count) {
+		deletedCount += count;
+	}
+
+	public long getDeletedRollups() {
+		return deletedRollups;
+	}
+
+	void addDeletedRollups(int count) {
+		deletedRollups += count;
+	}
+
+	public int getDroppedPartitions() {
+		return droppedPartitions;
+	}
+
+	void setDroppedPartitions(int count) {
+		droppedPartitions = count;
+	}
+
+	public Duration getElapsed() {
+		return elapsed;
+	}
+
+	void setElapsed(Duration elapsed) {
+		this.elapsed = elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "Retention started " + startTime + " deleted " + deletedCount + " events of " + equipmentCount
+				+ " equipment, " + deletedRollups
+				+ " rollups and dropped " + droppedPartitions + " partitions in " + elapsed.toMillis() + " msec";
+	}
+}
@@ -1,7 +1,12 @@
 package org.point85.domain.db;
 
+import java.time.Duration;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import org.point85.domain.persistence.PersistenceService;
 import org.point85.domain.polling.PollingClient;
@@ -10,7 +15,14 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Class to connect to a database server with the event interface table and poll
- * for new records for the specified source id.
+ * for new records for the specified source id. By default every READY record is
+ * read. With a positive claim size each poll claims a batch of READY records by
+ * moving them to PROCESSING, so that several collectors can share the table.
+ * Records left in PROCESSING for longer than the claim timeout, for example by
+ * a collector that stopped, are moved back to READY. Claiming needs the
+ * CLAIM_TIME column added by SchemaMigration. Final statuses that could not
+ * be saved are retried on each poll, and nothing is reclaimed until they have
+ * been saved, so that resolved records are not resolved again.
  *
  */
 public class DatabaseEventClient extends PollingClient {
@@ -23,9 +35,28 @@ public class DatabaseEventClient extends PollingClient {
 	// persistence service
 	private PersistenceService persistenceService;
 
+	// default maximum number of records claimed per poll, off until the table has
+	// a CLAIM_TIME column
+	public static final int DEFAULT_CLAIM_SIZE = 0;
+
+	// default time allowed to process a claimed record
+	public static final Duration DEFAULT_CLAIM_TIMEOUT = Duration.ofMinutes(10);
+
 	// JDBC connection URL
 	private String jdbcUrl;
-	
+
+	// records claimed per poll, 0 to read all READY records
+	private int claimSize = DEFAULT_CLAIM_SIZE;
+
+	// claimed records still in PROCESSING after this time are claimed again
+	private Duration claimTimeout = DEFAULT_CLAIM_TIMEOUT;
+
+	// next check for records to reclaim by source id
+	private final Map<String, Long> reclaimTimes = new ConcurrentHashMap<>();
+
+	// resolved records whose final status could not be saved
+	private final Deque<List<DatabaseEvent>> incomplete = new ConcurrentLinkedDeque<>();
+
 	public DatabaseEventClient() {
 		super();
 	}
@@ -40,6 +71,22 @@ public class DatabaseEventClient extends PollingClient {
 		return jdbcUrl;
 	}
 
+	public int getClaimSize() {
+		return claimSize;
+	}
+
+	public void setClaimSize(int claimSize) {
+		this.claimSize = claimSize > 0 ? claimSize : 0;
+	}
+
+	public Duration getClaimTimeout() {
+		return claimTimeout;
+	}
+
+	public void setClaimTimeout(Duration claimTimeout) {
+		this.claimTimeout = claimTimeout;
+	}
+
 	public void connectToServer(String jdbcUrl, String userName, String password) throws Exception {
 		if (logger.isInfoEnabled()) {
 			logger.info("Connecting with JDBC URL " + jdbcUrl + " with user " + userName);
@@ -58,6 +105,11 @@ public class DatabaseEventClient extends PollingClient {
 		cancelPolling();
 
 		if (persistenceService != null) {
+			// last chance for the held statuses
+			if (!saveIncomplete()) {
+				logger.error("Final status of " + incomplete.size()
+						+ " batches of events could not be saved, they remain in processing");
+			}
 			persistenceService.close();
 		}
 	}
@@ -68,6 +120,16 @@ public class DatabaseEventClient extends PollingClient {
 			logger.info("Querying for READY events for source " + sourceId);
 		}
 
+		if (!saveIncomplete()) {
+			// still unavailable
+			return;
+		}
+
+		if (claimSize > 0) {
+			claim(sourceId);
+			return;
+		}
+
 		// query database interface table for new records
 		List<DatabaseEvent> events = persistenceService.fetchDatabaseEvents(DatabaseEventStatus.READY, sourceId);
 		eventListener.resolveDatabaseEvents(this, events);
@@ -92,4 +154,83 @@ public class DatabaseEventClient extends PollingClient {
 	public synchronized DatabaseEvent save(DatabaseEvent event) throws Exception {
 		return (DatabaseEvent) persistenceService.save(event);
 	}
+
+	private void claim(String sourceId) {
+		reclaim(sourceId);
+
+		try {
+			List<DatabaseEvent> events = persistenceService.claimDatabaseEvents(sourceId, claimSize);
+
+			if (!events.isEmpty()) {
+				eventListener.resolveClaimedDatabaseEvents(this, events);
+			}
+		} catch (Exception e) {
+			logger.error("Unable to claim events for source " + sourceId + ". " + e.getMessage());
+		}
+	}
+
+	// move records left in PROCESSING back to READY, on the first poll then once
+	// per timeout
+	private void reclaim(String sourceId) {
+		long now = System.currentTimeMillis();
+		Long next = reclaimTimes.get(sourceId);
+
+		if ((next != null && now < next) || !incomplete.isEmpty()) {
+			// resolved records could be among them
+			return;
+		}
+		reclaimTimes.put(sourceId, now + claimTimeout.toMillis());
+
+		try {
+			int reclaimed = persistenceService.reclaimDatabaseEvents(sourceId, claimTimeout);
+
+			if (reclaimed > 0) {
+				logger.warn("Reclaimed " + reclaimed + " events for source " + sourceId + " left in processing");
+			}
+		} catch (Exception e) {
+			logger.error("Unable to reclaim events for source " + sourceId + ". " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Save the final status of claimed events. If the status cannot be saved,
+	 * it is held and saved again before the next poll.
+	 * 
+	 * @param events List of {@link DatabaseEvent}
+	 * @throws Exception Exception
+	 */
+	public void complete(List<DatabaseEvent> events) throws Exception {
+		try {
+			persistenceService.updateDatabaseEvents(events);
+		} catch (Exception e) {
+			incomplete.add(events);
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the number of batches of events whose final status is waiting to be
+	 * saved
+	 * 
+	 * @return incomplete count
+	 */
+	public int getIncompleteCount() {
+		return incomplete.size();
+	}
+
+	// save the held statuses in order, false if one still fails
+	private synchronized boolean saveIncomplete() {
+		List<DatabaseEvent> events = null;
+
+		while ((events = incomplete.peek()) != null) {
+			try {
+				persistenceService.updateDatabaseEvents(events);
+				incomplete.poll();
+			} catch (Exception e) {
+				logger.error("Unable to save the final status of " + events.size() + " events. " + e.getMessage());
+				return false;
+			}
+		}
+		return true;
+	}
 }
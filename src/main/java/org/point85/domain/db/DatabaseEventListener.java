@@ -2,6 +2,19 @@ package org.point85.domain.db;
 
 import java.util.List;
 
+import org.slf4j.LoggerFactory;
+
 public interface DatabaseEventListener {
 	void resolveDatabaseEvents(DatabaseEventClient client, List<DatabaseEvent> events);
+
+	// events already moved to PROCESSING, the final statuses are saved together
+	default void resolveClaimedDatabaseEvents(DatabaseEventClient client, List<DatabaseEvent> events) {
+		resolveDatabaseEvents(client, events);
+
+		try {
+			client.complete(events);
+		} catch (Exception e) {
+			LoggerFactory.getLogger(DatabaseEventListener.class).error("Unable to save database events.", e);
+		}
+	}
 }
@@ -3,6 +3,8 @@ package org.point85.domain.oee;
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,20 +33,23 @@ public class EquipmentLoss {
 	// date and time accumulation ends
 	private OffsetDateTime endDateTime;
 
-	// map of losses
-	private final Map<TimeLoss, Duration> lossMap = new HashMap<>();
+	// losses in nanoseconds by category ordinal
+	private final long[] lossNanos = new long[TimeLoss.values().length];
 
-	// map of reasons
-	private final Map<TimeLoss, Map<Reason, Duration>> reasonMap = new HashMap<>();
+	// reason losses in nanoseconds by category
+	private final Map<TimeLoss, Map<Reason, long[]>> reasonNanos = new EnumMap<>(TimeLoss.class);
 
 	// quantities produced
-	private Quantity goodQuantity;
-	private Quantity startupQuantity;
-	private Quantity rejectQuantity;
+	private final AmountCounter goodAmount = new AmountCounter();
+	private final AmountCounter startupAmount = new AmountCounter();
+	private final AmountCounter rejectAmount = new AmountCounter();
 
 	// equipment design speed
 	private Quantity designSpeed;
 
+	// time of grouped events, or -1 for the whole time period
+	private long eventNanos = -1L;
+
 	// history
 	private List<OeeEvent> eventRecords = new ArrayList<>();
 
@@ -54,29 +59,8 @@ public class EquipmentLoss {
 	}
 
 	private void resetLosses() {
-		// summary losses
-		lossMap.put(TimeLoss.NO_LOSS, Duration.ZERO);
-		lossMap.put(TimeLoss.UNSCHEDULED, Duration.ZERO);
-		lossMap.put(TimeLoss.MINOR_STOPPAGES, Duration.ZERO);
-		lossMap.put(TimeLoss.PLANNED_DOWNTIME, Duration.ZERO);
-		lossMap.put(TimeLoss.REDUCED_SPEED, Duration.ZERO);
-		lossMap.put(TimeLoss.REJECT_REWORK, Duration.ZERO);
-		lossMap.put(TimeLoss.SETUP, Duration.ZERO);
-		lossMap.put(TimeLoss.UNPLANNED_DOWNTIME, Duration.ZERO);
-		lossMap.put(TimeLoss.NOT_SCHEDULED, Duration.ZERO);
-		lossMap.put(TimeLoss.STARTUP_YIELD, Duration.ZERO);
-
-		// reason losses
-		reasonMap.put(TimeLoss.NO_LOSS, new HashMap<>());
-		reasonMap.put(TimeLoss.UNSCHEDULED, new HashMap<>());
-		reasonMap.put(TimeLoss.MINOR_STOPPAGES, new HashMap<>());
-		reasonMap.put(TimeLoss.PLANNED_DOWNTIME, new HashMap<>());
-		reasonMap.put(TimeLoss.REDUCED_SPEED, new HashMap<>());
-		reasonMap.put(TimeLoss.REJECT_REWORK, new HashMap<>());
-		reasonMap.put(TimeLoss.SETUP, new HashMap<>());
-		reasonMap.put(TimeLoss.UNPLANNED_DOWNTIME, new HashMap<>());
-		reasonMap.put(TimeLoss.NOT_SCHEDULED, new HashMap<>());
-		reasonMap.put(TimeLoss.STARTUP_YIELD, new HashMap<>());
+		Arrays.fill(lossNanos, 0L);
+		reasonNanos.clear();
 	}
 
 	public void reset() {
@@ -88,19 +72,20 @@ public class EquipmentLoss {
 		startDateTime = null;
 		endDateTime = null;
 
-		goodQuantity = null;
-		startupQuantity = null;
-		rejectQuantity = null;
+		goodAmount.reset();
+		startupAmount.reset();
+		rejectAmount.reset();
 
 		designSpeed = null;
+		eventNanos = -1L;
 	}
 
 	public List<ParetoItem> getLossItems(Unit timeUnit) throws Exception {
 		List<ParetoItem> items = new ArrayList<>();
 
-		for (Entry<TimeLoss, Duration> entry : lossMap.entrySet()) {
-			if (entry.getKey().isLoss()) {
-				ParetoItem item = fromLossCategory(entry.getKey(), timeUnit);
+		for (TimeLoss category : TimeLoss.values()) {
+			if (category.isLoss()) {
+				ParetoItem item = fromLossCategory(category, timeUnit);
 				items.add(item);
 			}
 		}
@@ -124,54 +109,81 @@ public class EquipmentLoss {
 	}
 
 	public Duration getDuration() {
-		if (startDateTime == null || endDateTime == null) {
+		if (eventNanos >= 0) {
+			return Duration.ofNanos(eventNanos);
+		} else if (startDateTime == null || endDateTime == null) {
 			return Duration.ZERO;
 		} else {
 			return Duration.between(startDateTime, endDateTime);
 		}
 	}
 
+	// the duration is the time of the events instead of the time period
+	void setEventTime(long nanos) {
+		eventNanos = nanos;
+	}
+
+	void incrementEventTime(long nanos) {
+		eventNanos += nanos;
+	}
+
 	public Duration getLoss(TimeLoss category) {
-		return lossMap.get(category);
+		return Duration.ofNanos(lossNanos[category.ordinal()]);
 	}
 
 	void setLoss(TimeLoss category, Duration duration) {
-		lossMap.put(category, duration);
+		lossNanos[category.ordinal()] = duration.toNanos();
+	}
+
+	// summary only, without a reason
+	void incrementLoss(TimeLoss category, Duration duration) {
+		lossNanos[category.ordinal()] += duration.toNanos();
 	}
 
 	public void incrementReasonLoss(Reason reason, Duration duration) {
-		TimeLoss loss = reason.getLossCategory();
-		Map<Reason, Duration> losses = reasonMap.get(loss);
+		incrementReasonLoss(reason, duration.toNanos());
+	}
 
-		Duration reasonDuration = losses.get(reason);
+	void incrementReasonLoss(Reason reason, long nanos) {
+		Map<Reason, long[]> losses = reasonNanos.get(reason.getLossCategory());
 
-		if (reasonDuration == null) {
-			reasonDuration = Duration.ZERO;
+		if (losses == null) {
+			losses = new HashMap<>();
+			reasonNanos.put(reason.getLossCategory(), losses);
 		}
 
-		Duration newDuration = reasonDuration.plus(duration);
-		losses.put(reason, newDuration);
+		long[] reasonLoss = losses.get(reason);
+
+		if (reasonLoss == null) {
+			reasonLoss = new long[1];
+			losses.put(reason, reasonLoss);
+		}
+		reasonLoss[0] += nanos;
 	}
 
 	public void incrementLoss(Reason reason, Duration duration) {
 		if (duration == null) {
 			return;
 		}
-		TimeLoss category = reason.getLossCategory();
+		incrementLoss(reason, duration.toNanos());
+	}
 
-		// summary map
-		Duration newDuration = lossMap.get(category).plus(duration);
-		setLoss(category, newDuration);
+	void incrementLoss(Reason reason, long nanos) {
+		// summary
+		lossNanos[reason.getLossCategory().ordinal()] += nanos;
 
-		// reason map too
-		incrementReasonLoss(reason, duration);
+		// reason too
+		incrementReasonLoss(reason, nanos);
 	}
 
 	public Map<Reason, Duration> getLossReasonsByCategory(TimeLoss loss) {
-		Map<Reason, Duration> losses = reasonMap.get(loss);
+		Map<Reason, Duration> losses = new HashMap<>();
+		Map<Reason, long[]> reasonLosses = reasonNanos.get(loss);
 
-		if (losses == null) {
-			losses = new HashMap<>();
+		if (reasonLosses != null) {
+			for (Entry<Reason, long[]> entry : reasonLosses.entrySet()) {
+				losses.put(entry.getKey(), Duration.ofNanos(entry.getValue()[0]));
+			}
 		}
 		return losses;
 	}
@@ -213,6 +225,8 @@ public class EquipmentLoss {
 	}
 
 	public float calculateHighLevelOeePercentage() throws Exception {
+		Quantity goodQuantity = getGoodQuantity();
+
 		if (getAvailableTime() == null || goodQuantity == null) {
 			throw new Exception(DomainLocalizer.instance().getErrorString("no.time"));
 		}
@@ -272,13 +286,13 @@ public class EquipmentLoss {
 	}
 
 	public void calculateReducedSpeedLoss() throws Exception {
-		Duration goodDur = convertToLostTime(goodQuantity);
+		Duration goodDur = convertToLostTime(getGoodQuantity());
 		setLoss(TimeLoss.NO_LOSS, goodDur);
 
-		Duration rejectDur = convertToLostTime(rejectQuantity);
+		Duration rejectDur = convertToLostTime(getRejectQuantity());
 		setLoss(TimeLoss.REJECT_REWORK, rejectDur);
 
-		Duration startupDur = convertToLostTime(startupQuantity);
+		Duration startupDur = convertToLostTime(getStartupQuantity());
 		setLoss(TimeLoss.STARTUP_YIELD, startupDur);
 
 		Duration npt = getNetProductionTime();
@@ -295,21 +309,8 @@ public class EquipmentLoss {
 	}
 
 	public Quantity getTotalQuantity(UnitOfMeasure uom) throws Exception {
-		Quantity total = new Quantity(0.0d, uom);
-
-		if (goodQuantity != null) {
-			total = total.add(goodQuantity);
-		}
-
-		if (rejectQuantity != null) {
-			total = total.add(rejectQuantity.convert(uom));
-		}
-
-		if (startupQuantity != null) {
-			total = total.add(startupQuantity.convert(uom));
-		}
-
-		return total;
+		double total = goodAmount.getAmount(uom) + rejectAmount.getAmount(uom) + startupAmount.getAmount(uom);
+		return new Quantity(total, uom);
 	}
 
 	public Quantity calculateActualSpeed(Quantity designSpeed) throws Exception {
@@ -349,6 +350,10 @@ public class EquipmentLoss {
 		}
 
 		// quantities
+		Quantity goodQuantity = getGoodQuantity();
+		Quantity rejectQuantity = getRejectQuantity();
+		Quantity startupQuantity = getStartupQuantity();
+
 		sb.append("\nGood: ");
 		if (goodQuantity != null) {
 			sb.append(goodQuantity.getAmount()).append(' ').append(goodQuantity.getUOM().getSymbol());
@@ -372,8 +377,8 @@ public class EquipmentLoss {
 
 		// losses
 		sb.append("\nLosses");
-		for (Entry<TimeLoss, Duration> entry : lossMap.entrySet()) {
-			sb.append('\n').append(entry.getKey().toString()).append(" = ").append(entry.getValue().toString());
+		for (TimeLoss category : TimeLoss.values()) {
+			sb.append('\n').append(category.toString()).append(" = ").append(getLoss(category).toString());
 		}
 
 		// times
@@ -413,66 +418,54 @@ public class EquipmentLoss {
 	}
 
 	public Quantity getGoodQuantity() {
-		return goodQuantity;
+		return goodAmount.toQuantity();
 	}
 
 	public void setGoodQuantity(Quantity goodQuantity) {
-		this.goodQuantity = goodQuantity;
+		goodAmount.set(goodQuantity);
 	}
 
 	public Quantity getStartupQuantity() {
-		return startupQuantity;
+		return startupAmount.toQuantity();
 	}
 
 	public void setStartupQuantity(Quantity startupQuantity) {
-		this.startupQuantity = startupQuantity;
+		startupAmount.set(startupQuantity);
 	}
 
 	public Quantity getRejectQuantity() {
-		return rejectQuantity;
+		return rejectAmount.toQuantity();
 	}
 
 	public void setRejectQuantity(Quantity rejectQuantity) {
-		this.rejectQuantity = rejectQuantity;
+		rejectAmount.set(rejectQuantity);
 	}
 
 	public Quantity incrementGoodQuantity(Quantity quantity) throws Exception {
-		Quantity total = goodQuantity;
-
-		if (total != null) {
-			total = total.add(quantity);
-		} else {
-			total = quantity;
-		}
-		setGoodQuantity(total);
-
-		return total;
+		goodAmount.add(quantity.getAmount(), quantity.getUOM());
+		return getGoodQuantity();
 	}
 
 	public Quantity incrementStartupQuantity(Quantity quantity) throws Exception {
-		Quantity total = startupQuantity;
-
-		if (total != null) {
-			total = total.add(quantity);
-		} else {
-			total = quantity;
-		}
-		setStartupQuantity(total);
-
-		return total;
+		startupAmount.add(quantity.getAmount(), quantity.getUOM());
+		return getStartupQuantity();
 	}
 
 	public Quantity incrementRejectQuantity(Quantity quantity) throws Exception {
-		Quantity total = rejectQuantity;
+		rejectAmount.add(quantity.getAmount(), quantity.getUOM());
+		return getRejectQuantity();
+	}
 
-		if (total != null) {
-			total = total.add(quantity);
-		} else {
-			total = quantity;
-		}
-		setRejectQuantity(total);
+	void incrementGoodAmount(double amount, UnitOfMeasure uom) throws Exception {
+		goodAmount.add(amount, uom);
+	}
+
+	void incrementStartupAmount(double amount, UnitOfMeasure uom) throws Exception {
+		startupAmount.add(amount, uom);
+	}
 
-		return total;
+	void incrementRejectAmount(double amount, UnitOfMeasure uom) throws Exception {
+		rejectAmount.add(amount, uom);
 	}
 
 	public Equipment getEquipment() {
@@ -506,4 +499,42 @@ public class EquipmentLoss {
 		}
 		return eqm;
 	}
+
+	// amount in the unit of the first quantity added
+	private static class AmountCounter {
+		private double amount;
+		private UnitOfMeasure uom;
+
+		private void reset() {
+			amount = 0.0d;
+			uom = null;
+		}
+
+		private void set(Quantity quantity) {
+			amount = quantity != null ? quantity.getAmount() : 0.0d;
+			uom = quantity != null ? quantity.getUOM() : null;
+		}
+
+		private void add(double toAdd, UnitOfMeasure toAddUOM) throws Exception {
+			if (uom == null) {
+				amount = toAdd;
+				uom = toAddUOM;
+			} else if (uom == toAddUOM || uom.equals(toAddUOM)) {
+				amount += toAdd;
+			} else {
+				amount += new Quantity(toAdd, toAddUOM).convert(uom).getAmount();
+			}
+		}
+
+		private double getAmount(UnitOfMeasure toUOM) throws Exception {
+			if (uom == null) {
+				return 0.0d;
+			}
+			return uom == toUOM || uom.equals(toUOM) ? amount : new Quantity(amount, uom).convert(toUOM).getAmount();
+		}
+
+		private Quantity toQuantity() {
+			return uom != null ? new Quantity(amount, uom) : null;
+		}
+	}
 }
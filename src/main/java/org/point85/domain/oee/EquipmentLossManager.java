@@ -1,21 +1,36 @@
 package org.point85.domain.oee;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.point85.domain.collector.OeeEvent;
+import org.point85.domain.collector.OeeEventRow;
 import org.point85.domain.i18n.DomainLocalizer;
 import org.point85.domain.persistence.PersistenceService;
 import org.point85.domain.plant.Equipment;
 import org.point85.domain.plant.EquipmentMaterial;
 import org.point85.domain.plant.Material;
+import org.point85.domain.plant.PlantEntity;
 import org.point85.domain.plant.Reason;
+import org.point85.domain.schedule.ShiftInstance;
 import org.point85.domain.schedule.WorkSchedule;
+import org.point85.domain.script.OeeEventType;
 import org.point85.domain.uom.Quantity;
+import org.point85.domain.uom.UnitOfMeasure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,29 +38,19 @@ public final class EquipmentLossManager {
 	// logger
 	private static final Logger logger = LoggerFactory.getLogger(EquipmentLossManager.class);
 
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
 	private EquipmentLossManager() {
 	}
 
 	public static void calculateEquipmentLoss(EquipmentLoss equipmentLoss, OffsetDateTime from, OffsetDateTime to)
 			throws Exception {
 
-		// time period
-		equipmentLoss.setStartDateTime(from);
-		equipmentLoss.setEndDateTime(to);
+		initialize(equipmentLoss, from, to);
 
 		Equipment equipment = equipmentLoss.getEquipment();
 		Material material = equipmentLoss.getMaterial();
 
-		EquipmentMaterial eqm = equipment.getEquipmentMaterial(material);
-
-		if (eqm == null || eqm.getRunRate() == null) {
-			throw new Exception(DomainLocalizer.instance().getErrorString("no.speed", equipment.getName(),
-					material.getDisplayString()));
-		}
-
-		// IRR
-		equipmentLoss.setDesignSpeed(eqm.getRunRate());
-
 		// material production
 		List<OeeEvent> productions = PersistenceService.instance().fetchProduction(equipment, material, from, to);
 
@@ -145,6 +150,639 @@ public final class EquipmentLossManager {
 			record.setLostTime(duration);
 		}
 
+		finish(equipmentLoss);
+	}
+
+	/**
+	 * Calculate the losses from rows of the event columns instead of the event
+	 * entities. The event records of the {@link EquipmentLoss} are not
+	 * populated, so this is the faster calculation when only the losses are
+	 * needed, for example over a long period.
+	 * 
+	 * @param equipmentLoss {@link EquipmentLoss}
+	 * @param from          Starting date and time
+	 * @param to            Ending date and time
+	 * @throws Exception Exception
+	 */
+	public static void calculateEquipmentLossFromRows(EquipmentLoss equipmentLoss, OffsetDateTime from,
+			OffsetDateTime to) throws Exception {
+
+		initialize(equipmentLoss, from, to);
+
+		Equipment equipment = equipmentLoss.getEquipment();
+		Material material = equipmentLoss.getMaterial();
+
+		// referenced entities by key
+		Map<Long, Reason> reasons = new HashMap<>();
+		Map<Long, UnitOfMeasure> uoms = new HashMap<>();
+
+		// material production
+		List<OeeEventRow> productions = PersistenceService.instance().fetchProductionRows(equipment, material, from,
+				to);
+
+		addProductionRows(equipmentLoss, productions, reasons, uoms, true);
+
+		// availability losses
+		List<OeeEventRow> rows = PersistenceService.instance().fetchAvailabilityRows(equipment, from, to);
+
+		long fromNanos = toNanos(from);
+		long toNanos = toNanos(to);
+
+		for (int i = 0; i < rows.size(); i++) {
+			OeeEventRow row = rows.get(i);
+
+			// skip no loss records
+			TimeLoss lossCategory = row.getLossCategory();
+
+			if (lossCategory == null || lossCategory.equals(TimeLoss.NO_LOSS) || !row.hasDuration()) {
+				continue;
+			}
+
+			long duration = row.getDuration();
+			long start = row.getStartTime();
+
+			// check first record for edge time
+			if (i == 0) {
+				// first record
+				if (fromNanos > start) {
+					// get time in interval
+					duration -= fromNanos - start;
+				}
+			} else if (i == (rows.size() - 1)) {
+				// last record
+				if (!row.hasEndTime() || toNanos < row.getEndTime()) {
+					// get time in interval, clipped to the event duration
+					duration = Math.min(duration, toNanos - start);
+				}
+			}
+
+			// increment the loss for this reason
+			equipmentLoss.incrementLoss(lookupReason(row.getReasonKey(), reasons), duration);
+		}
+
+		finish(equipmentLoss);
+	}
+
+	/**
+	 * Calculate the equipment loss from the hourly {@link OeeRollup}s for the
+	 * whole hours in the time period, and from the events only for the partial
+	 * hours at its edges. Losses are not available by reason.
+	 * 
+	 * @param equipmentLoss {@link EquipmentLoss}
+	 * @param from          Starting date and time
+	 * @param to            Ending date and time
+	 * @throws Exception Exception
+	 */
+	public static void calculateEquipmentLossFromRollups(EquipmentLoss equipmentLoss, OffsetDateTime from,
+			OffsetDateTime to) throws Exception {
+
+		initialize(equipmentLoss, from, to);
+
+		Equipment equipment = equipmentLoss.getEquipment();
+
+		// whole hours
+		OffsetDateTime first = from.truncatedTo(ChronoUnit.HOURS);
+
+		if (first.isBefore(from)) {
+			first = first.plusHours(1);
+		}
+		OffsetDateTime last = to.truncatedTo(ChronoUnit.HOURS);
+
+		if (first.isBefore(last)) {
+			addRollups(equipmentLoss,
+					PersistenceService.instance().fetchRollups(equipment, RollupBucket.HOUR, first, last));
+
+			// partial hours
+			addEdge(equipmentLoss, from, first);
+			addEdge(equipmentLoss, last, to);
+		} else {
+			addEdge(equipmentLoss, from, to);
+		}
+
+		finish(equipmentLoss);
+	}
+
+	/**
+	 * Calculate the equipment loss from shift {@link OeeRollup}s. The time period
+	 * is from the start of the earliest to the end of the latest rollup. Losses
+	 * are not available by reason.
+	 * 
+	 * @param equipmentLoss {@link EquipmentLoss}
+	 * @param rollups       List of {@link OeeRollup}
+	 * @throws Exception Exception
+	 */
+	public static void calculateEquipmentLossFromRollups(EquipmentLoss equipmentLoss, List<OeeRollup> rollups)
+			throws Exception {
+		if (rollups.isEmpty()) {
+			return;
+		}
+
+		OffsetDateTime from = null;
+		OffsetDateTime to = null;
+
+		for (OeeRollup rollup : rollups) {
+			if (from == null || rollup.getStartTime().isBefore(from)) {
+				from = rollup.getStartTime();
+			}
+
+			if (to == null || rollup.getEndTime().isAfter(to)) {
+				to = rollup.getEndTime();
+			}
+		}
+
+		initialize(equipmentLoss, from, to);
+		addRollups(equipmentLoss, rollups);
+		finish(equipmentLoss);
+	}
+
+	/**
+	 * Calculate the equipment losses of each bucket of the time period for a
+	 * trend chart. The buckets are consecutive and the last one ends at the end
+	 * of the time period. The losses of all buckets are calculated from one
+	 * query and one pass over its rows, and an availability event that spans a
+	 * bucket boundary is split between the buckets.
+	 * 
+	 * @param equipment  {@link Equipment}
+	 * @param material   {@link Material} produced
+	 * @param from       Starting date and time
+	 * @param to         Ending date and time
+	 * @param bucketSize Duration of a bucket
+	 * @return List of {@link EquipmentLoss} in time order
+	 * @throws Exception Exception
+	 */
+	public static List<EquipmentLoss> calculateEquipmentLossTrend(Equipment equipment, Material material,
+			OffsetDateTime from, OffsetDateTime to, Duration bucketSize) throws Exception {
+		if (bucketSize == null || bucketSize.isZero() || bucketSize.isNegative()) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("bucket.size", bucketSize));
+		}
+
+		List<EquipmentLoss> buckets = new ArrayList<>();
+		OffsetDateTime start = from;
+
+		while (start.isBefore(to)) {
+			OffsetDateTime end = start.plus(bucketSize);
+
+			if (end.isAfter(to)) {
+				end = to;
+			}
+			buckets.add(createBucket(equipment, material, start, end));
+			start = end;
+		}
+
+		calculateTrend(buckets, from, to);
+		return buckets;
+	}
+
+	/**
+	 * Calculate the equipment losses of each shift instance of the work schedule
+	 * in the time period for a trend chart. A shift instance at an edge of the
+	 * time period is clipped to it. See
+	 * {@link #calculateEquipmentLossTrend(Equipment, Material, OffsetDateTime, OffsetDateTime, Duration)}
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param material  {@link Material} produced
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return List of {@link EquipmentLoss} in time order
+	 * @throws Exception Exception
+	 */
+	public static List<EquipmentLoss> calculateEquipmentLossTrend(Equipment equipment, Material material,
+			OffsetDateTime from, OffsetDateTime to) throws Exception {
+		WorkSchedule schedule = equipment.findWorkSchedule();
+
+		if (schedule == null) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("no.work.schedule", equipment.getName()));
+		}
+
+		// a shift can start on the day before
+		List<ShiftInstance> instances = new ArrayList<>();
+
+		for (LocalDate day = from.toLocalDate().minusDays(1); !day.isAfter(to.toLocalDate()); day = day.plusDays(1)) {
+			instances.addAll(schedule.getShiftInstancesForDay(day));
+		}
+		Collections.sort(instances);
+
+		List<EquipmentLoss> buckets = new ArrayList<>();
+
+		for (ShiftInstance instance : instances) {
+			OffsetDateTime start = OffsetDateTime.of(instance.getStartTime(), from.getOffset());
+			OffsetDateTime end = OffsetDateTime.of(instance.getEndTime(), from.getOffset());
+
+			if (start.isBefore(from)) {
+				start = from;
+			}
+
+			if (end.isAfter(to)) {
+				end = to;
+			}
+
+			if (start.isBefore(end)) {
+				buckets.add(createBucket(equipment, material, start, end));
+			}
+		}
+
+		calculateTrend(buckets, from, to);
+		return buckets;
+	}
+
+	/**
+	 * Calculate the losses of the equipment under the plant entity grouped by an
+	 * attribute of the events, for example to compare the teams of a plant. The
+	 * losses of all groups are calculated from one query and one pass over its
+	 * rows. A group holds an {@link EquipmentLoss} for each piece of equipment and
+	 * material, since the design speed depends on both. Its time is that of its
+	 * availability events in the time period instead of the time period itself,
+	 * and an event is in the group of its starting shift and team. Events without
+	 * the attribute or without a material are not included, nor are those of
+	 * equipment and material that cannot be calculated, for example without a
+	 * run rate. These are logged.
+	 * 
+	 * @param entity   {@link PlantEntity}
+	 * @param grouping {@link LossGrouping}
+	 * @param from     Starting date and time
+	 * @param to       Ending date and time
+	 * @return Map of {@link PlantEntityLoss} by group name
+	 * @throws Exception Exception
+	 */
+	public static Map<String, PlantEntityLoss> calculateEquipmentLossByGroup(PlantEntity entity, LossGrouping grouping,
+			OffsetDateTime from, OffsetDateTime to) throws Exception {
+		// equipment by key
+		Map<Long, Equipment> equipmentMap = new HashMap<>();
+		collectEquipment(entity, equipmentMap);
+
+		Map<String, PlantEntityLoss> groups = new TreeMap<>();
+
+		if (equipmentMap.isEmpty()) {
+			return groups;
+		}
+
+		// referenced entities by key
+		Map<Long, Reason> reasons = new HashMap<>();
+		Map<Long, UnitOfMeasure> uoms = new HashMap<>();
+		Map<Long, Material> materials = new HashMap<>();
+
+		// by group name, equipment key and material key
+		Map<List<Object>, EquipmentLoss> accumulators = new LinkedHashMap<>();
+
+		// equipment and material keys that cannot be calculated
+		Set<List<Long>> skipped = new HashSet<>();
+
+		long fromNanos = toNanos(from);
+		long toNanos = toNanos(to);
+
+		List<OeeEventRow> rows = PersistenceService.instance()
+				.fetchGroupingRows(new ArrayList<>(equipmentMap.values()), from, to);
+
+		for (OeeEventRow row : rows) {
+			String group = getGroupName(row, grouping, materials);
+			Equipment equipment = equipmentMap.get(row.getEquipmentKey());
+
+			if (group == null || equipment == null || row.getMaterialKey() == OeeEventRow.NO_KEY) {
+				continue;
+			}
+
+			List<Long> pair = Arrays.asList(row.getEquipmentKey(), row.getMaterialKey());
+
+			if (skipped.contains(pair)) {
+				continue;
+			}
+
+			List<Object> key = Arrays.asList(group, row.getEquipmentKey(), row.getMaterialKey());
+			EquipmentLoss equipmentLoss = accumulators.get(key);
+
+			if (equipmentLoss == null) {
+				Material material = lookupMaterial(row.getMaterialKey(), materials);
+				equipmentLoss = new EquipmentLoss(equipment);
+				equipmentLoss.setMaterial(material);
+
+				try {
+					initialize(equipmentLoss, from, to);
+				} catch (Exception e) {
+					// for example no run rate, the rest of the plant is still grouped
+					skipped.add(pair);
+					logger.error("Unable to calculate the losses of equipment " + equipment.getName()
+							+ " for material " + (material != null ? material.getName() : null), e);
+					continue;
+				}
+				equipmentLoss.setEventTime(0L);
+				accumulators.put(key, equipmentLoss);
+			}
+
+			if (!row.getEventType().equals(OeeEventType.AVAILABILITY)) {
+				addProductionRow(equipmentLoss, row, reasons, uoms, true);
+				continue;
+			}
+
+			// time in the period
+			long start = Math.max(row.getStartTime(), fromNanos);
+			long end = Math.min(row.getStartTime() + row.getDuration(), toNanos);
+
+			if (end <= start) {
+				continue;
+			}
+			equipmentLoss.incrementEventTime(end - start);
+
+			TimeLoss lossCategory = row.getLossCategory();
+
+			if (lossCategory != null && !lossCategory.equals(TimeLoss.NO_LOSS)) {
+				equipmentLoss.incrementLoss(lookupReason(row.getReasonKey(), reasons), end - start);
+			}
+		}
+
+		for (Entry<List<Object>, EquipmentLoss> entry : accumulators.entrySet()) {
+			EquipmentLoss equipmentLoss = entry.getValue();
+
+			// not scheduled time is from the events, not the work schedule
+			equipmentLoss.calculateReducedSpeedLoss();
+
+			String group = (String) entry.getKey().get(0);
+			groups.computeIfAbsent(group, g -> new PlantEntityLoss(entity, from, to)).addEquipmentLoss(equipmentLoss);
+		}
+
+		// each piece of equipment once per group
+		for (PlantEntityLoss groupLoss : groups.values()) {
+			Set<Equipment> counted = new HashSet<>();
+
+			for (EquipmentLoss equipmentLoss : groupLoss.getEquipmentLosses()) {
+				if (counted.add(equipmentLoss.getEquipment())) {
+					groupLoss.incrementEquipmentCount();
+				}
+			}
+		}
+		return groups;
+	}
+
+	private static void collectEquipment(PlantEntity entity, Map<Long, Equipment> equipmentMap) {
+		if (entity instanceof Equipment) {
+			equipmentMap.put(entity.getKey(), (Equipment) entity);
+			return;
+		}
+
+		for (PlantEntity child : entity.getChildren()) {
+			collectEquipment(child, equipmentMap);
+		}
+	}
+
+	private static String getGroupName(OeeEventRow row, LossGrouping grouping, Map<Long, Material> materials)
+			throws Exception {
+		String name = null;
+
+		switch (grouping) {
+		case SHIFT:
+			name = row.getShiftName();
+			break;
+		case TEAM:
+			name = row.getTeamName();
+			break;
+		case MATERIAL: {
+			Material material = lookupMaterial(row.getMaterialKey(), materials);
+			name = material != null ? material.getName() : null;
+			break;
+		}
+		case JOB:
+			name = row.getJob();
+			break;
+		default:
+			break;
+		}
+		return name;
+	}
+
+	private static EquipmentLoss createBucket(Equipment equipment, Material material, OffsetDateTime from,
+			OffsetDateTime to) throws Exception {
+		EquipmentLoss equipmentLoss = new EquipmentLoss(equipment);
+		equipmentLoss.setMaterial(material);
+		initialize(equipmentLoss, from, to);
+		return equipmentLoss;
+	}
+
+	// one pass over the rows in start time order, buckets are in start time order
+	private static void calculateTrend(List<EquipmentLoss> buckets, OffsetDateTime from, OffsetDateTime to)
+			throws Exception {
+		if (buckets.isEmpty()) {
+			return;
+		}
+
+		int count = buckets.size();
+		long[] starts = new long[count];
+		long[] ends = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			starts[i] = toNanos(buckets.get(i).getStartDateTime());
+			ends[i] = toNanos(buckets.get(i).getEndDateTime());
+		}
+
+		EquipmentLoss firstLoss = buckets.get(0);
+
+		// referenced entities by key
+		Map<Long, Reason> reasons = new HashMap<>();
+		Map<Long, UnitOfMeasure> uoms = new HashMap<>();
+
+		List<OeeEventRow> rows = PersistenceService.instance().fetchTrendRows(firstLoss.getEquipment(),
+				firstLoss.getMaterial(), from, to);
+
+		// first bucket that a row can still fall in
+		int first = 0;
+
+		for (OeeEventRow row : rows) {
+			long start = row.getStartTime();
+
+			// a bucket ending before this row ends before all of the rows after it
+			while (first < count && ends[first] <= start) {
+				first++;
+			}
+
+			if (!row.getEventType().equals(OeeEventType.AVAILABILITY)) {
+				// production is in the buckets containing its start
+				for (int i = first; i < count && starts[i] <= start; i++) {
+					if (start < ends[i]) {
+						addProductionRow(buckets.get(i), row, reasons, uoms, true);
+					}
+				}
+				continue;
+			}
+
+			// skip no loss records
+			TimeLoss lossCategory = row.getLossCategory();
+
+			if (lossCategory == null || lossCategory.equals(TimeLoss.NO_LOSS) || !row.hasDuration()) {
+				continue;
+			}
+
+			// split between the buckets it overlaps
+			long end = start + row.getDuration();
+			Reason reason = lookupReason(row.getReasonKey(), reasons);
+
+			for (int i = first; i < count && starts[i] < end; i++) {
+				long overlap = Math.min(end, ends[i]) - Math.max(start, starts[i]);
+
+				if (overlap > 0) {
+					buckets.get(i).incrementLoss(reason, overlap);
+				}
+			}
+		}
+
+		for (EquipmentLoss equipmentLoss : buckets) {
+			finish(equipmentLoss);
+		}
+	}
+
+	private static void addRollups(EquipmentLoss equipmentLoss, List<OeeRollup> rollups) throws Exception {
+		Material material = equipmentLoss.getMaterial();
+		UnitOfMeasure uom = equipmentLoss.getDesignSpeedQuantity().getUOM().getDividend();
+
+		for (OeeRollup rollup : rollups) {
+			// availability for all materials
+			for (TimeLoss category : TimeLoss.values()) {
+				if (OeeRollup.isRecorded(category)) {
+					Duration loss = rollup.getLoss(category);
+
+					if (!loss.isZero()) {
+						equipmentLoss.incrementLoss(category, loss);
+					}
+				}
+			}
+
+			// production of this material only
+			if (material == null || !material.equals(rollup.getMaterial())) {
+				continue;
+			}
+
+			if (rollup.getGoodAmount() != 0.0d) {
+				equipmentLoss.incrementGoodAmount(rollup.getGoodAmount(), uom);
+			}
+
+			if (rollup.getRejectAmount() != 0.0d) {
+				equipmentLoss.incrementRejectAmount(rollup.getRejectAmount(), uom);
+			}
+
+			if (rollup.getStartupAmount() != 0.0d) {
+				equipmentLoss.incrementStartupAmount(rollup.getStartupAmount(), uom);
+			}
+		}
+	}
+
+	// events in a partial hour
+	private static void addEdge(EquipmentLoss equipmentLoss, OffsetDateTime from, OffsetDateTime to)
+			throws Exception {
+		if (!from.isBefore(to)) {
+			return;
+		}
+
+		Equipment equipment = equipmentLoss.getEquipment();
+		Map<Long, Reason> reasons = new HashMap<>();
+		Map<Long, UnitOfMeasure> uoms = new HashMap<>();
+
+		addProductionRows(equipmentLoss,
+				PersistenceService.instance().fetchProductionRows(equipment, equipmentLoss.getMaterial(), from, to),
+				reasons, uoms, false);
+
+		long fromNanos = toNanos(from);
+		long toNanos = toNanos(to);
+
+		for (OeeEventRow row : PersistenceService.instance().fetchAvailabilityRowsOverlapping(equipment, from, to)) {
+			TimeLoss lossCategory = row.getLossCategory();
+
+			if (lossCategory == null || !OeeRollup.isRecorded(lossCategory)) {
+				continue;
+			}
+
+			// time in the edge
+			long start = Math.max(row.getStartTime(), fromNanos);
+			long end = Math.min(row.getStartTime() + row.getDuration(), toNanos);
+
+			if (end > start) {
+				equipmentLoss.incrementLoss(lossCategory, Duration.ofNanos(end - start));
+			}
+		}
+	}
+
+	// good, reject and startup quantities, and the reject and startup losses by
+	// reason
+	private static void addProductionRows(EquipmentLoss equipmentLoss, List<OeeEventRow> productions,
+			Map<Long, Reason> reasons, Map<Long, UnitOfMeasure> uoms, boolean byReason) throws Exception {
+		for (OeeEventRow row : productions) {
+			addProductionRow(equipmentLoss, row, reasons, uoms, byReason);
+		}
+	}
+
+	private static void addProductionRow(EquipmentLoss equipmentLoss, OeeEventRow row, Map<Long, Reason> reasons,
+			Map<Long, UnitOfMeasure> uoms, boolean byReason) throws Exception {
+		UnitOfMeasure uom = lookupUom(row.getUomKey(), uoms);
+
+		if (uom == null) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("no.uom.production", row.getAmount(),
+					row.getSourceId(), toOffsetDateTime(row.getStartTime(), equipmentLoss.getStartDateTime())));
+		}
+		Duration lostTime = null;
+
+		switch (row.getEventType()) {
+		case PROD_GOOD: {
+			equipmentLoss.incrementGoodAmount(row.getAmount(), uom);
+			break;
+		}
+
+		case PROD_REJECT: {
+			equipmentLoss.incrementRejectAmount(row.getAmount(), uom);
+
+			// convert to a time loss
+			if (byReason) {
+				lostTime = equipmentLoss.convertToLostTime(new Quantity(row.getAmount(), uom));
+			}
+			break;
+		}
+
+		case PROD_STARTUP: {
+			equipmentLoss.incrementStartupAmount(row.getAmount(), uom);
+
+			// convert to a time loss
+			if (byReason) {
+				lostTime = equipmentLoss.convertToLostTime(new Quantity(row.getAmount(), uom));
+			}
+			break;
+		}
+
+		default:
+			break;
+		}
+
+		if (!byReason) {
+			return;
+		}
+
+		Reason reason = lookupReason(row.getReasonKey(), reasons);
+
+		if (reason != null && lostTime != null) {
+			// reason map too
+			equipmentLoss.incrementReasonLoss(reason, lostTime);
+		}
+	}
+
+	// set the time period and design speed
+	private static void initialize(EquipmentLoss equipmentLoss, OffsetDateTime from, OffsetDateTime to)
+			throws Exception {
+		// time period
+		equipmentLoss.setStartDateTime(from);
+		equipmentLoss.setEndDateTime(to);
+
+		Equipment equipment = equipmentLoss.getEquipment();
+		Material material = equipmentLoss.getMaterial();
+
+		EquipmentMaterial eqm = equipment.getEquipmentMaterial(material);
+
+		if (eqm == null || eqm.getRunRate() == null) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("no.speed", equipment.getName(),
+					material.getDisplayString()));
+		}
+
+		// IRR
+		equipmentLoss.setDesignSpeed(eqm.getRunRate());
+	}
+
+	// reduced speed and not scheduled losses
+	private static void finish(EquipmentLoss equipmentLoss) throws Exception {
+		Equipment equipment = equipmentLoss.getEquipment();
+
 		// compute reduced speed from the other losses
 		equipmentLoss.calculateReducedSpeedLoss();
 
@@ -172,6 +810,59 @@ public final class EquipmentLossManager {
 		}
 	}
 
+	private static Reason lookupReason(long key, Map<Long, Reason> reasons) throws Exception {
+		if (key == OeeEventRow.NO_KEY) {
+			return null;
+		}
+
+		Reason reason = reasons.get(key);
+
+		if (reason == null) {
+			reason = PersistenceService.instance().fetchReasonByKey(key);
+			reasons.put(key, reason);
+		}
+		return reason;
+	}
+
+	private static Material lookupMaterial(long key, Map<Long, Material> materials) throws Exception {
+		if (key == OeeEventRow.NO_KEY) {
+			return null;
+		}
+
+		Material material = materials.get(key);
+
+		if (material == null) {
+			material = PersistenceService.instance().fetchMaterialByKey(key);
+			materials.put(key, material);
+		}
+		return material;
+	}
+
+	private static UnitOfMeasure lookupUom(long key, Map<Long, UnitOfMeasure> uoms) throws Exception {
+		if (key == OeeEventRow.NO_KEY) {
+			return null;
+		}
+
+		UnitOfMeasure uom = uoms.get(key);
+
+		if (uom == null) {
+			uom = PersistenceService.instance().fetchUomByKey(key);
+			uoms.put(key, uom);
+		}
+		return uom;
+	}
+
+	private static long toNanos(OffsetDateTime dateTime) {
+		return dateTime.toEpochSecond() * NANOS_PER_SECOND + dateTime.getNano();
+	}
+
+	// epoch nanoseconds in the offset of the reference time
+	private static OffsetDateTime toOffsetDateTime(long nanos, OffsetDateTime reference) {
+		Instant instant = Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND),
+				Math.floorMod(nanos, NANOS_PER_SECOND));
+		return OffsetDateTime.ofInstant(instant, reference.getOffset());
+	}
+
 	public static List<ParetoItem> getParetoData(EquipmentLoss equipmentLoss, TimeLoss loss) throws Exception {
 		// create the items to chart
 		Map<Reason, Duration> reasonMap = equipmentLoss.getLossReasonsByCategory(loss);
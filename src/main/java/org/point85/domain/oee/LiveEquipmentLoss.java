@@ -0,0 +1,321 @@
+package org.point85.domain.oee;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.point85.domain.collector.OeeEvent;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.plant.EquipmentMaterial;
+import org.point85.domain.plant.Material;
+import org.point85.domain.plant.Reason;
+import org.point85.domain.schedule.ShiftInstance;
+import org.point85.domain.schedule.WorkSchedule;
+import org.point85.domain.uom.Quantity;
+import org.point85.domain.uom.Unit;
+import org.point85.domain.uom.UnitOfMeasure;
+
+/**
+ * The LiveEquipmentLoss accumulates the losses of one piece of equipment for
+ * the current shift instance and the current day as its events are recorded.
+ * The availability reason in effect is held open and counted up to the time
+ * of a snapshot. Production is converted to time at the design speed of its
+ * own material, so the losses carry across material changes, while the
+ * quantities of a snapshot are those of the current material. The windows only
+ * move forward, a late event is only counted in the part of a current window
+ * that it overlaps.
+ *
+ */
+public class LiveEquipmentLoss {
+	private static final double NANOS_PER_SECOND = 1.0E+09;
+
+	private final Equipment equipment;
+
+	// material being produced
+	private Material material;
+
+	// availability in effect
+	private Reason openReason;
+	private OffsetDateTime openStart;
+
+	// current windows, the shift is null off shift
+	private LossWindow shiftWindow;
+	private LossWindow dayWindow;
+
+	// latest time the windows were moved to
+	private OffsetDateTime latest;
+
+	public LiveEquipmentLoss(Equipment equipment) {
+		this.equipment = equipment;
+	}
+
+	public Equipment getEquipment() {
+		return equipment;
+	}
+
+	public synchronized Material getMaterial() {
+		return material;
+	}
+
+	/**
+	 * Add the event to the current windows
+	 *
+	 * @param event {@link OeeEvent}
+	 * @throws Exception Exception
+	 */
+	public synchronized void record(OeeEvent event) throws Exception {
+		OffsetDateTime start = event.getStartTime();
+
+		if (event.getEventType() == null || start == null) {
+			return;
+		}
+
+		if (event.isAvailability()) {
+			recordAvailability(event, start);
+		} else if (event.isProduction()) {
+			recordProduction(event, start);
+		} else if (event.isSetup() && event.getMaterial() != null) {
+			material = event.getMaterial();
+		}
+	}
+
+	private void recordAvailability(OeeEvent event, OffsetDateTime start) throws Exception {
+		roll(start);
+
+		if (event.getOffsetEndTime() != null && event.getDuration() != null) {
+			// summarized, the open reason is unchanged
+			addLoss(event.getReason(), start, start.plus(event.getDuration()));
+			return;
+		}
+
+		if (openReason != null && start.isBefore(openStart)) {
+			// late, it lasted until the reason in effect
+			addLoss(event.getReason(), start, openStart);
+			return;
+		}
+
+		// close the previous reason
+		if (openReason != null && openStart.isBefore(start)) {
+			addLoss(openReason, openStart, start);
+		}
+
+		openReason = event.getReason();
+		openStart = start;
+	}
+
+	private void recordProduction(OeeEvent event, OffsetDateTime start) throws Exception {
+		roll(start);
+
+		Material produced = event.getMaterial() != null ? event.getMaterial() : material;
+		Quantity quantity = event.getAmount() != null && event.getUOM() != null ? event.getQuantity() : null;
+
+		if (produced == null || quantity == null) {
+			return;
+		}
+		material = produced;
+
+		EquipmentMaterial eqm = equipment.getEquipmentMaterial(produced);
+
+		if (eqm == null || eqm.getRunRate() == null) {
+			return;
+		}
+
+		// time at the design speed
+		long nanos = (long) (quantity.divide(eqm.getRunRate()).convert(Unit.SECOND).getAmount() * NANOS_PER_SECOND);
+		double amount = quantity.convert(eqm.getRunRateUOM().getDividend()).getAmount();
+
+		TimeLoss category = null;
+		int index = 0;
+
+		switch (event.getEventType()) {
+		case PROD_GOOD:
+			category = TimeLoss.NO_LOSS;
+			index = 0;
+			break;
+		case PROD_REJECT:
+			category = TimeLoss.REJECT_REWORK;
+			index = 1;
+			break;
+		case PROD_STARTUP:
+			category = TimeLoss.STARTUP_YIELD;
+			index = 2;
+			break;
+		default:
+			return;
+		}
+
+		for (LossWindow window : getWindows()) {
+			if (window.contains(start)) {
+				window.nanos[category.ordinal()] += nanos;
+				window.amounts.computeIfAbsent(produced, m -> new double[3])[index] += amount;
+			}
+		}
+	}
+
+	// start new windows once time has moved past the current ones
+	private void roll(OffsetDateTime time) throws Exception {
+		if (latest != null && time.isBefore(latest)) {
+			// late event
+			return;
+		}
+		latest = time;
+
+		if (dayWindow == null || !time.isBefore(dayWindow.end)) {
+			OffsetDateTime midnight = time.truncatedTo(ChronoUnit.DAYS);
+			dayWindow = new LossWindow(midnight, midnight.plusDays(1));
+		}
+
+		if (shiftWindow == null || !time.isBefore(shiftWindow.end)) {
+			shiftWindow = createShiftWindow(time);
+		}
+	}
+
+	private LossWindow createShiftWindow(OffsetDateTime time) {
+		WorkSchedule schedule = equipment.findWorkSchedule();
+
+		if (schedule == null) {
+			return null;
+		}
+
+		try {
+			List<ShiftInstance> instances = schedule.getShiftInstancesForTime(time.toLocalDateTime());
+
+			if (instances.isEmpty()) {
+				return null;
+			}
+			ShiftInstance instance = instances.get(0);
+
+			return new LossWindow(OffsetDateTime.of(instance.getStartTime(), time.getOffset()),
+					OffsetDateTime.of(instance.getEndTime(), time.getOffset()));
+		} catch (Exception e) {
+			// not on a team rotation yet
+			return null;
+		}
+	}
+
+	private void addLoss(Reason reason, OffsetDateTime from, OffsetDateTime to) {
+		// the other categories are derived from production
+		if (reason == null || !OeeRollup.isRecorded(reason.getLossCategory()) || !from.isBefore(to)) {
+			return;
+		}
+
+		for (LossWindow window : getWindows()) {
+			window.nanos[reason.getLossCategory().ordinal()] += window.getOverlap(from, to);
+		}
+	}
+
+	private LossWindow[] getWindows() {
+		if (shiftWindow == null) {
+			return new LossWindow[] { dayWindow };
+		}
+		return new LossWindow[] { shiftWindow, dayWindow };
+	}
+
+	/**
+	 * Get the losses of the current shift instance up to now
+	 *
+	 * @return {@link EquipmentLoss} or null if off shift
+	 * @throws Exception Exception
+	 */
+	public synchronized EquipmentLoss getShiftLoss() throws Exception {
+		OffsetDateTime now = OffsetDateTime.now();
+		roll(now);
+		return shiftWindow != null ? createSnapshot(shiftWindow, now) : null;
+	}
+
+	/**
+	 * Get the losses of the current day up to now
+	 *
+	 * @return {@link EquipmentLoss}
+	 * @throws Exception Exception
+	 */
+	public synchronized EquipmentLoss getDayLoss() throws Exception {
+		OffsetDateTime now = OffsetDateTime.now();
+		roll(now);
+		return createSnapshot(dayWindow, now);
+	}
+
+	private EquipmentLoss createSnapshot(LossWindow window, OffsetDateTime now) throws Exception {
+		EquipmentLoss equipmentLoss = new EquipmentLoss(equipment);
+		equipmentLoss.setMaterial(material);
+		equipmentLoss.setStartDateTime(window.start);
+		equipmentLoss.setEndDateTime(now.isBefore(window.end) ? now : window.end);
+
+		for (TimeLoss category : TimeLoss.values()) {
+			if (window.nanos[category.ordinal()] != 0) {
+				equipmentLoss.setLoss(category, Duration.ofNanos(window.nanos[category.ordinal()]));
+			}
+		}
+
+		// the reason in effect so far
+		if (openReason != null && OeeRollup.isRecorded(openReason.getLossCategory())) {
+			long open = window.getOverlap(openStart, equipmentLoss.getEndDateTime());
+
+			if (open > 0) {
+				equipmentLoss.incrementLoss(openReason.getLossCategory(), Duration.ofNanos(open));
+			}
+		}
+
+		// quantities of the current material
+		EquipmentMaterial eqm = material != null ? equipment.getEquipmentMaterial(material) : null;
+
+		if (eqm != null && eqm.getRunRate() != null) {
+			equipmentLoss.setDesignSpeed(eqm.getRunRate());
+
+			UnitOfMeasure uom = eqm.getRunRateUOM().getDividend();
+			double[] amounts = window.amounts.getOrDefault(material, new double[3]);
+
+			equipmentLoss.setGoodQuantity(new Quantity(amounts[0], uom));
+			equipmentLoss.setRejectQuantity(new Quantity(amounts[1], uom));
+			equipmentLoss.setStartupQuantity(new Quantity(amounts[2], uom));
+		}
+
+		// non-working time from the work schedule
+		WorkSchedule schedule = equipment.findWorkSchedule();
+
+		if (schedule != null) {
+			Duration notScheduled = schedule.calculateNonWorkingTime(
+					equipmentLoss.getStartDateTime().toLocalDateTime(), equipmentLoss.getEndDateTime().toLocalDateTime());
+			equipmentLoss.incrementLoss(TimeLoss.NOT_SCHEDULED, notScheduled);
+		}
+
+		// reduced speed is what remains of the net production time
+		Duration quality = equipmentLoss.getLoss(TimeLoss.REJECT_REWORK)
+				.plus(equipmentLoss.getLoss(TimeLoss.STARTUP_YIELD));
+		equipmentLoss.setLoss(TimeLoss.REDUCED_SPEED,
+				equipmentLoss.getNetProductionTime().minus(quality).minus(equipmentLoss.getLoss(TimeLoss.NO_LOSS)));
+
+		return equipmentLoss;
+	}
+
+	// losses over a shift instance or day
+	private static class LossWindow {
+		private final OffsetDateTime start;
+		private final OffsetDateTime end;
+
+		// by loss category ordinal
+		private final long[] nanos = new long[TimeLoss.values().length];
+
+		// good, reject and startup amounts by material
+		private final Map<Material, double[]> amounts = new HashMap<>();
+
+		private LossWindow(OffsetDateTime start, OffsetDateTime end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		private boolean contains(OffsetDateTime time) {
+			return !time.isBefore(start) && time.isBefore(end);
+		}
+
+		private long getOverlap(OffsetDateTime from, OffsetDateTime to) {
+			OffsetDateTime overlapStart = from.isAfter(start) ? from : start;
+			OffsetDateTime overlapEnd = to.isBefore(end) ? to : end;
+
+			return overlapEnd.isAfter(overlapStart) ? Duration.between(overlapStart, overlapEnd).toNanos() : 0;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package org.point85.domain.oee;
+
+/**
+ * Attribute of an event that equipment losses are grouped by
+ *
+ */
+public enum LossGrouping {
+	// shift at the start of the event
+	SHIFT,
+
+	// team at the start of the event
+	TEAM,
+
+	// material being produced
+	MATERIAL,
+
+	// job being run
+	JOB;
+}
@@ -0,0 +1,239 @@
+package org.point85.domain.oee;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+
+import org.point85.domain.persistence.OffsetTimestamp;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.plant.KeyedObject;
+import org.point85.domain.plant.Material;
+import org.point85.domain.schedule.Shift;
+
+/**
+ * An OeeRollup summarizes the events of a piece of equipment over an hour or
+ * a shift instance. It holds the availability losses of each category that is
+ * not derived from the production, and the good, reject and startup amounts in
+ * the unit of the design speed. Availability losses are recorded under the
+ * material in effect at the time, production under the material produced.
+ *
+ */
+@Entity
+@Table(name = "OEE_ROLLUP")
+@AttributeOverride(name = "primaryKey", column = @Column(name = "ROLLUP_KEY"))
+
+public class OeeRollup extends KeyedObject {
+	@OneToOne
+	@JoinColumn(name = "ENT_KEY")
+	private Equipment equipment;
+
+	@OneToOne
+	@JoinColumn(name = "MATL_KEY")
+	private Material material;
+
+	@Column(name = "BUCKET")
+	@Enumerated(EnumType.STRING)
+	private RollupBucket bucket;
+
+	// for a shift bucket
+	@OneToOne
+	@JoinColumn(name = "SHIFT_KEY")
+	private Shift shift;
+
+	@Embedded
+	@AttributeOverrides({ @AttributeOverride(name = "localDateTime", column = @Column(name = "START_TIME")),
+			@AttributeOverride(name = "utcOffset", column = @Column(name = "START_TIME_OFFSET")) })
+	private OffsetTimestamp startTime;
+
+	@Embedded
+	@AttributeOverrides({ @AttributeOverride(name = "localDateTime", column = @Column(name = "END_TIME")),
+			@AttributeOverride(name = "utcOffset", column = @Column(name = "END_TIME_OFFSET")) })
+	private OffsetTimestamp endTime;
+
+	// losses in nanoseconds
+	@Column(name = "NOT_SCHEDULED")
+	private long notScheduled;
+
+	@Column(name = "UNSCHEDULED")
+	private long unscheduled;
+
+	@Column(name = "PLANNED_DOWN")
+	private long plannedDowntime;
+
+	@Column(name = "SETUP")
+	private long setup;
+
+	@Column(name = "UNPLANNED_DOWN")
+	private long unplannedDowntime;
+
+	@Column(name = "MINOR_STOPS")
+	private long minorStoppages;
+
+	// amounts in the unit of the design speed
+	@Column(name = "GOOD_AMOUNT")
+	private double goodAmount;
+
+	@Column(name = "REJECT_AMOUNT")
+	private double rejectAmount;
+
+	@Column(name = "STARTUP_AMOUNT")
+	private double startupAmount;
+
+	public OeeRollup() {
+		super();
+	}
+
+	public OeeRollup(Equipment equipment, Material material, RollupBucket bucket, Shift shift,
+			OffsetDateTime startTime, OffsetDateTime endTime) {
+		this.equipment = equipment;
+		this.material = material;
+		this.bucket = bucket;
+		this.shift = shift;
+		this.startTime = new OffsetTimestamp(startTime);
+		this.endTime = new OffsetTimestamp(endTime);
+	}
+
+	/**
+	 * Check to see if the loss category is summarized. The other categories are
+	 * calculated from the production.
+	 *
+	 * @param category {@link TimeLoss}
+	 * @return True if recorded
+	 */
+	public static boolean isRecorded(TimeLoss category) {
+		switch (category) {
+		case NOT_SCHEDULED:
+		case UNSCHEDULED:
+		case PLANNED_DOWNTIME:
+		case SETUP:
+		case UNPLANNED_DOWNTIME:
+		case MINOR_STOPPAGES:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	public Duration getLoss(TimeLoss category) {
+		long nanos = 0;
+
+		switch (category) {
+		case NOT_SCHEDULED:
+			nanos = notScheduled;
+			break;
+		case UNSCHEDULED:
+			nanos = unscheduled;
+			break;
+		case PLANNED_DOWNTIME:
+			nanos = plannedDowntime;
+			break;
+		case SETUP:
+			nanos = setup;
+			break;
+		case UNPLANNED_DOWNTIME:
+			nanos = unplannedDowntime;
+			break;
+		case MINOR_STOPPAGES:
+			nanos = minorStoppages;
+			break;
+		default:
+			break;
+		}
+		return Duration.ofNanos(nanos);
+	}
+
+	public void addLoss(TimeLoss category, Duration duration) {
+		long nanos = duration.toNanos();
+
+		switch (category) {
+		case NOT_SCHEDULED:
+			notScheduled += nanos;
+			break;
+		case UNSCHEDULED:
+			unscheduled += nanos;
+			break;
+		case PLANNED_DOWNTIME:
+			plannedDowntime += nanos;
+			break;
+		case SETUP:
+			setup += nanos;
+			break;
+		case UNPLANNED_DOWNTIME:
+			unplannedDowntime += nanos;
+			break;
+		case MINOR_STOPPAGES:
+			minorStoppages += nanos;
+			break;
+		default:
+			break;
+		}
+	}
+
+	public Equipment getEquipment() {
+		return equipment;
+	}
+
+	public Material getMaterial() {
+		return material;
+	}
+
+	public RollupBucket getBucket() {
+		return bucket;
+	}
+
+	public Shift getShift() {
+		return shift;
+	}
+
+	public OffsetDateTime getStartTime() {
+		return startTime != null ? startTime.toOffsetDateTime() : null;
+	}
+
+	public OffsetTimestamp getOffsetStartTime() {
+		return startTime;
+	}
+
+	public OffsetDateTime getEndTime() {
+		return endTime != null ? endTime.toOffsetDateTime() : null;
+	}
+
+	public double getGoodAmount() {
+		return goodAmount;
+	}
+
+	public void addGoodAmount(double amount) {
+		goodAmount += amount;
+	}
+
+	public double getRejectAmount() {
+		return rejectAmount;
+	}
+
+	public void addRejectAmount(double amount) {
+		rejectAmount += amount;
+	}
+
+	public double getStartupAmount() {
+		return startupAmount;
+	}
+
+	public void addStartupAmount(double amount) {
+		startupAmount += amount;
+	}
+
+	@Override
+	public String toString() {
+		return "Equipment: " + (equipment != null ? equipment.getName() : null) + ", bucket: " + bucket + ", start: "
+				+ startTime + ", good: " + goodAmount + ", reject: " + rejectAmount + ", startup: " + startupAmount;
+	}
+}
@@ -0,0 +1,176 @@
+package org.point85.domain.oee;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.point85.domain.plant.PlantEntity;
+
+/**
+ * The PlantEntityLoss is the sum of the losses of all equipment under a plant
+ * entity. The time of each piece of equipment is added too, so the OEE of the
+ * entity is the average of its equipment weighted by time.
+ *
+ */
+public class PlantEntityLoss {
+	// plant entity
+	private final PlantEntity entity;
+
+	// time period
+	private final OffsetDateTime startDateTime;
+	private final OffsetDateTime endDateTime;
+
+	// losses of all equipment
+	private final Map<TimeLoss, Duration> lossMap = new EnumMap<>(TimeLoss.class);
+
+	// time of all equipment
+	private Duration totalTime = Duration.ZERO;
+
+	// number of equipment included
+	private int equipmentCount = 0;
+
+	// losses of each child entity
+	private final List<PlantEntityLoss> children = new ArrayList<>();
+
+	// losses of equipment
+	private final List<EquipmentLoss> equipmentLosses = new ArrayList<>();
+
+	public PlantEntityLoss(PlantEntity entity, OffsetDateTime startDateTime, OffsetDateTime endDateTime) {
+		this.entity = entity;
+		this.startDateTime = startDateTime;
+		this.endDateTime = endDateTime;
+
+		for (TimeLoss category : TimeLoss.values()) {
+			lossMap.put(category, Duration.ZERO);
+		}
+	}
+
+	public PlantEntity getEntity() {
+		return entity;
+	}
+
+	public OffsetDateTime getStartDateTime() {
+		return startDateTime;
+	}
+
+	public OffsetDateTime getEndDateTime() {
+		return endDateTime;
+	}
+
+	public int getEquipmentCount() {
+		return equipmentCount;
+	}
+
+	public List<PlantEntityLoss> getChildren() {
+		return children;
+	}
+
+	public List<EquipmentLoss> getEquipmentLosses() {
+		return equipmentLosses;
+	}
+
+	/**
+	 * Add the losses of a piece of equipment
+	 *
+	 * @param equipmentLoss {@link EquipmentLoss}
+	 */
+	public void addEquipmentLoss(EquipmentLoss equipmentLoss) {
+		equipmentLosses.add(equipmentLoss);
+
+		for (TimeLoss category : TimeLoss.values()) {
+			lossMap.put(category, lossMap.get(category).plus(equipmentLoss.getLoss(category)));
+		}
+		totalTime = totalTime.plus(equipmentLoss.getDuration());
+	}
+
+	/**
+	 * Add the losses of a child entity
+	 *
+	 * @param child {@link PlantEntityLoss}
+	 */
+	public void addChild(PlantEntityLoss child) {
+		children.add(child);
+
+		for (Entry<TimeLoss, Duration> entry : child.lossMap.entrySet()) {
+			lossMap.put(entry.getKey(), lossMap.get(entry.getKey()).plus(entry.getValue()));
+		}
+		totalTime = totalTime.plus(child.totalTime);
+		equipmentCount += child.equipmentCount;
+	}
+
+	void incrementEquipmentCount() {
+		equipmentCount++;
+	}
+
+	public Duration getLoss(TimeLoss category) {
+		return lossMap.get(category);
+	}
+
+	/**
+	 * Get the time of all equipment
+	 *
+	 * @return Duration
+	 */
+	public Duration getDuration() {
+		return totalTime;
+	}
+
+	public Duration getRequiredOperationsTime() {
+		return getDuration().minus(getLoss(TimeLoss.NOT_SCHEDULED));
+	}
+
+	public Duration getAvailableTime() {
+		return getRequiredOperationsTime().minus(getLoss(TimeLoss.UNSCHEDULED));
+	}
+
+	public Duration getReportedProductionTime() {
+		return getAvailableTime().minus(getLoss(TimeLoss.PLANNED_DOWNTIME)).minus(getLoss(TimeLoss.SETUP))
+				.minus(getLoss(TimeLoss.UNPLANNED_DOWNTIME));
+	}
+
+	public Duration getEfficientNetProductionTime() {
+		return getReportedProductionTime().minus(getLoss(TimeLoss.MINOR_STOPPAGES))
+				.minus(getLoss(TimeLoss.REDUCED_SPEED));
+	}
+
+	public Duration getValueAddingTime() {
+		return getEfficientNetProductionTime().minus(getLoss(TimeLoss.REJECT_REWORK))
+				.minus(getLoss(TimeLoss.STARTUP_YIELD));
+	}
+
+	public float calculateOeePercentage() {
+		return percentage(getValueAddingTime(), getAvailableTime());
+	}
+
+	public float calculateAvailabilityPercentage() {
+		return percentage(getReportedProductionTime(), getAvailableTime());
+	}
+
+	public float calculatePerformancePercentage() {
+		return percentage(getEfficientNetProductionTime(), getReportedProductionTime());
+	}
+
+	public float calculateQualityPercentage() {
+		return percentage(getValueAddingTime(), getEfficientNetProductionTime());
+	}
+
+	private float percentage(Duration numerator, Duration denominator) {
+		float value = 0.0f;
+		float seconds = denominator.getSeconds();
+
+		if (seconds != 0.0f) {
+			value = (numerator.getSeconds() / seconds) * 100.0f;
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "Entity: " + (entity != null ? entity.getName() : null) + ", equipment: " + equipmentCount
+				+ ", time: " + totalTime + ", OEE: " + calculateOeePercentage();
+	}
+}
@@ -0,0 +1,152 @@
+package org.point85.domain.oee;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.point85.domain.collector.OeeEvent;
+import org.point85.domain.persistence.PersistenceService;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.plant.PlantEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The PlantLossCalculator calculates the losses of a plant entity by walking
+ * its children down to the equipment. The losses of each piece of equipment
+ * are calculated in parallel on a fork-join pool and summed at each level of
+ * the hierarchy. The time of a piece of equipment is split by its material
+ * setups, since the design speed depends on the material. Time without a
+ * setup is not included. Every calculation runs a query, so the parallelism
+ * should not exceed the size of the connection pool.
+ *
+ */
+public class PlantLossCalculator {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(PlantLossCalculator.class);
+
+	// default number of concurrent equipment calculations
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private final ForkJoinPool pool;
+
+	public PlantLossCalculator() {
+		this(DEFAULT_PARALLELISM);
+	}
+
+	public PlantLossCalculator(int parallelism) {
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Calculate the losses of the entity and of each entity under it
+	 *
+	 * @param entity {@link PlantEntity}
+	 * @param from   Starting date and time
+	 * @param to     Ending date and time
+	 * @return {@link PlantEntityLoss}
+	 * @throws Exception Exception
+	 */
+	public PlantEntityLoss calculate(PlantEntity entity, OffsetDateTime from, OffsetDateTime to) throws Exception {
+		long start = System.currentTimeMillis();
+
+		PlantEntityLoss entityLoss = pool.invoke(new EntityLossTask(entity, from, to));
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Calculated losses of " + entityLoss.getEquipmentCount() + " equipment under "
+					+ entity.getName() + " in " + (System.currentTimeMillis() - start) + " msec");
+		}
+		return entityLoss;
+	}
+
+	/**
+	 * Stop the pool threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	// losses of each material setup in the time period, none if one of them fails
+	private static PlantEntityLoss calculateEquipment(Equipment equipment, OffsetDateTime from, OffsetDateTime to) {
+		PlantEntityLoss entityLoss = new PlantEntityLoss(equipment, from, to);
+
+		try {
+			List<OeeEvent> setups = PersistenceService.instance().fetchSetupsForPeriod(equipment, from, to);
+			List<EquipmentLoss> equipmentLosses = new ArrayList<>();
+
+			for (OeeEvent setup : setups) {
+				if (setup.getMaterial() == null) {
+					continue;
+				}
+
+				OffsetDateTime start = setup.getStartTime().isAfter(from) ? setup.getStartTime() : from;
+				OffsetDateTime end = setup.getEndTime() != null && setup.getEndTime().isBefore(to)
+						? setup.getEndTime()
+						: to;
+
+				if (!start.isBefore(end)) {
+					continue;
+				}
+
+				EquipmentLoss equipmentLoss = new EquipmentLoss(equipment);
+				equipmentLoss.setMaterial(setup.getMaterial());
+
+				EquipmentLossManager.calculateEquipmentLossFromRows(equipmentLoss, start, end);
+				equipmentLosses.add(equipmentLoss);
+			}
+
+			for (EquipmentLoss equipmentLoss : equipmentLosses) {
+				entityLoss.addEquipmentLoss(equipmentLoss);
+			}
+
+			if (!setups.isEmpty()) {
+				entityLoss.incrementEquipmentCount();
+			}
+		} catch (Exception e) {
+			// the other equipment is still reported
+			logger.error("Unable to calculate the losses of equipment " + equipment.getName(), e);
+		}
+		return entityLoss;
+	}
+
+	private static class EntityLossTask extends RecursiveTask<PlantEntityLoss> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient PlantEntity entity;
+		private final transient OffsetDateTime from;
+		private final transient OffsetDateTime to;
+
+		private EntityLossTask(PlantEntity entity, OffsetDateTime from, OffsetDateTime to) {
+			this.entity = entity;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected PlantEntityLoss compute() {
+			if (entity instanceof Equipment) {
+				return calculateEquipment((Equipment) entity, from, to);
+			}
+
+			List<EntityLossTask> tasks = new ArrayList<>();
+
+			for (PlantEntity child : entity.getChildren()) {
+				tasks.add(new EntityLossTask(child, from, to));
+			}
+			invokeAll(tasks);
+
+			PlantEntityLoss entityLoss = new PlantEntityLoss(entity, from, to);
+
+			for (EntityLossTask task : tasks) {
+				entityLoss.addChild(task.join());
+			}
+			return entityLoss;
+		}
+	}
+}
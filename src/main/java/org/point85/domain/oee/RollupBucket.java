@@ -0,0 +1,13 @@
+package org.point85.domain.oee;
+
+/**
+ * Time period summarized by an {@link OeeRollup}
+ *
+ */
+public enum RollupBucket {
+	// one hour of local time
+	HOUR,
+
+	// one shift instance of the equipment's work schedule
+	SHIFT;
+}
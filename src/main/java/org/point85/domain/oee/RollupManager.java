@@ -0,0 +1,325 @@
+package org.point85.domain.oee;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.point85.domain.collector.OeeEvent;
+import org.point85.domain.i18n.DomainLocalizer;
+import org.point85.domain.persistence.PersistenceService;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.plant.EquipmentMaterial;
+import org.point85.domain.plant.Material;
+import org.point85.domain.plant.Reason;
+import org.point85.domain.schedule.Shift;
+import org.point85.domain.schedule.ShiftInstance;
+import org.point85.domain.schedule.Team;
+import org.point85.domain.schedule.WorkSchedule;
+import org.point85.domain.script.OeeEventType;
+import org.point85.domain.uom.UnitOfMeasure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The RollupManager adds saved events to the hourly and shift
+ * {@link OeeRollup}s of their equipment. An availability event is added once
+ * it has a duration and is split over the buckets it overlaps. A production
+ * event is added to the buckets holding its start time. The rollups can be
+ * rebuilt from the events of a piece of equipment. Collection for the
+ * equipment must be stopped while rebuilding, otherwise an event saved during
+ * the rebuild could be counted both from the table and as an increment.
+ *
+ */
+public class RollupManager {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(RollupManager.class);
+
+	// rollups held in memory while rebuilding
+	private static final int REBUILD_BATCH_SIZE = 1000;
+
+	// equipment with a rebuild in progress
+	private final Set<Equipment> rebuilding = ConcurrentHashMap.newKeySet();
+
+	// equipment that had events rolled up during its rebuild
+	private final Set<Equipment> collected = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Add the events to their rollups
+	 *
+	 * @param events List of saved {@link OeeEvent}
+	 * @throws Exception Exception
+	 */
+	public void update(List<OeeEvent> events) throws Exception {
+		Map<String, OeeRollup> rollups = new LinkedHashMap<>();
+
+		for (OeeEvent event : events) {
+			if (event.getEquipment() != null && rebuilding.contains(event.getEquipment())) {
+				// the rebuild is repeated once collection has stopped
+				collected.add(event.getEquipment());
+				continue;
+			}
+
+			try {
+				addEvent(event, rollups);
+			} catch (Exception e) {
+				logger.warn("Unable to roll up event " + event + ". " + e.getMessage());
+			}
+		}
+
+		if (!rollups.isEmpty()) {
+			PersistenceService.instance().saveRollups(new ArrayList<>(rollups.values()));
+		}
+	}
+
+	/**
+	 * Replace the rollups of the equipment with those calculated from its
+	 * events. Collection for the equipment must be stopped. If this manager is
+	 * given events of the equipment during the rebuild, they are not rolled up
+	 * and the rebuild fails so that it can be repeated.
+	 *
+	 * @param equipment {@link Equipment}
+	 * @return Number of events rolled up
+	 * @throws Exception Exception
+	 */
+	public long rebuild(Equipment equipment) throws Exception {
+		if (!rebuilding.add(equipment)) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("rollup.rebuilding", equipment.getName()));
+		}
+
+		try {
+			long count = rebuildRollups(equipment);
+
+			if (collected.contains(equipment)) {
+				throw new Exception(DomainLocalizer.instance().getErrorString("rollup.collecting", equipment.getName()));
+			}
+			return count;
+		} finally {
+			collected.remove(equipment);
+			rebuilding.remove(equipment);
+		}
+	}
+
+	private long rebuildRollups(Equipment equipment) throws Exception {
+		PersistenceService.instance().deleteRollups(equipment);
+
+		List<OeeEventType> types = new ArrayList<>(OeeEventType.getProductionTypes());
+		types.add(OeeEventType.AVAILABILITY);
+
+		Map<String, OeeRollup> rollups = new LinkedHashMap<>();
+		long count = 0;
+
+		for (OeeEventType type : types) {
+			try (Stream<OeeEvent> events = PersistenceService.instance().streamEvents(equipment, type, null, null)) {
+				Iterator<OeeEvent> iter = events.iterator();
+
+				while (iter.hasNext()) {
+					addEvent(iter.next(), rollups);
+					count++;
+
+					// increments can be saved in any order
+					if (rollups.size() >= REBUILD_BATCH_SIZE) {
+						PersistenceService.instance().saveRollups(new ArrayList<>(rollups.values()));
+						rollups.clear();
+					}
+				}
+			}
+		}
+
+		if (!rollups.isEmpty()) {
+			PersistenceService.instance().saveRollups(new ArrayList<>(rollups.values()));
+		}
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Rebuilt rollups of equipment " + equipment.getName() + " from " + count + " events");
+		}
+		return count;
+	}
+
+	void addEvent(OeeEvent event, Map<String, OeeRollup> rollups) throws Exception {
+		OeeEventType type = event.getEventType();
+		OffsetDateTime start = event.getStartTime();
+
+		if (type == null || start == null) {
+			return;
+		}
+
+		if (type.isAvailability()) {
+			addAvailability(event, start, rollups);
+		} else if (type.isProduction()) {
+			addProduction(event, start, rollups);
+		}
+	}
+
+	private void addAvailability(OeeEvent event, OffsetDateTime start, Map<String, OeeRollup> rollups)
+			throws Exception {
+		Reason reason = event.getReason();
+		Duration duration = event.getDuration();
+
+		// open events have no loss yet
+		if (reason == null || duration == null || !OeeRollup.isRecorded(reason.getLossCategory())) {
+			return;
+		}
+
+		TimeLoss category = reason.getLossCategory();
+		Equipment equipment = event.getEquipment();
+		Material material = event.getMaterial();
+		OffsetDateTime end = start.plus(duration);
+
+		// hourly
+		for (OffsetDateTime hour = start.truncatedTo(ChronoUnit.HOURS); hour.isBefore(end); hour = hour.plusHours(1)) {
+			Duration overlap = getOverlap(start, end, hour, hour.plusHours(1));
+
+			if (!overlap.isZero()) {
+				getRollup(rollups, equipment, material, RollupBucket.HOUR, null, hour, hour.plusHours(1))
+						.addLoss(category, overlap);
+			}
+		}
+
+		WorkSchedule schedule = equipment.findWorkSchedule();
+
+		if (schedule == null) {
+			return;
+		}
+
+		// teams working the same shift share its rollup
+		Set<String> added = new HashSet<>();
+
+		for (LocalDate day = getFirstDay(schedule, start); !day.isAfter(end.toLocalDate()); day = day.plusDays(1)) {
+			for (ShiftInstance instance : schedule.getShiftInstancesForDay(day)) {
+				OffsetDateTime shiftStart = OffsetDateTime.of(instance.getStartTime(), start.getOffset());
+				OffsetDateTime shiftEnd = OffsetDateTime.of(instance.getEndTime(), start.getOffset());
+				Duration overlap = getOverlap(start, end, shiftStart, shiftEnd);
+
+				if (overlap.isZero() || !added.add(instance.getShift().getName() + shiftStart)) {
+					continue;
+				}
+
+				getRollup(rollups, equipment, material, RollupBucket.SHIFT, instance.getShift(), shiftStart, shiftEnd)
+						.addLoss(category, overlap);
+			}
+		}
+	}
+
+	private void addProduction(OeeEvent event, OffsetDateTime start, Map<String, OeeRollup> rollups)
+			throws Exception {
+		Equipment equipment = event.getEquipment();
+		Material material = event.getMaterial();
+
+		if (material == null || event.getAmount() == null || event.getUOM() == null) {
+			return;
+		}
+
+		EquipmentMaterial eqm = equipment.getEquipmentMaterial(material);
+
+		if (eqm == null || eqm.getRunRateUOM() == null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("No design speed for material " + material.getName() + ", production is not rolled up");
+			}
+			return;
+		}
+
+		// amount in the unit of the design speed
+		UnitOfMeasure uom = eqm.getRunRateUOM().getDividend();
+		double amount = event.getQuantity().convert(uom).getAmount();
+
+		List<OeeRollup> buckets = new ArrayList<>(2);
+
+		OffsetDateTime hour = start.truncatedTo(ChronoUnit.HOURS);
+		buckets.add(getRollup(rollups, equipment, material, RollupBucket.HOUR, null, hour, hour.plusHours(1)));
+
+		WorkSchedule schedule = equipment.findWorkSchedule();
+		ShiftInstance instance = schedule != null ? findShiftInstance(schedule, start) : null;
+
+		if (instance != null) {
+			buckets.add(getRollup(rollups, equipment, material, RollupBucket.SHIFT, instance.getShift(),
+					OffsetDateTime.of(instance.getStartTime(), start.getOffset()),
+					OffsetDateTime.of(instance.getEndTime(), start.getOffset())));
+		}
+
+		for (OeeRollup rollup : buckets) {
+			switch (event.getEventType()) {
+			case PROD_GOOD:
+				rollup.addGoodAmount(amount);
+				break;
+			case PROD_REJECT:
+				rollup.addRejectAmount(amount);
+				break;
+			case PROD_STARTUP:
+				rollup.addStartupAmount(amount);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private OeeRollup getRollup(Map<String, OeeRollup> rollups, Equipment equipment, Material material,
+			RollupBucket bucket, Shift shift, OffsetDateTime start, OffsetDateTime end) {
+		String key = equipment.getKey() + "|" + (material != null ? material.getKey() : null) + "|" + bucket + "|"
+				+ (shift != null ? shift.getKey() : null) + "|" + start.toLocalDateTime();
+
+		return rollups.computeIfAbsent(key, k -> new OeeRollup(equipment, material, bucket, shift, start, end));
+	}
+
+	// a shift can start the day before, but not before the rotation start
+	private LocalDate getFirstDay(WorkSchedule schedule, OffsetDateTime start) {
+		LocalDate firstDay = start.toLocalDate().minusDays(1);
+		LocalDate rotationStart = getRotationStart(schedule);
+
+		if (rotationStart != null && firstDay.isBefore(rotationStart)) {
+			firstDay = rotationStart;
+		}
+		return firstDay;
+	}
+
+	// the first shift instance containing the time, from the same days as the
+	// availability
+	private ShiftInstance findShiftInstance(WorkSchedule schedule, OffsetDateTime start) throws Exception {
+		LocalDateTime dateTime = start.toLocalDateTime();
+		List<ShiftInstance> instances = new ArrayList<>();
+
+		for (LocalDate day = getFirstDay(schedule, start); !day.isAfter(start.toLocalDate()); day = day.plusDays(1)) {
+			for (ShiftInstance instance : schedule.getShiftInstancesForDay(day)) {
+				if (instance.isInShiftInstance(dateTime)) {
+					instances.add(instance);
+				}
+			}
+		}
+		Collections.sort(instances);
+
+		return instances.isEmpty() ? null : instances.get(0);
+	}
+
+	// no shift instances before the rotation of every team has started
+	private LocalDate getRotationStart(WorkSchedule schedule) {
+		LocalDate rotationStart = null;
+
+		for (Team team : schedule.getTeams()) {
+			if (team.getRotationStart() != null
+					&& (rotationStart == null || team.getRotationStart().isAfter(rotationStart))) {
+				rotationStart = team.getRotationStart();
+			}
+		}
+		return rotationStart;
+	}
+
+	private static Duration getOverlap(OffsetDateTime start, OffsetDateTime end, OffsetDateTime from,
+			OffsetDateTime to) {
+		OffsetDateTime overlapStart = start.isAfter(from) ? start : from;
+		OffsetDateTime overlapEnd = end.isBefore(to) ? end : to;
+
+		return overlapEnd.isAfter(overlapStart) ? Duration.between(overlapStart, overlapEnd) : Duration.ZERO;
+	}
+}
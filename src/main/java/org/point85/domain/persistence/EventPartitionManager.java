@@ -0,0 +1,476 @@
+package org.point85.domain.persistence;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.point85.domain.i18n.DomainLocalizer;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.script.OeeEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The EventPartitionManager keeps the OEE event table range partitioned on the
+ * event start time for PostgreSQL, SQL Server and Oracle. Old events are
+ * removed by dropping a whole partition instead of deleting rows. A partition
+ * that still holds a material setup in effect at the cutoff is kept until the
+ * setup ends.<br>
+ * The layout is created once by {@link #partition()}. PostgreSQL partitions
+ * and SQL Server boundaries must then be created ahead of time by
+ * {@link #createPartitions(int)}, while Oracle adds interval partitions as
+ * events arrive. Other SQL Server indexes on the table must be created on the
+ * partition scheme so that a partition can be truncated. Partitions are shared
+ * by all equipment, so one retention period applies to every piece of
+ * equipment.
+ *
+ */
+public class EventPartitionManager {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(EventPartitionManager.class);
+
+	// partitioned table and column
+	public static final String TABLE_NAME = "OEE_EVENT";
+	public static final String PARTITION_COLUMN = "START_TIME";
+
+	// SQL Server partition function and scheme
+	public static final String PARTITION_FUNCTION = "PF_OEE_EVENT";
+	public static final String PARTITION_SCHEME = "PS_OEE_EVENT";
+
+	// PostgreSQL table holding the events before partitioning
+	public static final String UNPARTITIONED_TABLE = "OEE_EVENT_UNPARTITIONED";
+
+	// default number of future partitions
+	public static final int DEFAULT_PERIODS_AHEAD = 3;
+
+	private static final DateTimeFormatter NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final DateTimeFormatter LITERAL_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final DateTimeFormatter MSSQL_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+	private final PersistenceService persistenceService;
+
+	private final PartitionInterval interval;
+
+	// age of the events to keep
+	private Duration retentionPeriod = Equipment.DEFAULT_RETENTION_PERIOD;
+
+	public EventPartitionManager(PersistenceService persistenceService, PartitionInterval interval) {
+		this.persistenceService = persistenceService;
+		this.interval = interval;
+	}
+
+	public PartitionInterval getInterval() {
+		return interval;
+	}
+
+	public Duration getRetentionPeriod() {
+		return retentionPeriod;
+	}
+
+	public void setRetentionPeriod(Duration retentionPeriod) {
+		this.retentionPeriod = retentionPeriod;
+	}
+
+	/**
+	 * Check to see if the event table is partitioned
+	 *
+	 * @return True if partitioned
+	 * @throws Exception Exception
+	 */
+	public boolean isPartitioned() throws Exception {
+		String sql = null;
+
+		switch (getDatabaseType()) {
+		case MSSQL:
+			sql = "SELECT COUNT(*) FROM sys.partition_functions WHERE name = '" + PARTITION_FUNCTION + "'";
+			break;
+		case ORACLE:
+			sql = "SELECT COUNT(*) FROM USER_PART_TABLES WHERE TABLE_NAME = '" + TABLE_NAME + "'";
+			break;
+		case POSTGRES:
+		default:
+			sql = "SELECT COUNT(*) FROM pg_partitioned_table p JOIN pg_class c ON p.partrelid = c.oid WHERE c.relname = '"
+					+ TABLE_NAME.toLowerCase() + "'";
+			break;
+		}
+		return count(sql) > 0;
+	}
+
+	/**
+	 * Convert the event table to the partitioned layout in one transaction.
+	 * PostgreSQL cannot partition a table in place, so the events are copied into
+	 * a new partitioned table with the same defaults, constraints, indexes and
+	 * foreign keys. The original is kept without its primary key for the database
+	 * administrator to drop.
+	 *
+	 * @return True if the table was partitioned, false if it already is
+	 * @throws Exception Exception
+	 */
+	public boolean partition() throws Exception {
+		if (isPartitioned()) {
+			logger.info("Table " + TABLE_NAME + " is already partitioned");
+			return false;
+		}
+
+		LocalDateTime firstTime = fetchFirstStartTime();
+		LocalDate first = interval.getStart(firstTime != null ? firstTime.toLocalDate() : LocalDate.now());
+
+		List<String> statements = getPartitionStatements(first, DEFAULT_PERIODS_AHEAD);
+
+		if (logger.isInfoEnabled()) {
+			for (String statement : statements) {
+				logger.info("Executing: " + statement);
+			}
+		}
+		persistenceService.executeUpdates(statements);
+		return true;
+	}
+
+	/**
+	 * Build the DDL to partition the event table
+	 *
+	 * @param first        Start of the first partition
+	 * @param periodsAhead Number of partitions after the current one
+	 * @return List of SQL statements
+	 * @throws Exception Exception
+	 */
+	List<String> getPartitionStatements(LocalDate first, int periodsAhead) throws Exception {
+		List<String> statements = new ArrayList<>();
+
+		LocalDate last = getLastPeriod(periodsAhead);
+
+		switch (getDatabaseType()) {
+		case MSSQL: {
+			StringBuilder boundaries = new StringBuilder();
+
+			for (LocalDate start = first; !start.isAfter(interval.getNext(last)); start = interval.getNext(start)) {
+				if (boundaries.length() > 0) {
+					boundaries.append(", ");
+				}
+				boundaries.append(toLiteral(start.atStartOfDay()));
+			}
+
+			String constraint = (String) querySingleResult(
+					"SELECT name FROM sys.key_constraints WHERE type = 'PK' AND parent_object_id = OBJECT_ID('"
+							+ TABLE_NAME + "')");
+
+			statements.add("CREATE PARTITION FUNCTION " + PARTITION_FUNCTION + " (DATETIME2) AS RANGE RIGHT FOR VALUES ("
+					+ boundaries + ")");
+			statements.add("CREATE PARTITION SCHEME " + PARTITION_SCHEME + " AS PARTITION " + PARTITION_FUNCTION
+					+ " ALL TO ([PRIMARY])");
+			statements.add("ALTER TABLE " + TABLE_NAME + " ALTER COLUMN " + PARTITION_COLUMN + " DATETIME2 NOT NULL");
+
+			if (constraint != null) {
+				statements.add("ALTER TABLE " + TABLE_NAME + " DROP CONSTRAINT " + constraint);
+			}
+
+			// the clustered key moves the rows onto the partition scheme
+			statements.add("ALTER TABLE " + TABLE_NAME + " ADD CONSTRAINT PK_" + TABLE_NAME
+					+ " PRIMARY KEY CLUSTERED (EVENT_KEY, " + PARTITION_COLUMN + ") ON " + PARTITION_SCHEME + " ("
+					+ PARTITION_COLUMN + ")");
+			break;
+		}
+
+		case ORACLE: {
+			String range = interval.equals(PartitionInterval.WEEK) ? "NUMTODSINTERVAL(7, 'DAY')"
+					: "NUMTOYMINTERVAL(1, 'MONTH')";
+
+			statements.add("ALTER TABLE " + TABLE_NAME + " MODIFY (" + PARTITION_COLUMN + " NOT NULL)");
+			statements.add("ALTER TABLE " + TABLE_NAME + " MODIFY PARTITION BY RANGE (" + PARTITION_COLUMN
+					+ ") INTERVAL (" + range + ") (PARTITION " + TABLE_NAME + "_P0 VALUES LESS THAN ("
+					+ toLiteral(first.atStartOfDay()) + ")) ONLINE UPDATE INDEXES");
+			break;
+		}
+
+		case POSTGRES:
+		default: {
+			String table = TABLE_NAME.toLowerCase();
+
+			// the key sequence belongs to the original table
+			String sequence = (String) querySingleResult(
+					"SELECT pg_get_serial_sequence('" + table + "', 'event_key')");
+
+			String primaryKey = (String) querySingleResult(
+					"SELECT MAX(CAST(conname AS TEXT)) FROM pg_constraint WHERE contype = 'p' AND conrelid = CAST('"
+							+ table + "' AS REGCLASS)");
+
+			statements.add("ALTER TABLE " + TABLE_NAME + " RENAME TO " + UNPARTITIONED_TABLE);
+
+			// a unique key of a partitioned table must include the partition column
+			if (primaryKey != null) {
+				statements.add("ALTER TABLE " + UNPARTITIONED_TABLE + " DROP CONSTRAINT " + primaryKey);
+			}
+
+			// the indexes are copied under new names, the schema migration accepts them
+			statements.add("CREATE TABLE " + TABLE_NAME + " (LIKE " + UNPARTITIONED_TABLE
+					+ " INCLUDING ALL) PARTITION BY RANGE (" + PARTITION_COLUMN + ")");
+			statements.add("ALTER TABLE " + TABLE_NAME + " ADD PRIMARY KEY (EVENT_KEY, " + PARTITION_COLUMN + ")");
+
+			// LIKE does not copy foreign keys
+			for (Object[] row : queryResultList(
+					"SELECT CAST(conname AS TEXT), pg_get_constraintdef(oid) FROM pg_constraint WHERE contype = 'f' AND conrelid = CAST('"
+							+ table + "' AS REGCLASS)")) {
+				statements.add("ALTER TABLE " + TABLE_NAME + " ADD CONSTRAINT " + row[0] + " " + row[1]);
+			}
+
+			for (LocalDate start = first; !start.isAfter(last); start = interval.getNext(start)) {
+				statements.add(getCreatePartitionStatement(start));
+			}
+
+			// catches events outside of the created partitions
+			statements.add("CREATE TABLE " + TABLE_NAME + "_DEFAULT PARTITION OF " + TABLE_NAME + " DEFAULT");
+			statements.add("INSERT INTO " + TABLE_NAME + " SELECT * FROM " + UNPARTITIONED_TABLE);
+
+			if (sequence != null) {
+				statements.add("ALTER SEQUENCE " + sequence + " OWNED BY " + TABLE_NAME + ".EVENT_KEY");
+			}
+			break;
+		}
+		}
+		return statements;
+	}
+
+	/**
+	 * Create any missing partitions from the current one up to the number of
+	 * partitions ahead. Oracle creates its interval partitions automatically.
+	 *
+	 * @param periodsAhead Number of partitions after the current one
+	 * @return Number of partitions created
+	 * @throws Exception Exception
+	 */
+	public int createPartitions(int periodsAhead) throws Exception {
+		DatabaseType databaseType = getDatabaseType();
+
+		if (databaseType.equals(DatabaseType.ORACLE)) {
+			return 0;
+		}
+
+		LocalDate last = getLastPeriod(periodsAhead);
+		int created = 0;
+
+		for (LocalDate start = interval.getStart(LocalDate.now()); !start.isAfter(last); start = interval
+				.getNext(start)) {
+
+			if (databaseType.equals(DatabaseType.MSSQL)) {
+				// a partition is bounded by the start of the next one
+				LocalDate next = interval.getNext(start);
+
+				if (!boundaryExists(next)) {
+					execute("ALTER PARTITION SCHEME " + PARTITION_SCHEME + " NEXT USED [PRIMARY]");
+					execute("ALTER PARTITION FUNCTION " + PARTITION_FUNCTION + "() SPLIT RANGE ("
+							+ toLiteral(next.atStartOfDay()) + ")");
+					created++;
+				}
+			} else if (!partitionExists(start)) {
+				execute(getCreatePartitionStatement(start));
+				created++;
+			}
+		}
+
+		if (created > 0 && logger.isInfoEnabled()) {
+			logger.info("Created " + created + " partitions of " + TABLE_NAME);
+		}
+		return created;
+	}
+
+	/**
+	 * Drop the partitions holding only events that started before the cutoff,
+	 * and delete the rollups of all equipment that ended before it
+	 *
+	 * @param cutoff Oldest event start time to keep
+	 * @return Number of partitions dropped
+	 * @throws Exception Exception
+	 */
+	public int dropPartitions(OffsetDateTime cutoff) throws Exception {
+		// rollups are not partitioned
+		int purged = persistenceService.purgeRollups(null, cutoff);
+
+		if (purged > 0 && logger.isInfoEnabled()) {
+			logger.info("Purged " + purged + " rollups older than " + cutoff);
+		}
+
+		LocalDateTime firstTime = fetchFirstStartTime();
+
+		if (firstTime == null) {
+			return 0;
+		}
+
+		LocalDateTime limit = cutoff.toLocalDateTime();
+		int dropped = 0;
+
+		for (LocalDate start = interval.getStart(firstTime.toLocalDate()); !interval.getNext(start).atStartOfDay()
+				.isAfter(limit); start = interval.getNext(start)) {
+
+			if (hasActiveSetups(start, limit)) {
+				if (logger.isInfoEnabled()) {
+					logger.info("Keeping partition starting " + start + " with a setup in effect at " + limit);
+				}
+				continue;
+			}
+
+			if (dropPartition(start)) {
+				dropped++;
+			}
+		}
+
+		if (dropped > 0 && logger.isInfoEnabled()) {
+			logger.info("Dropped " + dropped + " partitions of " + TABLE_NAME + " older than " + limit);
+		}
+		return dropped;
+	}
+
+	/**
+	 * Create the future partitions and drop those past the retention period
+	 *
+	 * @return Number of partitions dropped
+	 * @throws Exception Exception
+	 */
+	public int maintain() throws Exception {
+		createPartitions(DEFAULT_PERIODS_AHEAD);
+		return dropPartitions(OffsetDateTime.now().minusDays(retentionPeriod.toDays()));
+	}
+
+	private boolean dropPartition(LocalDate start) throws Exception {
+		switch (getDatabaseType()) {
+		case MSSQL:
+			if (!boundaryExists(start)) {
+				return false;
+			}
+			String literal = toLiteral(start.atStartOfDay());
+
+			// empty the partition then remove its lower boundary
+			execute("TRUNCATE TABLE " + TABLE_NAME + " WITH (PARTITIONS ($PARTITION." + PARTITION_FUNCTION + "("
+					+ literal + ")))");
+			execute("ALTER PARTITION FUNCTION " + PARTITION_FUNCTION + "() MERGE RANGE (" + literal + ")");
+			return true;
+
+		case ORACLE:
+			// interval partitions only exist once an event arrives
+			if (count("SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE " + getRangePredicate(start)) == 0) {
+				return false;
+			}
+			execute("ALTER TABLE " + TABLE_NAME + " DROP PARTITION FOR (" + toLiteral(start.atStartOfDay())
+					+ ") UPDATE GLOBAL INDEXES");
+			return true;
+
+		case POSTGRES:
+		default:
+			if (!partitionExists(start)) {
+				return false;
+			}
+			String name = getPartitionName(start);
+
+			execute("ALTER TABLE " + TABLE_NAME + " DETACH PARTITION " + name);
+			execute("DROP TABLE " + name);
+			return true;
+		}
+	}
+
+	// material setups still in effect at the cutoff are kept by a row purge
+	private boolean hasActiveSetups(LocalDate start, LocalDateTime cutoff) throws Exception {
+		return count("SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE " + getRangePredicate(start)
+				+ " AND EVENT_TYPE = '" + OeeEventType.MATERIAL_VALUE + "' AND (END_TIME IS NULL OR END_TIME >= "
+				+ toLiteral(cutoff) + ")") > 0;
+	}
+
+	private String getRangePredicate(LocalDate start) throws Exception {
+		return PARTITION_COLUMN + " >= " + toLiteral(start.atStartOfDay()) + " AND " + PARTITION_COLUMN + " < "
+				+ toLiteral(interval.getNext(start).atStartOfDay());
+	}
+
+	private String getCreatePartitionStatement(LocalDate start) throws Exception {
+		return "CREATE TABLE " + getPartitionName(start) + " PARTITION OF " + TABLE_NAME + " FOR VALUES FROM ("
+				+ toLiteral(start.atStartOfDay()) + ") TO (" + toLiteral(interval.getNext(start).atStartOfDay())
+				+ ")";
+	}
+
+	private String getPartitionName(LocalDate start) {
+		return TABLE_NAME + "_P" + start.format(NAME_FORMATTER);
+	}
+
+	private boolean partitionExists(LocalDate start) {
+		return count("SELECT COUNT(*) FROM pg_class WHERE relname = '" + getPartitionName(start).toLowerCase()
+				+ "'") > 0;
+	}
+
+	private boolean boundaryExists(LocalDate start) throws Exception {
+		return count("SELECT COUNT(*) FROM sys.partition_range_values v JOIN sys.partition_functions f "
+				+ "ON v.function_id = f.function_id WHERE f.name = '" + PARTITION_FUNCTION + "' AND v.value = CAST("
+				+ toLiteral(start.atStartOfDay()) + " AS DATETIME2)") > 0;
+	}
+
+	private LocalDate getLastPeriod(int periodsAhead) {
+		LocalDate last = interval.getStart(LocalDate.now());
+
+		for (int i = 0; i < periodsAhead; i++) {
+			last = interval.getNext(last);
+		}
+		return last;
+	}
+
+	private String toLiteral(LocalDateTime dateTime) throws Exception {
+		if (getDatabaseType().equals(DatabaseType.MSSQL)) {
+			return "'" + dateTime.format(MSSQL_FORMATTER) + "'";
+		}
+		return "TIMESTAMP '" + dateTime.format(LITERAL_FORMATTER) + "'";
+	}
+
+	private DatabaseType getDatabaseType() throws Exception {
+		DatabaseType databaseType = persistenceService.getDatabaseType();
+
+		if (databaseType == null || databaseType.equals(DatabaseType.HSQL)
+				|| databaseType.equals(DatabaseType.MYSQL)) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("partition.database", databaseType));
+		}
+		return databaseType;
+	}
+
+	private LocalDateTime fetchFirstStartTime() {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			return em.createQuery("SELECT MIN(e.startTime.localDateTime) FROM OeeEvent e", LocalDateTime.class)
+					.getSingleResult();
+		} finally {
+			em.close();
+		}
+	}
+
+	private void execute(String statement) {
+		if (logger.isInfoEnabled()) {
+			logger.info("Executing: " + statement);
+		}
+		persistenceService.executeUpdate(statement);
+	}
+
+	private long count(String sql) {
+		return ((Number) querySingleResult(sql)).longValue();
+	}
+
+	private Object querySingleResult(String sql) {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			return em.createNativeQuery(sql).getSingleResult();
+		} finally {
+			em.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> queryResultList(String sql) {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			return em.createNativeQuery(sql).getResultList();
+		} finally {
+			em.close();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.point85.domain.persistence;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An IndexDefinition describes an index needed by the queries of the
+ * {@link PersistenceService} and the schema version that introduced it
+ *
+ */
+public class IndexDefinition {
+	// schema version
+	private final int version;
+
+	private final String name;
+
+	private final String tableName;
+
+	// key columns in order
+	private final List<String> columns;
+
+	// non-key columns carried in the index where supported
+	private final List<String> includedColumns;
+
+	public IndexDefinition(int version, String name, String tableName, String... columns) {
+		this(version, name, tableName, Arrays.asList(columns), Collections.emptyList());
+	}
+
+	public IndexDefinition(int version, String name, String tableName, List<String> columns,
+			List<String> includedColumns) {
+		this.version = version;
+		this.name = name;
+		this.tableName = tableName;
+		this.columns = Collections.unmodifiableList(columns);
+		this.includedColumns = Collections.unmodifiableList(includedColumns);
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	public List<String> getIncludedColumns() {
+		return includedColumns;
+	}
+
+	/**
+	 * Check to see if an index with these columns serves the same queries
+	 *
+	 * @param indexColumns Columns of an existing index in order
+	 * @return True if the key columns lead the existing index
+	 */
+	public boolean isCoveredBy(List<String> indexColumns) {
+		if (indexColumns.size() < columns.size()) {
+			return false;
+		}
+
+		for (int i = 0; i < columns.size(); i++) {
+			if (!columns.get(i).equalsIgnoreCase(indexColumns.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return name + " ON " + tableName + " " + columns;
+	}
+}
@@ -0,0 +1,36 @@
+package org.point85.domain.persistence;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Range of start times held in one partition of the OEE event table
+ *
+ */
+public enum PartitionInterval {
+	MONTH, WEEK;
+
+	/**
+	 * Get the first day of the partition holding this date
+	 *
+	 * @param date Date
+	 * @return Starting date of the partition
+	 */
+	public LocalDate getStart(LocalDate date) {
+		if (this.equals(WEEK)) {
+			return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+		}
+		return date.withDayOfMonth(1);
+	}
+
+	/**
+	 * Get the first day of the following partition
+	 *
+	 * @param start Starting date of a partition
+	 * @return Starting date of the next partition
+	 */
+	public LocalDate getNext(LocalDate start) {
+		return this.equals(WEEK) ? start.plusWeeks(1) : start.plusMonths(1);
+	}
+}
@@ -1,25 +1,47 @@
 package org.point85.domain.persistence;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.LockModeType;
 import javax.persistence.Query;
+import javax.persistence.SharedCacheMode;
 import javax.persistence.TypedQuery;
 import javax.persistence.spi.PersistenceUnitInfo;
 
+import org.hibernate.FlushMode;
+import org.hibernate.LockOptions;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
 import org.hibernate.integrator.spi.Integrator;
 import org.hibernate.jpa.HibernatePersistenceProvider;
 import org.hibernate.jpa.boot.spi.IntegratorProvider;
@@ -28,6 +50,7 @@ import org.point85.domain.collector.CollectorState;
 import org.point85.domain.collector.DataCollector;
 import org.point85.domain.collector.DataSourceType;
 import org.point85.domain.collector.OeeEvent;
+import org.point85.domain.collector.OeeEventRow;
 import org.point85.domain.db.DatabaseEvent;
 import org.point85.domain.db.DatabaseEventSource;
 import org.point85.domain.db.DatabaseEventStatus;
@@ -37,6 +60,9 @@ import org.point85.domain.i18n.DomainLocalizer;
 import org.point85.domain.jms.JmsSource;
 import org.point85.domain.modbus.ModbusSource;
 import org.point85.domain.mqtt.MqttSource;
+import org.point85.domain.oee.OeeRollup;
+import org.point85.domain.oee.RollupBucket;
+import org.point85.domain.oee.TimeLoss;
 import org.point85.domain.opc.da.OpcDaSource;
 import org.point85.domain.opc.ua.OpcUaSource;
 import org.point85.domain.plant.Area;
@@ -87,6 +113,31 @@ public final class PersistenceService {
 	// time in sec to wait for EntityManagerFactory creation to complete
 	private static final int EMF_CREATION_TO_SEC = 30;
 
+	// mapping file for sequence allocated primary keys
+	public static final String POOLED_ID_MAPPING = "META-INF/oee-pooled-ids.xml";
+
+	// number of statements in a JDBC batch
+	private static final String JDBC_BATCH_SIZE = "50";
+
+	// rows read per database round trip when streaming events
+	private static final int STREAM_FETCH_SIZE = 500;
+
+	// OEE events with the associations loaded in the same row
+	private static final String EVENT_FETCH_SELECT = "SELECT e FROM OeeEvent e JOIN FETCH e.equipment LEFT JOIN FETCH e.reason "
+			+ "LEFT JOIN FETCH e.material LEFT JOIN FETCH e.uom LEFT JOIN FETCH e.shift LEFT JOIN FETCH e.team ";
+
+	// columns of an OeeEventRow
+	private static final String EVENT_ROW_SELECT = "SELECT NEW org.point85.domain.collector.OeeEventRow(e.eventType, "
+			+ "e.startTime.localDateTime, e.startTime.utcOffset, e.endTime.localDateTime, e.endTime.utcOffset, "
+			+ "e.duration, e.amount, r.primaryKey, r.timeLoss, u.primaryKey, e.sourceId) "
+			+ "FROM OeeEvent e LEFT JOIN e.reason r LEFT JOIN e.uom u ";
+
+	// largest IN list of keys in a statement
+	private static final int MAX_IN_LIST = 1000;
+
+	// Ehcache configuration of the second-level cache regions
+	public static final String CACHE_CONFIG = "META-INF/oee-ehcache.xml";
+
 	// entity manager factory
 	private EntityManagerFactory emf;
 
@@ -104,6 +155,15 @@ public final class PersistenceService {
 	private static String jdbcUserName;
 	private static String jdbcPassword;
 
+	// type of database connected to
+	private DatabaseType databaseType;
+
+	// allocate primary keys from a sequence instead of IDENTITY columns
+	private boolean pooledIds = false;
+
+	// cache reference entities and their lookup queries
+	private boolean secondLevelCache = false;
+
 	private PersistenceService() {
 		namedQueryMap = new ConcurrentHashMap<>();
 	}
@@ -126,6 +186,47 @@ public final class PersistenceService {
 		return logger;
 	}
 
+	/**
+	 * Allocate primary keys of the OEE tables in blocks from a sequence so that
+	 * inserts can be batched. The sequence must first be created with
+	 * {@link PooledIdMigration}. Set this before initializing the service.
+	 * 
+	 * @param pooledIds True to use the sequence, false for IDENTITY columns
+	 */
+	public void setPooledIds(boolean pooledIds) {
+		this.pooledIds = pooledIds;
+	}
+
+	public boolean isPooledIds() {
+		return pooledIds;
+	}
+
+	/**
+	 * Keep reasons, materials, units of measure, plant entities, equipment
+	 * materials, work schedules, collectors and data sources in a bounded
+	 * second-level cache, and cache the results of their lookup queries. The
+	 * hibernate-jcache and Ehcache libraries configured by {@link #CACHE_CONFIG}
+	 * must be on the class path. Set this before initializing the service.
+	 * 
+	 * @param secondLevelCache True to enable the cache
+	 */
+	public void setSecondLevelCache(boolean secondLevelCache) {
+		this.secondLevelCache = secondLevelCache;
+	}
+
+	public boolean isSecondLevelCache() {
+		return secondLevelCache;
+	}
+
+	/**
+	 * Get the type of the connected database
+	 * 
+	 * @return {@link DatabaseType}
+	 */
+	public DatabaseType getDatabaseType() {
+		return databaseType;
+	}
+
 	public void initialize(String jdbcUrl, String userName, String password) {
 		// cache connection info
 		jdbcConnection = jdbcUrl;
@@ -140,6 +241,9 @@ public final class PersistenceService {
 
 				// cache base UOMs
 				primeUomCache();
+
+				// warn of slow queries
+				checkIndexes();
 			} catch (Exception e) {
 				getLogger().error(e.getMessage());
 			}
@@ -147,6 +251,15 @@ public final class PersistenceService {
 		});
 	}
 
+	// the schema is created outside of the domain
+	private void checkIndexes() {
+		try {
+			new SchemaMigration(this).checkIndexes();
+		} catch (Exception e) {
+			getLogger().warn("Unable to check the indexes. " + e.getMessage());
+		}
+	}
+
 	private void primeUomCache() throws Exception {
 		// load cache with fundamental units
 		fetchUomByUnit(Unit.SECOND);
@@ -185,6 +298,38 @@ public final class PersistenceService {
 		return getEntityManagerFactory().createEntityManager();
 	}
 
+	// get an EntityManager for queries. Loaded entities are not dirty checked and
+	// nothing is flushed. The caller closes it, leaving the results detached.
+	private EntityManager getReadOnlyEntityManager() {
+		EntityManager em = getEntityManager();
+
+		Session session = em.unwrap(Session.class);
+		session.setDefaultReadOnly(true);
+		session.setHibernateFlushMode(FlushMode.MANUAL);
+
+		return em;
+	}
+
+	// read the results of a reference lookup from the query cache
+	private void setCacheable(Query query) {
+		if (secondLevelCache) {
+			query.setHint(QueryHints.CACHEABLE, true);
+		}
+	}
+
+	// remove a saved or deleted entity from the second-level cache
+	private void evictFromCache(KeyedObject keyed) {
+		if (!secondLevelCache || keyed == null || keyed.getKey() == null) {
+			return;
+		}
+
+		Cache cache = getEntityManagerFactory().getCache();
+
+		if (cache.contains(keyed.getClass(), keyed.getKey())) {
+			cache.evict(keyed.getClass(), keyed.getKey());
+		}
+	}
+
 	public List<String> fetchPlantEntityNames() {
 		final String ENTITY_NAMES = "ENTITY.Names";
 
@@ -192,8 +337,14 @@ public final class PersistenceService {
 			createNamedQuery(ENTITY_NAMES, "SELECT ent.name FROM PlantEntity ent");
 		}
 
-		TypedQuery<String> query = getEntityManager().createNamedQuery(ENTITY_NAMES, String.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<String> query = em.createNamedQuery(ENTITY_NAMES, String.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public PlantEntity fetchPlantEntityByName(String name) {
@@ -204,15 +355,22 @@ public final class PersistenceService {
 		}
 
 		PlantEntity entity = null;
-		TypedQuery<PlantEntity> query = getEntityManager().createNamedQuery(ENTITY_BY_NAME, PlantEntity.class);
-		query.setParameter("name", name);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<PlantEntity> query = em.createNamedQuery(ENTITY_BY_NAME, PlantEntity.class);
+			setCacheable(query);
+			query.setParameter("name", name);
 
-		List<PlantEntity> entities = query.getResultList();
+			List<PlantEntity> entities = query.getResultList();
 
-		if (entities.size() == 1) {
-			entity = entities.get(0);
+			if (entities.size() == 1) {
+				entity = entities.get(0);
+			}
+			return entity;
+		} finally {
+			em.close();
 		}
-		return entity;
 	}
 
 	public List<EventResolver> fetchEventResolvers() {
@@ -222,8 +380,14 @@ public final class PersistenceService {
 			createNamedQuery(RESOLVER_ALL, "SELECT er FROM EventResolver er");
 		}
 
-		TypedQuery<EventResolver> query = getEntityManager().createNamedQuery(RESOLVER_ALL, EventResolver.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<EventResolver> query = em.createNamedQuery(RESOLVER_ALL, EventResolver.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<String> fetchResolverSourceIds(String equipmentName, DataSourceType sourceType) {
@@ -234,10 +398,16 @@ public final class PersistenceService {
 					"SELECT er.sourceId FROM EventResolver er JOIN er.equipment eq JOIN er.dataSource ds WHERE eq.name = :name AND ds.sourceType = :type");
 		}
 
-		TypedQuery<String> query = getEntityManager().createNamedQuery(EQUIPMENT_SOURCE_IDS, String.class);
-		query.setParameter("name", equipmentName);
-		query.setParameter("type", sourceType);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<String> query = em.createNamedQuery(EQUIPMENT_SOURCE_IDS, String.class);
+			query.setParameter("name", equipmentName);
+			query.setParameter("type", sourceType);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<CollectorDataSource> fetchDataSources(DataSourceType sourceType) {
@@ -247,10 +417,17 @@ public final class PersistenceService {
 			createNamedQuery(SRC_BY_TYPE, "SELECT source FROM CollectorDataSource source WHERE sourceType = :type");
 		}
 
-		TypedQuery<CollectorDataSource> query = getEntityManager().createNamedQuery(SRC_BY_TYPE,
-				CollectorDataSource.class);
-		query.setParameter("type", sourceType);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<CollectorDataSource> query = em.createNamedQuery(SRC_BY_TYPE,
+					CollectorDataSource.class);
+			setCacheable(query);
+			query.setParameter("type", sourceType);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	// remove the PersistentObject from the persistence context
@@ -276,6 +453,8 @@ public final class PersistenceService {
 			// commit transaction
 			txn.commit();
 
+			evictFromCache(merged);
+
 			return merged;
 		} catch (Exception e) {
 			// roll back transaction
@@ -290,6 +469,20 @@ public final class PersistenceService {
 
 	// save the Persistent Object to the database
 	public List<KeyedObject> save(List<KeyedObject> objects) throws Exception {
+		return save(objects, Collections.emptySet());
+	}
+
+	/**
+	 * Save the objects in one transaction. New objects with keys from
+	 * {@link #assignKeys} are inserted under those keys without being looked up
+	 * first. The other objects are merged.
+	 * 
+	 * @param objects  List of {@link KeyedObject}
+	 * @param inserted New objects in the list
+	 * @return List of saved {@link KeyedObject} in the same order
+	 * @throws Exception Exception
+	 */
+	public List<KeyedObject> save(List<KeyedObject> objects, Set<KeyedObject> inserted) throws Exception {
 		EntityManager em = getEntityManager();
 		EntityTransaction txn = null;
 		List<KeyedObject> mergedObjects = new ArrayList<>();
@@ -298,8 +491,17 @@ public final class PersistenceService {
 			txn = em.getTransaction();
 			txn.begin();
 
+			Session session = em.unwrap(Session.class);
+
 			// merge this entity into the PU and save
 			for (KeyedObject object : objects) {
+				if (object.getKey() != null && inserted.contains(object)) {
+					// the generator keeps the assigned key
+					session.save(object);
+					mergedObjects.add(object);
+					continue;
+				}
+
 				KeyedObject merged = em.merge(object);
 				mergedObjects.add(merged);
 			}
@@ -307,6 +509,10 @@ public final class PersistenceService {
 			// commit transaction
 			txn.commit();
 
+			for (KeyedObject merged : mergedObjects) {
+				evictFromCache(merged);
+			}
+
 			return mergedObjects;
 		} catch (Exception e) {
 			// roll back transaction
@@ -319,6 +525,43 @@ public final class PersistenceService {
 		}
 	}
 
+	/**
+	 * Assign primary keys from the pooled sequence to the new objects, so that
+	 * their keys are known before they are saved. The keys come from the block
+	 * already allocated, the sequence is only read when the block is used up.
+	 * Nothing is assigned with IDENTITY keys.
+	 * 
+	 * @param objects List of {@link KeyedObject}
+	 * @return List of the objects that were assigned a key
+	 * @throws Exception Exception
+	 */
+	public List<KeyedObject> assignKeys(List<KeyedObject> objects) throws Exception {
+		List<KeyedObject> assigned = new ArrayList<>();
+
+		if (!pooledIds) {
+			return assigned;
+		}
+
+		EntityManager em = getEntityManager();
+
+		try {
+			SessionImplementor session = em.unwrap(SessionImplementor.class);
+
+			for (KeyedObject object : objects) {
+				if (object.getKey() != null) {
+					continue;
+				}
+
+				IdentifierGenerator generator = session.getEntityPersister(null, object).getIdentifierGenerator();
+				object.setKey((Long) generator.generate(session, object));
+				assigned.add(object);
+			}
+		} finally {
+			em.close();
+		}
+		return assigned;
+	}
+
 	private void checkRotationReferences(Rotation rotation) throws Exception {
 		// check for team reference
 		List<Team> referencingTeams = fetchTeamCrossReferences(rotation);
@@ -361,9 +604,15 @@ public final class PersistenceService {
 			createNamedQuery(SEG_SHIFT_XREF, "SELECT COUNT(rs) FROM RotationSegment rs WHERE startingShift = :shift");
 		}
 
-		Query query = getEntityManager().createNamedQuery(SEG_SHIFT_XREF);
-		query.setParameter("shift", shift);
-		return (long) query.getSingleResult();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(SEG_SHIFT_XREF);
+			query.setParameter("shift", shift);
+			return (long) query.getSingleResult();
+		} finally {
+			em.close();
+		}
 	}
 
 	private void checkShiftReferences(Shift shift) throws Exception {
@@ -572,6 +821,8 @@ public final class PersistenceService {
 
 			// commit transaction
 			txn.commit();
+
+			evictFromCache(keyed);
 		} catch (Exception e) {
 			// roll back transaction
 			if (txn != null && txn.isActive()) {
@@ -591,14 +842,26 @@ public final class PersistenceService {
 			createNamedQuery(ENTITY_ALL, "SELECT ent FROM PlantEntity ent");
 		}
 
-		TypedQuery<PlantEntity> query = getEntityManager().createNamedQuery(ENTITY_ALL, PlantEntity.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<PlantEntity> query = em.createNamedQuery(ENTITY_ALL, PlantEntity.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	private void createNamedQuery(String name, String jsql) {
-		Query query = getEntityManager().createQuery(jsql);
-		getEntityManagerFactory().addNamedQuery(name, query);
-		namedQueryMap.put(name, true);
+		EntityManager em = getEntityManager();
+
+		try {
+			Query query = em.createQuery(jsql);
+			getEntityManagerFactory().addNamedQuery(name, query);
+			namedQueryMap.put(name, true);
+		} finally {
+			em.close();
+		}
 	}
 
 	// top-level plant entities
@@ -609,8 +872,14 @@ public final class PersistenceService {
 			createNamedQuery(ENTITY_ROOTS, "SELECT ent FROM PlantEntity ent WHERE ent.parent IS NULL");
 		}
 
-		TypedQuery<PlantEntity> query = getEntityManager().createNamedQuery(ENTITY_ROOTS, PlantEntity.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<PlantEntity> query = em.createNamedQuery(ENTITY_ROOTS, PlantEntity.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<DataCollector> fetchCollectorsByHostAndState(List<String> hostNames, List<CollectorState> states) {
@@ -621,11 +890,17 @@ public final class PersistenceService {
 					"SELECT collector FROM DataCollector collector WHERE collector.host IN :names AND collector.state IN :states");
 		}
 
-		TypedQuery<DataCollector> query = getEntityManager().createNamedQuery(COLLECTOR_BY_HOST_BY_STATE,
-				DataCollector.class);
-		query.setParameter("names", hostNames);
-		query.setParameter("states", states);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<DataCollector> query = em.createNamedQuery(COLLECTOR_BY_HOST_BY_STATE,
+					DataCollector.class);
+			query.setParameter("names", hostNames);
+			query.setParameter("states", states);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<DataCollector> fetchCollectorsByState(List<CollectorState> states) {
@@ -636,9 +911,15 @@ public final class PersistenceService {
 					"SELECT collector FROM DataCollector collector WHERE collector.state IN :states");
 		}
 
-		TypedQuery<DataCollector> query = getEntityManager().createNamedQuery(COLLECTOR_BY_STATE, DataCollector.class);
-		query.setParameter("states", states);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<DataCollector> query = em.createNamedQuery(COLLECTOR_BY_STATE, DataCollector.class);
+			query.setParameter("states", states);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<EventResolver> fetchEventResolversByHost(List<String> hostNames, List<CollectorState> states)
@@ -650,10 +931,16 @@ public final class PersistenceService {
 					"SELECT er FROM EventResolver er WHERE er.collector.host IN :names AND er.collector.state IN :states");
 		}
 
-		TypedQuery<EventResolver> query = getEntityManager().createNamedQuery(RESOLVER_BY_HOST, EventResolver.class);
-		query.setParameter("names", hostNames);
-		query.setParameter("states", states);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<EventResolver> query = em.createNamedQuery(RESOLVER_BY_HOST, EventResolver.class);
+			query.setParameter("names", hostNames);
+			query.setParameter("states", states);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<EventResolver> fetchEventResolversByCollector(List<String> definitionNames) throws Exception {
@@ -664,10 +951,16 @@ public final class PersistenceService {
 					"SELECT er FROM EventResolver er WHERE er.collector.name IN :names");
 		}
 
-		TypedQuery<EventResolver> query = getEntityManager().createNamedQuery(RESOLVER_BY_COLLECTOR,
-				EventResolver.class);
-		query.setParameter("names", definitionNames);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<EventResolver> query = em.createNamedQuery(RESOLVER_BY_COLLECTOR,
+					EventResolver.class);
+			query.setParameter("names", definitionNames);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<Material> fetchMaterialsByCategory(String category) throws Exception {
@@ -677,9 +970,15 @@ public final class PersistenceService {
 			createNamedQuery(MATLS_BY_CATEGORY, "SELECT matl FROM Material matl WHERE matl.category = :category");
 		}
 
-		TypedQuery<Material> query = getEntityManager().createNamedQuery(MATLS_BY_CATEGORY, Material.class);
-		query.setParameter("category", category);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<Material> query = em.createNamedQuery(MATLS_BY_CATEGORY, Material.class);
+			query.setParameter("category", category);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<DataCollector> fetchAllDataCollectors() {
@@ -689,8 +988,14 @@ public final class PersistenceService {
 			createNamedQuery(COLLECT_ALL, "SELECT collector FROM DataCollector collector");
 		}
 
-		TypedQuery<DataCollector> query = getEntityManager().createNamedQuery(COLLECT_ALL, DataCollector.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<DataCollector> query = em.createNamedQuery(COLLECT_ALL, DataCollector.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<Material> fetchAllMaterials() {
@@ -700,8 +1005,15 @@ public final class PersistenceService {
 			createNamedQuery(MATL_ALL, "SELECT matl FROM Material matl");
 		}
 
-		TypedQuery<Material> query = getEntityManager().createNamedQuery(MATL_ALL, Material.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<Material> query = em.createNamedQuery(MATL_ALL, Material.class);
+			setCacheable(query);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<String> fetchMaterialCategories() {
@@ -712,8 +1024,14 @@ public final class PersistenceService {
 					"SELECT DISTINCT matl.category FROM Material matl WHERE matl.category IS NOT NULL");
 		}
 
-		TypedQuery<String> query = getEntityManager().createNamedQuery(MATL_CATEGORIES, String.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<String> query = em.createNamedQuery(MATL_CATEGORIES, String.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public Material fetchMaterialByName(String name) {
@@ -724,22 +1042,41 @@ public final class PersistenceService {
 		}
 
 		Material material = null;
-		TypedQuery<Material> query = getEntityManager().createNamedQuery(MATL_BY_NAME, Material.class);
-		query.setParameter("name", name);
-		List<Material> materials = query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<Material> query = em.createNamedQuery(MATL_BY_NAME, Material.class);
+			setCacheable(query);
+			query.setParameter("name", name);
+			List<Material> materials = query.getResultList();
 
-		if (materials.size() == 1) {
-			material = materials.get(0);
+			if (materials.size() == 1) {
+				material = materials.get(0);
+			}
+			return material;
+		} finally {
+			em.close();
 		}
-		return material;
 	}
 
 	public Material fetchMaterialByKey(Long key) throws Exception {
-		return getEntityManager().find(Material.class, key);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return em.find(Material.class, key);
+		} finally {
+			em.close();
+		}
 	}
 
 	public OeeEvent fetchEventByKey(Long key) throws Exception {
-		return getEntityManager().find(OeeEvent.class, key);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return em.find(OeeEvent.class, key);
+		} finally {
+			em.close();
+		}
 	}
 
 	public Reason fetchReasonByName(String name) {
@@ -750,19 +1087,32 @@ public final class PersistenceService {
 		}
 
 		Reason reason = null;
-		TypedQuery<Reason> query = getEntityManager().createNamedQuery(REASON_BY_NAME, Reason.class);
-		query.setParameter("name", name);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<Reason> query = em.createNamedQuery(REASON_BY_NAME, Reason.class);
+			setCacheable(query);
+			query.setParameter("name", name);
 
-		List<Reason> reasons = query.getResultList();
+			List<Reason> reasons = query.getResultList();
 
-		if (reasons.size() == 1) {
-			reason = reasons.get(0);
+			if (reasons.size() == 1) {
+				reason = reasons.get(0);
+			}
+			return reason;
+		} finally {
+			em.close();
 		}
-		return reason;
 	}
 
 	public Reason fetchReasonByKey(Long key) throws Exception {
-		return getEntityManager().find(Reason.class, key);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return em.find(Reason.class, key);
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<Reason> fetchAllReasons() {
@@ -772,8 +1122,15 @@ public final class PersistenceService {
 			createNamedQuery(REASON_ALL, "SELECT reason FROM Reason reason");
 		}
 
-		TypedQuery<Reason> query = getEntityManager().createNamedQuery(REASON_ALL, Reason.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<Reason> query = em.createNamedQuery(REASON_ALL, Reason.class);
+			setCacheable(query);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	// top-level reasons
@@ -784,8 +1141,14 @@ public final class PersistenceService {
 			createNamedQuery(REASON_ROOTS, "SELECT reason FROM Reason reason WHERE reason.parent IS NULL");
 		}
 
-		TypedQuery<Reason> query = getEntityManager().createNamedQuery(REASON_ROOTS, Reason.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<Reason> query = em.createNamedQuery(REASON_ROOTS, Reason.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<String> fetchProgIds() {
@@ -795,8 +1158,14 @@ public final class PersistenceService {
 			createNamedQuery(DA_PROG_IDS, "SELECT source.name FROM OpcDaSource source");
 		}
 
-		TypedQuery<String> query = getEntityManager().createNamedQuery(DA_PROG_IDS, String.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<String> query = em.createNamedQuery(DA_PROG_IDS, String.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public OpcDaSource fetchOpcDaSourceByName(String name) {
@@ -807,15 +1176,22 @@ public final class PersistenceService {
 		}
 
 		OpcDaSource source = null;
-		TypedQuery<OpcDaSource> query = getEntityManager().createNamedQuery(DA_SRC_BY_NAME, OpcDaSource.class);
-		query.setParameter("name", name);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OpcDaSource> query = em.createNamedQuery(DA_SRC_BY_NAME, OpcDaSource.class);
+			setCacheable(query);
+			query.setParameter("name", name);
 
-		List<OpcDaSource> sources = query.getResultList();
+			List<OpcDaSource> sources = query.getResultList();
 
-		if (sources.size() == 1) {
-			source = sources.get(0);
+			if (sources.size() == 1) {
+				source = sources.get(0);
+			}
+			return source;
+		} finally {
+			em.close();
 		}
-		return source;
 	}
 
 	public OpcUaSource fetchOpcUaSourceByName(String name) {
@@ -826,19 +1202,32 @@ public final class PersistenceService {
 		}
 
 		OpcUaSource source = null;
-		TypedQuery<OpcUaSource> query = getEntityManager().createNamedQuery(UA_SRC_BY_NAME, OpcUaSource.class);
-		query.setParameter("name", name);
+		EntityManager em = getReadOnlyEntityManager();
 
-		List<OpcUaSource> sources = query.getResultList();
+		try {
+			TypedQuery<OpcUaSource> query = em.createNamedQuery(UA_SRC_BY_NAME, OpcUaSource.class);
+			setCacheable(query);
+			query.setParameter("name", name);
+
+			List<OpcUaSource> sources = query.getResultList();
 
-		if (sources.size() == 1) {
-			source = sources.get(0);
+			if (sources.size() == 1) {
+				source = sources.get(0);
+			}
+			return source;
+		} finally {
+			em.close();
 		}
-		return source;
 	}
 
 	public WorkSchedule fetchScheduleByKey(Long key) throws Exception {
-		return getEntityManager().find(WorkSchedule.class, key);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return em.find(WorkSchedule.class, key);
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<WorkSchedule> fetchWorkSchedules() {
@@ -848,8 +1237,14 @@ public final class PersistenceService {
 			createNamedQuery(WS_SCHEDULES, "SELECT ws FROM WorkSchedule ws");
 		}
 
-		TypedQuery<WorkSchedule> query = getEntityManager().createNamedQuery(WS_SCHEDULES, WorkSchedule.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<WorkSchedule> query = em.createNamedQuery(WS_SCHEDULES, WorkSchedule.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<String> fetchWorkScheduleNames() {
@@ -859,8 +1254,14 @@ public final class PersistenceService {
 			createNamedQuery(WS_NAMES, "SELECT ws.name FROM WorkSchedule ws");
 		}
 
-		TypedQuery<String> query = getEntityManager().createNamedQuery(WS_NAMES, String.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<String> query = em.createNamedQuery(WS_NAMES, String.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public WorkSchedule fetchWorkScheduleByName(String name) {
@@ -871,19 +1272,54 @@ public final class PersistenceService {
 		}
 
 		WorkSchedule schedule = null;
-		TypedQuery<WorkSchedule> query = getEntityManager().createNamedQuery(WS_BY_NAME, WorkSchedule.class);
-		query.setParameter("name", name);
-		List<WorkSchedule> schedules = query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
 
-		if (schedules.size() == 1) {
-			schedule = schedules.get(0);
+		try {
+			TypedQuery<WorkSchedule> query = em.createNamedQuery(WS_BY_NAME, WorkSchedule.class);
+			setCacheable(query);
+			query.setParameter("name", name);
+			List<WorkSchedule> schedules = query.getResultList();
+
+			if (schedules.size() == 1) {
+				schedule = schedules.get(0);
+			}
+			return schedule;
+		} finally {
+			em.close();
 		}
-		return schedule;
 	}
 
 	// fetch Team by its primary key
 	public Team fetchTeamByKey(Long key) throws Exception {
-		return getEntityManager().find(Team.class, key);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return em.find(Team.class, key);
+		} finally {
+			em.close();
+		}
+	}
+
+	// fetch Shift by its primary key
+	public Shift fetchShiftByKey(Long key) throws Exception {
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return em.find(Shift.class, key);
+		} finally {
+			em.close();
+		}
+	}
+
+	// fetch Equipment by its primary key
+	public Equipment fetchEquipmentByKey(Long key) throws Exception {
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return em.find(Equipment.class, key);
+		} finally {
+			em.close();
+		}
 	}
 
 	// get any Team references to the Rotation
@@ -894,9 +1330,15 @@ public final class PersistenceService {
 			createNamedQuery(WS_ROT_XREF, "SELECT team FROM Team team WHERE rotation = :rotation");
 		}
 
-		TypedQuery<Team> query = getEntityManager().createNamedQuery(WS_ROT_XREF, Team.class);
-		query.setParameter("rotation", rotation);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<Team> query = em.createNamedQuery(WS_ROT_XREF, Team.class);
+			query.setParameter("rotation", rotation);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<PlantEntity> fetchEntityCrossReferences(WorkSchedule schedule) {
@@ -906,20 +1348,32 @@ public final class PersistenceService {
 			createNamedQuery(WS_ENT_XREF, "SELECT ent FROM PlantEntity ent WHERE ent.workSchedule = :schedule");
 		}
 
-		TypedQuery<PlantEntity> query = getEntityManager().createNamedQuery(WS_ENT_XREF, PlantEntity.class);
-		query.setParameter("schedule", schedule);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<PlantEntity> query = em.createNamedQuery(WS_ENT_XREF, PlantEntity.class);
+			query.setParameter("schedule", schedule);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public UnitOfMeasure fetchUomByKey(Long key) throws Exception {
-		UnitOfMeasure uom = getEntityManager().find(UnitOfMeasure.class, key);
+		EntityManager em = getReadOnlyEntityManager();
 
-		// cache it
-		if (uom != null) {
-			MeasurementSystem.instance().registerUnit(uom);
-		}
+		try {
+			UnitOfMeasure uom = em.find(UnitOfMeasure.class, key);
 
-		return uom;
+			// cache it
+			if (uom != null) {
+				MeasurementSystem.instance().registerUnit(uom);
+			}
+
+			return uom;
+		} finally {
+			em.close();
+		}
 	}
 
 	// get symbols and names in this category
@@ -932,9 +1386,15 @@ public final class PersistenceService {
 					"SELECT uom.symbol, uom.name FROM UnitOfMeasure uom WHERE uom.category = :category");
 		}
 
-		Query query = getEntityManager().createNamedQuery(UOM_CAT_SYMBOLS);
-		query.setParameter("category", category);
-		return (List<String[]>) query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(UOM_CAT_SYMBOLS);
+			query.setParameter("category", category);
+			return (List<String[]>) query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	// fetch symbols and their names for this UOM type
@@ -947,10 +1407,16 @@ public final class PersistenceService {
 					"SELECT uom.symbol, uom.name FROM UnitOfMeasure uom WHERE uom.unit IS NULL AND uom.unitType = :type");
 		}
 
-		Query query = getEntityManager().createNamedQuery(UOM_SYMBOLS);
-		query.setParameter("type", unitType);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(UOM_SYMBOLS);
+			query.setParameter("type", unitType);
 
-		return (List<String[]>) query.getResultList();
+			return (List<String[]>) query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	// fetch all defined categories
@@ -962,8 +1428,14 @@ public final class PersistenceService {
 					"SELECT DISTINCT uom.category FROM UnitOfMeasure uom WHERE uom.category IS NOT NULL");
 		}
 
-		TypedQuery<String> query = getEntityManager().createNamedQuery(UOM_CATEGORIES, String.class);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<String> query = em.createNamedQuery(UOM_CATEGORIES, String.class);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	// query for UOM based on its unique symbol
@@ -974,20 +1446,27 @@ public final class PersistenceService {
 			createNamedQuery(UOM_BY_SYMBOL, "SELECT uom FROM UnitOfMeasure uom WHERE uom.symbol = :symbol");
 		}
 
-		TypedQuery<UnitOfMeasure> query = getEntityManager().createNamedQuery(UOM_BY_SYMBOL, UnitOfMeasure.class);
-		query.setParameter("symbol", symbol);
+		EntityManager em = getReadOnlyEntityManager();
 
-		List<UnitOfMeasure> uoms = query.getResultList();
+		try {
+			TypedQuery<UnitOfMeasure> query = em.createNamedQuery(UOM_BY_SYMBOL, UnitOfMeasure.class);
+			setCacheable(query);
+			query.setParameter("symbol", symbol);
 
-		UnitOfMeasure uom = null;
+			List<UnitOfMeasure> uoms = query.getResultList();
 
-		if (uoms.size() == 1) {
-			uom = uoms.get(0);
+			UnitOfMeasure uom = null;
 
-			// also cache it
-			MeasurementSystem.instance().registerUnit(uom);
+			if (uoms.size() == 1) {
+				uom = uoms.get(0);
+
+				// also cache it
+				MeasurementSystem.instance().registerUnit(uom);
+			}
+			return uom;
+		} finally {
+			em.close();
 		}
-		return uom;
 	}
 
 	public List<UnitOfMeasure> fetchUomsByCategory(String category) throws Exception {
@@ -997,16 +1476,23 @@ public final class PersistenceService {
 			createNamedQuery(UOM_BY_CATEGORY, "SELECT uom FROM UnitOfMeasure uom WHERE uom.category = :category");
 		}
 
-		TypedQuery<UnitOfMeasure> query = getEntityManager().createNamedQuery(UOM_BY_CATEGORY, UnitOfMeasure.class);
-		query.setParameter("category", category);
-		List<UnitOfMeasure> uoms = query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
 
-		// cache them
-		for (UnitOfMeasure uom : uoms) {
-			MeasurementSystem.instance().registerUnit(uom);
-		}
+		try {
+			TypedQuery<UnitOfMeasure> query = em.createNamedQuery(UOM_BY_CATEGORY, UnitOfMeasure.class);
+			setCacheable(query);
+			query.setParameter("category", category);
+			List<UnitOfMeasure> uoms = query.getResultList();
+
+			// cache them
+			for (UnitOfMeasure uom : uoms) {
+				MeasurementSystem.instance().registerUnit(uom);
+			}
 
-		return uoms;
+			return uoms;
+		} finally {
+			em.close();
+		}
 	}
 
 	// fetch UOM by its enumeration
@@ -1020,25 +1506,32 @@ public final class PersistenceService {
 		UnitOfMeasure uom = null;
 
 		// fetch by Unit enum
-		TypedQuery<UnitOfMeasure> query = getEntityManager().createNamedQuery(UOM_BY_UNIT, UnitOfMeasure.class);
-		query.setParameter("unit", unit);
+		EntityManager em = getReadOnlyEntityManager();
 
-		List<UnitOfMeasure> uoms = query.getResultList();
+		try {
+			TypedQuery<UnitOfMeasure> query = em.createNamedQuery(UOM_BY_UNIT, UnitOfMeasure.class);
+			setCacheable(query);
+			query.setParameter("unit", unit);
 
-		if (uoms.size() == 1) {
-			uom = uoms.get(0);
+			List<UnitOfMeasure> uoms = query.getResultList();
 
-			// also cache it
-			MeasurementSystem.instance().registerUnit(uom);
-		} else {
-			// not in db, get from pre-defined units
-			uom = MeasurementSystem.instance().getUOM(unit);
-		}
+			if (uoms.size() == 1) {
+				uom = uoms.get(0);
+
+				// also cache it
+				MeasurementSystem.instance().registerUnit(uom);
+			} else {
+				// not in db, get from pre-defined units
+				uom = MeasurementSystem.instance().getUOM(unit);
+			}
 
-		// fetch units that it references
-		fetchReferencedUnits(uom);
+			// fetch units that it references
+			fetchReferencedUnits(uom);
 
-		return uom;
+			return uom;
+		} finally {
+			em.close();
+		}
 	}
 
 	// fetch recursively all referenced units to make them managed in the
@@ -1149,10 +1642,16 @@ public final class PersistenceService {
 					"SELECT eqm FROM EquipmentMaterial eqm WHERE runRateUOM = :uom OR rejectUOM = :uom");
 		}
 
-		TypedQuery<EquipmentMaterial> query = getEntityManager().createNamedQuery(EQM_UOM_XREF,
-				EquipmentMaterial.class);
-		query.setParameter("uom", uom);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<EquipmentMaterial> query = em.createNamedQuery(EQM_UOM_XREF,
+					EquipmentMaterial.class);
+			query.setParameter("uom", uom);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<EquipmentMaterial> fetchEquipmentMaterials(Material material) throws Exception {
@@ -1162,10 +1661,16 @@ public final class PersistenceService {
 			createNamedQuery(EQM_MAT_XREF, "SELECT eqm FROM EquipmentMaterial eqm WHERE material = :material");
 		}
 
-		TypedQuery<EquipmentMaterial> query = getEntityManager().createNamedQuery(EQM_MAT_XREF,
-				EquipmentMaterial.class);
-		query.setParameter("material", material);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<EquipmentMaterial> query = em.createNamedQuery(EQM_MAT_XREF,
+					EquipmentMaterial.class);
+			query.setParameter("material", material);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public long fetchEventCount(Material material) throws Exception {
@@ -1175,9 +1680,15 @@ public final class PersistenceService {
 			createNamedQuery(EVENT_MAT_XREF, "SELECT COUNT(event) FROM OeeEvent event WHERE material = :material");
 		}
 
-		Query query = getEntityManager().createNamedQuery(EVENT_MAT_XREF);
-		query.setParameter("material", material);
-		return (long) query.getSingleResult();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(EVENT_MAT_XREF);
+			query.setParameter("material", material);
+			return (long) query.getSingleResult();
+		} finally {
+			em.close();
+		}
 	}
 
 	public long fetchEventCount(Equipment equipment) throws Exception {
@@ -1187,9 +1698,15 @@ public final class PersistenceService {
 			createNamedQuery(EVENT_EQ_XREF, "SELECT COUNT(event) FROM OeeEvent event WHERE equipment = :equipment");
 		}
 
-		Query query = getEntityManager().createNamedQuery(EVENT_EQ_XREF);
-		query.setParameter("equipment", equipment);
-		return (long) query.getSingleResult();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(EVENT_EQ_XREF);
+			query.setParameter("equipment", equipment);
+			return (long) query.getSingleResult();
+		} finally {
+			em.close();
+		}
 	}
 
 	public long fetchEventCount(UnitOfMeasure uom) throws Exception {
@@ -1199,9 +1716,15 @@ public final class PersistenceService {
 			createNamedQuery(EVENT_UOM_XREF, "SELECT COUNT(event) FROM OeeEvent event WHERE uom = :uom");
 		}
 
-		Query query = getEntityManager().createNamedQuery(EVENT_UOM_XREF);
-		query.setParameter("uom", uom);
-		return (long) query.getSingleResult();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(EVENT_UOM_XREF);
+			query.setParameter("uom", uom);
+			return (long) query.getSingleResult();
+		} finally {
+			em.close();
+		}
 	}
 
 	public long fetchEventCount(Reason reason) throws Exception {
@@ -1211,9 +1734,15 @@ public final class PersistenceService {
 			createNamedQuery(EVENT_REASON_XREF, "SELECT COUNT(event) FROM OeeEvent event WHERE reason = :reason");
 		}
 
-		Query query = getEntityManager().createNamedQuery(EVENT_REASON_XREF);
-		query.setParameter("reason", reason);
-		return (long) query.getSingleResult();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(EVENT_REASON_XREF);
+			query.setParameter("reason", reason);
+			return (long) query.getSingleResult();
+		} finally {
+			em.close();
+		}
 	}
 
 	public long fetchEventCount(Shift shift) throws Exception {
@@ -1223,9 +1752,15 @@ public final class PersistenceService {
 			createNamedQuery(EVENT_SHIFT_XREF, "SELECT COUNT(event) FROM OeeEvent event WHERE shift = :shift");
 		}
 
-		Query query = getEntityManager().createNamedQuery(EVENT_SHIFT_XREF);
-		query.setParameter("shift", shift);
-		return (long) query.getSingleResult();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(EVENT_SHIFT_XREF);
+			query.setParameter("shift", shift);
+			return (long) query.getSingleResult();
+		} finally {
+			em.close();
+		}
 	}
 
 	public long fetchEventCount(Team team) throws Exception {
@@ -1235,9 +1770,15 @@ public final class PersistenceService {
 			createNamedQuery(EVENT_TEAM_XREF, "SELECT COUNT(event) FROM OeeEvent event WHERE team = :team");
 		}
 
-		Query query = getEntityManager().createNamedQuery(EVENT_TEAM_XREF);
-		query.setParameter("team", team);
-		return (long) query.getSingleResult();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			Query query = em.createNamedQuery(EVENT_TEAM_XREF);
+			query.setParameter("team", team);
+			return (long) query.getSingleResult();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<UnitOfMeasure> fetchUomCrossReferences(UnitOfMeasure uom) throws Exception {
@@ -1248,9 +1789,15 @@ public final class PersistenceService {
 					"SELECT uom FROM UnitOfMeasure uom WHERE uom1 = :uom OR uom2 = :uom OR abscissaUnit = :uom OR bridgeAbscissaUnit = :uom");
 		}
 
-		TypedQuery<UnitOfMeasure> query = getEntityManager().createNamedQuery(UOM_XREF, UnitOfMeasure.class);
-		query.setParameter("uom", uom);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<UnitOfMeasure> query = em.createNamedQuery(UOM_XREF, UnitOfMeasure.class);
+			query.setParameter("uom", uom);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public DataCollector fetchCollectorByName(String name) {
@@ -1262,15 +1809,22 @@ public final class PersistenceService {
 		}
 
 		DataCollector collector = null;
-		TypedQuery<DataCollector> query = getEntityManager().createNamedQuery(COLLECT_BY_NAME, DataCollector.class);
-		query.setParameter("name", name);
+		EntityManager em = getReadOnlyEntityManager();
 
-		List<DataCollector> collectors = query.getResultList();
+		try {
+			TypedQuery<DataCollector> query = em.createNamedQuery(COLLECT_BY_NAME, DataCollector.class);
+			setCacheable(query);
+			query.setParameter("name", name);
+
+			List<DataCollector> collectors = query.getResultList();
 
-		if (collectors.size() == 1) {
-			collector = collectors.get(0);
+			if (collectors.size() == 1) {
+				collector = collectors.get(0);
+			}
+			return collector;
+		} finally {
+			em.close();
 		}
-		return collector;
 	}
 
 	public List<EventResolver> fetchResolverCrossReferences(CollectorDataSource source) {
@@ -1281,9 +1835,15 @@ public final class PersistenceService {
 					"SELECT resolver FROM EventResolver resolver WHERE resolver.dataSource = :source");
 		}
 
-		TypedQuery<EventResolver> query = getEntityManager().createNamedQuery(COLLECT_RES_XREF, EventResolver.class);
-		query.setParameter("source", source);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<EventResolver> query = em.createNamedQuery(COLLECT_RES_XREF, EventResolver.class);
+			query.setParameter("source", source);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	public List<EventResolver> fetchResolverCrossReferences(DataCollector collector) {
@@ -1294,9 +1854,15 @@ public final class PersistenceService {
 					"SELECT resolver FROM EventResolver resolver WHERE resolver.collector = :collector");
 		}
 
-		TypedQuery<EventResolver> query = getEntityManager().createNamedQuery(COLLECT_RES_XREF, EventResolver.class);
-		query.setParameter("collector", collector);
-		return query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<EventResolver> query = em.createNamedQuery(COLLECT_RES_XREF, EventResolver.class);
+			query.setParameter("collector", collector);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	private void createContainerManagedEntityManagerFactory(String jdbcUrl, String userName, String password)
@@ -1324,6 +1890,10 @@ public final class PersistenceService {
 		// create the EntityManagerFactory
 		emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(persistenceUnitInfo,
 				configuration);
+
+		if (pooledIds && getLogger().isInfoEnabled()) {
+			getLogger().info("Primary keys are allocated from sequence " + PooledIdMigration.SEQUENCE_NAME);
+		}
 	}
 
 	public void connectToDatabaseEventServer(String jdbcUrl, String userName, String password) throws Exception {
@@ -1331,12 +1901,7 @@ public final class PersistenceService {
 		PersistenceUnitInfo persistenceUnitInfo = new PersistenceUnitInfoImpl(DB_PU_NAME,
 				getDatabaseEventEntityClassNames(), createProperties(jdbcUrl, userName, password));
 
-		// add any mapping files
-		String[] fileNames = getMappingFileNames();
-		if (fileNames != null) {
-			persistenceUnitInfo.getMappingFileNames().addAll(Arrays.asList(fileNames));
-		}
-
+		// the interface table is also written by other systems, keep its IDENTITY keys
 		// PU configuration map
 		Map<String, Object> configuration = new HashMap<>();
 
@@ -1349,6 +1914,8 @@ public final class PersistenceService {
 		// create the EntityManagerFactory
 		emf = new HibernatePersistenceProvider().createContainerEntityManagerFactory(persistenceUnitInfo,
 				configuration);
+
+		checkIndexes();
 	}
 
 	public boolean isConnected() {
@@ -1356,7 +1923,9 @@ public final class PersistenceService {
 	}
 
 	private String[] getMappingFileNames() {
-		// placeholder for mapping files
+		if (pooledIds) {
+			return new String[] { POOLED_ID_MAPPING };
+		}
 		return null;
 	}
 
@@ -1367,7 +1936,7 @@ public final class PersistenceService {
 				EquipmentMaterial.class, Material.class, PlantEntity.class, ProductionLine.class, Reason.class,
 				Site.class, WorkCell.class, EventResolver.class, UnitOfMeasure.class, ExceptionPeriod.class,
 				Rotation.class, RotationSegment.class, Shift.class, Team.class, WorkSchedule.class, ModbusSource.class,
-				EntitySchedule.class };
+				EntitySchedule.class, OeeRollup.class };
 	}
 
 	private Class<?>[] getDatabaseEventEntityClasses() {
@@ -1383,8 +1952,6 @@ public final class PersistenceService {
 	}
 
 	private Properties createProperties(String jdbcUrl, String userName, String password) throws Exception {
-		DatabaseType databaseType = null;
-
 		if (jdbcUrl.contains("sqlserver")) {
 			databaseType = DatabaseType.MSSQL;
 		} else if (jdbcUrl.contains("oracle")) {
@@ -1413,6 +1980,9 @@ public final class PersistenceService {
 		} else if (databaseType.equals(DatabaseType.MYSQL)) {
 			properties.put("hibernate.dialect", "org.hibernate.dialect.MySQL8Dialect");
 			properties.put("javax.persistence.jdbc.driver", "com.mysql.cj.jdbc.Driver");
+
+			// statements with a fetch size read through a server cursor
+			properties.put("hibernate.hikari.dataSource.useCursorFetch", "true");
 		} else if (databaseType.equals(DatabaseType.POSTGRES)) {
 			properties.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQL95Dialect");
 			properties.put("javax.persistence.jdbc.driver", "org.postgresql.Driver");
@@ -1432,6 +2002,29 @@ public final class PersistenceService {
 		// multiple representations of the same entity are being merged
 		properties.put("hibernate.event.merge.entity_copy_observer", "allow");
 
+		// batch the statements of a flush, inserts only with pooled keys
+		properties.put("hibernate.jdbc.batch_size", JDBC_BATCH_SIZE);
+		properties.put("hibernate.order_inserts", "true");
+		properties.put("hibernate.order_updates", "true");
+		properties.put("hibernate.jdbc.batch_versioned_data", "true");
+
+		if (pooledIds) {
+			// keys assigned before saving are kept
+			properties.put("hibernate.ejb.identifier_generator_strategy_provider",
+					new PooledIdGenerator.StrategyProvider());
+		}
+
+		if (secondLevelCache) {
+			// JCache regions provided by Ehcache, only for @Cacheable entities
+			properties.put("hibernate.cache.use_second_level_cache", "true");
+			properties.put("hibernate.cache.use_query_cache", "true");
+			properties.put("hibernate.cache.region.factory_class", "jcache");
+			properties.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+			properties.put("hibernate.javax.cache.uri", CACHE_CONFIG);
+			properties.put("hibernate.cache.missing_cache_strategy", "create");
+			properties.put("javax.persistence.sharedCache.mode", SharedCacheMode.ENABLE_SELECTIVE.name());
+		}
+
 		// Hikari connection pool
 		properties.put("hibernate.hikari.minimumIdle", "1");
 		properties.put("hibernate.hikari.maximumPoolSize", "20");
@@ -1447,33 +2040,99 @@ public final class PersistenceService {
 	}
 
 	public List<OeeEvent> fetchAvailability(Equipment equipment, OffsetDateTime from, OffsetDateTime to) {
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return createAvailabilityQuery(em, equipment, from, to).getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Stream the availability events for the equipment in start time order
+	 * through a database cursor. The stream holds a connection until it is
+	 * closed, for example by a try-with-resources statement.
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return Stream of {@link OeeEvent}
+	 */
+	public Stream<OeeEvent> streamAvailability(Equipment equipment, OffsetDateTime from, OffsetDateTime to) {
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return stream(em, createAvailabilityQuery(em, equipment, from, to));
+		} catch (RuntimeException e) {
+			em.close();
+			throw e;
+		}
+	}
+
+	private TypedQuery<OeeEvent> createAvailabilityQuery(EntityManager em, Equipment equipment, OffsetDateTime from,
+			OffsetDateTime to) {
 		final String AVAIL_RECORDS = "Availability.FromTo";
 
 		if (namedQueryMap.get(AVAIL_RECORDS) == null) {
 			createNamedQuery(AVAIL_RECORDS,
-					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type "
+					EVENT_FETCH_SELECT + "WHERE e.equipment = :equipment AND e.eventType = :type "
 							+ "AND (e.startTime.localDateTime >= :from AND e.startTime.localDateTime < :to) ORDER BY e.startTime.localDateTime ASC");
 		}
 
-		TypedQuery<OeeEvent> query = getEntityManager().createNamedQuery(AVAIL_RECORDS, OeeEvent.class);
+		TypedQuery<OeeEvent> query = em.createNamedQuery(AVAIL_RECORDS, OeeEvent.class);
 		query.setParameter("type", OeeEventType.AVAILABILITY);
 		query.setParameter("equipment", equipment);
 		query.setParameter("from", from.toLocalDateTime());
 		query.setParameter("to", to.toLocalDateTime());
 
-		return query.getResultList();
+		return query;
 	}
 
 	public List<OeeEvent> fetchProduction(Equipment equipment, Material material, OffsetDateTime from,
 			OffsetDateTime to) {
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return createProductionQuery(em, equipment, material, from, to).getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Stream the production events of the material for the equipment in start
+	 * time order through a database cursor. The stream holds a connection until
+	 * it is closed.
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param material  {@link Material}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return Stream of {@link OeeEvent}
+	 */
+	public Stream<OeeEvent> streamProduction(Equipment equipment, Material material, OffsetDateTime from,
+			OffsetDateTime to) {
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return stream(em, createProductionQuery(em, equipment, material, from, to));
+		} catch (RuntimeException e) {
+			em.close();
+			throw e;
+		}
+	}
+
+	private TypedQuery<OeeEvent> createProductionQuery(EntityManager em, Equipment equipment, Material material,
+			OffsetDateTime from, OffsetDateTime to) {
 		final String PROD_RECORDS = "Production.FromTo";
 
 		if (namedQueryMap.get(PROD_RECORDS) == null) {
-			createNamedQuery(PROD_RECORDS, "SELECT e FROM OeeEvent e WHERE e.equipment = :equipment "
+			createNamedQuery(PROD_RECORDS, EVENT_FETCH_SELECT + "WHERE e.equipment = :equipment "
 					+ "AND e.eventType IN :types AND (e.startTime.localDateTime >= :from AND e.startTime.localDateTime < :to) AND e.material = :material ORDER BY e.startTime.localDateTime ASC");
 		}
 
-		TypedQuery<OeeEvent> query = getEntityManager().createNamedQuery(PROD_RECORDS, OeeEvent.class);
+		TypedQuery<OeeEvent> query = em.createNamedQuery(PROD_RECORDS, OeeEvent.class);
 
 		query.setParameter("types", OeeEventType.getProductionTypes());
 		query.setParameter("equipment", equipment);
@@ -1481,96 +2140,559 @@ public final class PersistenceService {
 		query.setParameter("from", from.toLocalDateTime());
 		query.setParameter("to", to.toLocalDateTime());
 
-		return query.getResultList();
+		return query;
 	}
 
-	public List<OeeEvent> fetchSetupsForPeriod(Equipment equipment, OffsetDateTime from, OffsetDateTime to) {
-		final String SETUP_PERIOD = "Setup.Period";
+	/**
+	 * Fetch the availability events for the equipment in start time order as
+	 * rows for a loss calculation
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return List of {@link OeeEventRow}
+	 */
+	public List<OeeEventRow> fetchAvailabilityRows(Equipment equipment, OffsetDateTime from, OffsetDateTime to) {
+		final String AVAIL_ROWS = "Availability.RowsFromTo";
 
-		if (namedQueryMap.get(SETUP_PERIOD) == null) {
-			createNamedQuery(SETUP_PERIOD,
-					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type "
-							+ "AND e.startTime.localDateTime  <= :to AND (e.endTime.localDateTime  >= :from OR e.endTime.localDateTime IS NULL)");
+		if (namedQueryMap.get(AVAIL_ROWS) == null) {
+			createNamedQuery(AVAIL_ROWS, EVENT_ROW_SELECT + "WHERE e.equipment = :equipment AND e.eventType = :type "
+					+ "AND (e.startTime.localDateTime >= :from AND e.startTime.localDateTime < :to) ORDER BY e.startTime.localDateTime ASC");
 		}
 
-		TypedQuery<OeeEvent> query = getEntityManager().createNamedQuery(SETUP_PERIOD, OeeEvent.class);
-		query.setParameter("type", OeeEventType.MATL_CHANGE);
-		query.setParameter("equipment", equipment);
-		query.setParameter("from", from.toLocalDateTime());
-		query.setParameter("to", to.toLocalDateTime());
+		EntityManager em = getReadOnlyEntityManager();
 
-		return query.getResultList();
+		try {
+			TypedQuery<OeeEventRow> query = em.createNamedQuery(AVAIL_ROWS, OeeEventRow.class);
+			query.setParameter("type", OeeEventType.AVAILABILITY);
+			query.setParameter("equipment", equipment);
+			query.setParameter("from", from.toLocalDateTime());
+			query.setParameter("to", to.toLocalDateTime());
+
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
-	public List<OeeEvent> fetchSetupsForPeriodAndMaterial(Equipment equipment, OffsetDateTime from, OffsetDateTime to,
-			Material material) {
-		final String SETUP_PERIOD_MATL = "Setup.Period.Material";
+	/**
+	 * Fetch the production events of the material for the equipment in start
+	 * time order as rows for a loss calculation
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param material  {@link Material}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return List of {@link OeeEventRow}
+	 */
+	public List<OeeEventRow> fetchProductionRows(Equipment equipment, Material material, OffsetDateTime from,
+			OffsetDateTime to) {
+		final String PROD_ROWS = "Production.RowsFromTo";
 
-		if (namedQueryMap.get(SETUP_PERIOD_MATL) == null) {
-			createNamedQuery(SETUP_PERIOD_MATL,
-					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type "
-							+ "AND e.startTime.localDateTime  <= :to AND (e.endTime.localDateTime  >= :from OR e.endTime.localDateTime IS NULL) AND e.material = :matl");
+		if (namedQueryMap.get(PROD_ROWS) == null) {
+			createNamedQuery(PROD_ROWS, EVENT_ROW_SELECT + "WHERE e.equipment = :equipment "
+					+ "AND e.eventType IN :types AND (e.startTime.localDateTime >= :from AND e.startTime.localDateTime < :to) AND e.material = :material ORDER BY e.startTime.localDateTime ASC");
 		}
 
-		TypedQuery<OeeEvent> query = getEntityManager().createNamedQuery(SETUP_PERIOD_MATL, OeeEvent.class);
-		query.setParameter("type", OeeEventType.MATL_CHANGE);
-		query.setParameter("equipment", equipment);
-		query.setParameter("from", from.toLocalDateTime());
-		query.setParameter("to", to.toLocalDateTime());
-		query.setParameter("matl", material);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OeeEventRow> query = em.createNamedQuery(PROD_ROWS, OeeEventRow.class);
+			query.setParameter("types", OeeEventType.getProductionTypes());
+			query.setParameter("equipment", equipment);
+			query.setParameter("material", material);
+			query.setParameter("from", from.toLocalDateTime());
+			query.setParameter("to", to.toLocalDateTime());
 
-		return query.getResultList();
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
-	public OeeEvent fetchLastBoundEvent(Equipment equipment, OeeEventType type, OffsetDateTime dateTime) {
-		final String LAST_EVENT = "Event.Last.Bound";
+	/**
+	 * Fetch the closed availability events for the equipment that overlap the
+	 * time period, as rows for a loss calculation
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return List of {@link OeeEventRow}
+	 */
+	public List<OeeEventRow> fetchAvailabilityRowsOverlapping(Equipment equipment, OffsetDateTime from,
+			OffsetDateTime to) {
+		final String AVAIL_OVERLAP_ROWS = "Availability.RowsOverlapping";
 
-		if (namedQueryMap.get(LAST_EVENT) == null) {
-			createNamedQuery(LAST_EVENT,
-					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type "
-							+ "AND e.startTime.localDateTime <= :dateTime ORDER BY e.startTime.localDateTime DESC");
+		if (namedQueryMap.get(AVAIL_OVERLAP_ROWS) == null) {
+			createNamedQuery(AVAIL_OVERLAP_ROWS, EVENT_ROW_SELECT
+					+ "WHERE e.equipment = :equipment AND e.eventType = :type AND e.startTime.localDateTime < :to "
+					+ "AND e.endTime.localDateTime > :from AND e.duration IS NOT NULL ORDER BY e.startTime.localDateTime ASC");
 		}
 
-		TypedQuery<OeeEvent> query = getEntityManager().createNamedQuery(LAST_EVENT, OeeEvent.class);
-		query.setParameter("equipment", equipment);
-		query.setParameter("type", type);
-		query.setParameter("dateTime", dateTime.toLocalDateTime());
-		query.setMaxResults(1);
-		List<OeeEvent> records = query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
 
-		OeeEvent record = null;
-		if (records.size() == 1) {
-			record = records.get(0);
-		}
+		try {
+			TypedQuery<OeeEventRow> query = em.createNamedQuery(AVAIL_OVERLAP_ROWS, OeeEventRow.class);
+			query.setParameter("type", OeeEventType.AVAILABILITY);
+			query.setParameter("equipment", equipment);
+			query.setParameter("from", from.toLocalDateTime());
+			query.setParameter("to", to.toLocalDateTime());
 
-		return record;
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
-	public OeeEvent fetchLastEvent(Equipment equipment, OeeEventType type) {
-		final String LAST_EVENT = "Event.Last";
+	/**
+	 * Fetch the closed availability events for the equipment that overlap the
+	 * time period and the production events of the material that start in it,
+	 * as one series of rows in start time order
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param material  {@link Material}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return List of {@link OeeEventRow}
+	 */
+	public List<OeeEventRow> fetchTrendRows(Equipment equipment, Material material, OffsetDateTime from,
+			OffsetDateTime to) {
+		final String TREND_ROWS = "Trend.RowsFromTo";
 
-		if (namedQueryMap.get(LAST_EVENT) == null) {
-			createNamedQuery(LAST_EVENT,
-					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type ORDER BY e.startTime.localDateTime DESC");
+		if (namedQueryMap.get(TREND_ROWS) == null) {
+			createNamedQuery(TREND_ROWS, EVENT_ROW_SELECT + "WHERE e.equipment = :equipment AND ((e.eventType = :type "
+					+ "AND e.startTime.localDateTime < :to AND e.endTime.localDateTime > :from AND e.duration IS NOT NULL) "
+					+ "OR (e.eventType IN :types AND e.material = :material AND e.startTime.localDateTime >= :from "
+					+ "AND e.startTime.localDateTime < :to)) ORDER BY e.startTime.localDateTime ASC");
 		}
 
-		TypedQuery<OeeEvent> query = getEntityManager().createNamedQuery(LAST_EVENT, OeeEvent.class);
-		query.setParameter("equipment", equipment);
-		query.setParameter("type", type);
-		query.setMaxResults(1);
-		List<OeeEvent> records = query.getResultList();
+		EntityManager em = getReadOnlyEntityManager();
 
-		OeeEvent record = null;
-		if (records.size() == 1) {
-			record = records.get(0);
-		}
+		try {
+			TypedQuery<OeeEventRow> query = em.createNamedQuery(TREND_ROWS, OeeEventRow.class);
+			query.setParameter("type", OeeEventType.AVAILABILITY);
+			query.setParameter("types", OeeEventType.getProductionTypes());
+			query.setParameter("equipment", equipment);
+			query.setParameter("material", material);
+			query.setParameter("from", from.toLocalDateTime());
+			query.setParameter("to", to.toLocalDateTime());
 
-		return record;
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
-	public int purge(Equipment equipment, OffsetDateTime cutoff) throws Exception {
-		EntityManager em = getEntityManager();
-
+	/**
+	 * Fetch the closed availability events of the equipment that overlap the
+	 * time period and their production events that start in it, as rows with
+	 * the attributes to group losses by. The rows are not in time order.
+	 * 
+	 * @param equipment List of {@link Equipment}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return List of {@link OeeEventRow}
+	 */
+	public List<OeeEventRow> fetchGroupingRows(List<Equipment> equipment, OffsetDateTime from, OffsetDateTime to) {
+		final String GROUPING_ROWS = "Grouping.RowsFromTo";
+
+		if (namedQueryMap.get(GROUPING_ROWS) == null) {
+			createNamedQuery(GROUPING_ROWS, "SELECT NEW org.point85.domain.collector.OeeEventRow(e.eventType, "
+					+ "e.startTime.localDateTime, e.startTime.utcOffset, e.endTime.localDateTime, e.endTime.utcOffset, "
+					+ "e.duration, e.amount, r.primaryKey, r.timeLoss, u.primaryKey, e.sourceId, eq.primaryKey, "
+					+ "m.primaryKey, s.name, t.name, e.job) FROM OeeEvent e JOIN e.equipment eq LEFT JOIN e.reason r "
+					+ "LEFT JOIN e.uom u LEFT JOIN e.material m LEFT JOIN e.shift s LEFT JOIN e.team t "
+					+ "WHERE e.equipment IN :equipment AND ((e.eventType = :type AND e.startTime.localDateTime < :to "
+					+ "AND e.endTime.localDateTime > :from AND e.duration IS NOT NULL) OR (e.eventType IN :types "
+					+ "AND e.startTime.localDateTime >= :from AND e.startTime.localDateTime < :to))");
+		}
+
+		List<OeeEventRow> rows = new ArrayList<>();
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			// IN lists are limited to 1000 values in Oracle
+			for (int i = 0; i < equipment.size(); i += MAX_IN_LIST) {
+				TypedQuery<OeeEventRow> query = em.createNamedQuery(GROUPING_ROWS, OeeEventRow.class);
+				query.setParameter("type", OeeEventType.AVAILABILITY);
+				query.setParameter("types", OeeEventType.getProductionTypes());
+				query.setParameter("equipment", equipment.subList(i, Math.min(i + MAX_IN_LIST, equipment.size())));
+				query.setParameter("from", from.toLocalDateTime());
+				query.setParameter("to", to.toLocalDateTime());
+
+				rows.addAll(query.getResultList());
+			}
+			return rows;
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Fetch the rollups of the equipment starting in the time period
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param bucket    {@link RollupBucket}
+	 * @param from      Starting date and time
+	 * @param to        Ending date and time
+	 * @return List of {@link OeeRollup} in start time order
+	 */
+	public List<OeeRollup> fetchRollups(Equipment equipment, RollupBucket bucket, OffsetDateTime from,
+			OffsetDateTime to) {
+		final String ROLLUP_FROM_TO = "Rollup.FromTo";
+
+		if (namedQueryMap.get(ROLLUP_FROM_TO) == null) {
+			createNamedQuery(ROLLUP_FROM_TO,
+					"SELECT r FROM OeeRollup r WHERE r.equipment = :equipment AND r.bucket = :bucket "
+							+ "AND r.startTime.localDateTime >= :from AND r.startTime.localDateTime < :to ORDER BY r.startTime.localDateTime ASC");
+		}
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OeeRollup> query = em.createNamedQuery(ROLLUP_FROM_TO, OeeRollup.class);
+			query.setParameter("equipment", equipment);
+			query.setParameter("bucket", bucket);
+			query.setParameter("from", from.toLocalDateTime());
+			query.setParameter("to", to.toLocalDateTime());
+
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Add the losses and amounts of each rollup to the stored rollup for the
+	 * same equipment, material, bucket and start time, or insert it if there is
+	 * none yet. Increments are applied by the database, so concurrent updates of
+	 * the same rollup are not lost.
+	 * 
+	 * @param rollups List of {@link OeeRollup} increments
+	 * @throws Exception Exception
+	 */
+	public void saveRollups(List<OeeRollup> rollups) throws Exception {
+		EntityManager em = getEntityManager();
+
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			for (OeeRollup rollup : rollups) {
+				if (createRollupIncrement(em, rollup).executeUpdate() == 0) {
+					em.persist(rollup);
+				}
+			}
+
+			// commit transaction
+			txn.commit();
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
+	}
+
+	private Query createRollupIncrement(EntityManager em, OeeRollup rollup) {
+		String qry = "UPDATE OeeRollup r SET r.notScheduled = r.notScheduled + :notScheduled, "
+				+ "r.unscheduled = r.unscheduled + :unscheduled, r.plannedDowntime = r.plannedDowntime + :plannedDowntime, "
+				+ "r.setup = r.setup + :setup, r.unplannedDowntime = r.unplannedDowntime + :unplannedDowntime, "
+				+ "r.minorStoppages = r.minorStoppages + :minorStoppages, r.goodAmount = r.goodAmount + :good, "
+				+ "r.rejectAmount = r.rejectAmount + :reject, r.startupAmount = r.startupAmount + :startup "
+				+ "WHERE r.equipment = :equipment AND r.bucket = :bucket AND r.startTime.localDateTime = :start ";
+
+		qry += rollup.getMaterial() != null ? "AND r.material = :material " : "AND r.material IS NULL ";
+		qry += rollup.getShift() != null ? "AND r.shift = :shift" : "AND r.shift IS NULL";
+
+		Query query = em.createQuery(qry);
+		query.setParameter("notScheduled", rollup.getLoss(TimeLoss.NOT_SCHEDULED).toNanos());
+		query.setParameter("unscheduled", rollup.getLoss(TimeLoss.UNSCHEDULED).toNanos());
+		query.setParameter("plannedDowntime", rollup.getLoss(TimeLoss.PLANNED_DOWNTIME).toNanos());
+		query.setParameter("setup", rollup.getLoss(TimeLoss.SETUP).toNanos());
+		query.setParameter("unplannedDowntime", rollup.getLoss(TimeLoss.UNPLANNED_DOWNTIME).toNanos());
+		query.setParameter("minorStoppages", rollup.getLoss(TimeLoss.MINOR_STOPPAGES).toNanos());
+		query.setParameter("good", rollup.getGoodAmount());
+		query.setParameter("reject", rollup.getRejectAmount());
+		query.setParameter("startup", rollup.getStartupAmount());
+		query.setParameter("equipment", rollup.getEquipment());
+		query.setParameter("bucket", rollup.getBucket());
+		query.setParameter("start", rollup.getOffsetStartTime().getLocalDateTime());
+
+		if (rollup.getMaterial() != null) {
+			query.setParameter("material", rollup.getMaterial());
+		}
+
+		if (rollup.getShift() != null) {
+			query.setParameter("shift", rollup.getShift());
+		}
+		return query;
+	}
+
+	/**
+	 * Delete all rollups of the equipment
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @return Number of rollups deleted
+	 * @throws Exception Exception
+	 */
+	public int deleteRollups(Equipment equipment) throws Exception {
+		final String ROLLUP_DELETE = "Rollup.Delete";
+
+		if (namedQueryMap.get(ROLLUP_DELETE) == null) {
+			createNamedQuery(ROLLUP_DELETE, "DELETE FROM OeeRollup r WHERE r.equipment = :equipment");
+		}
+
+		EntityManager em = getEntityManager();
+
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			Query query = em.createNamedQuery(ROLLUP_DELETE);
+			query.setParameter("equipment", equipment);
+			int deletedCount = query.executeUpdate();
+
+			// commit transaction
+			txn.commit();
+
+			return deletedCount;
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
+	}
+
+	public List<OeeEvent> fetchSetupsForPeriod(Equipment equipment, OffsetDateTime from, OffsetDateTime to) {
+		final String SETUP_PERIOD = "Setup.Period";
+
+		if (namedQueryMap.get(SETUP_PERIOD) == null) {
+			createNamedQuery(SETUP_PERIOD,
+					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type "
+							+ "AND e.startTime.localDateTime  <= :to AND (e.endTime.localDateTime  >= :from OR e.endTime.localDateTime IS NULL)");
+		}
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OeeEvent> query = em.createNamedQuery(SETUP_PERIOD, OeeEvent.class);
+			query.setParameter("type", OeeEventType.MATL_CHANGE);
+			query.setParameter("equipment", equipment);
+			query.setParameter("from", from.toLocalDateTime());
+			query.setParameter("to", to.toLocalDateTime());
+
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	public List<OeeEvent> fetchSetupsForPeriodAndMaterial(Equipment equipment, OffsetDateTime from, OffsetDateTime to,
+			Material material) {
+		final String SETUP_PERIOD_MATL = "Setup.Period.Material";
+
+		if (namedQueryMap.get(SETUP_PERIOD_MATL) == null) {
+			createNamedQuery(SETUP_PERIOD_MATL,
+					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type "
+							+ "AND e.startTime.localDateTime  <= :to AND (e.endTime.localDateTime  >= :from OR e.endTime.localDateTime IS NULL) AND e.material = :matl");
+		}
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OeeEvent> query = em.createNamedQuery(SETUP_PERIOD_MATL, OeeEvent.class);
+			query.setParameter("type", OeeEventType.MATL_CHANGE);
+			query.setParameter("equipment", equipment);
+			query.setParameter("from", from.toLocalDateTime());
+			query.setParameter("to", to.toLocalDateTime());
+			query.setParameter("matl", material);
+
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	public OeeEvent fetchLastBoundEvent(Equipment equipment, OeeEventType type, OffsetDateTime dateTime) {
+		final String LAST_EVENT = "Event.Last.Bound";
+
+		if (namedQueryMap.get(LAST_EVENT) == null) {
+			createNamedQuery(LAST_EVENT,
+					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type "
+							+ "AND e.startTime.localDateTime <= :dateTime ORDER BY e.startTime.localDateTime DESC");
+		}
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OeeEvent> query = em.createNamedQuery(LAST_EVENT, OeeEvent.class);
+			query.setParameter("equipment", equipment);
+			query.setParameter("type", type);
+			query.setParameter("dateTime", dateTime.toLocalDateTime());
+			query.setMaxResults(1);
+			List<OeeEvent> records = query.getResultList();
+
+			OeeEvent record = null;
+			if (records.size() == 1) {
+				record = records.get(0);
+			}
+
+			return record;
+		} finally {
+			em.close();
+		}
+	}
+
+	public OeeEvent fetchLastEvent(Equipment equipment, OeeEventType type) {
+		final String LAST_EVENT = "Event.Last";
+
+		if (namedQueryMap.get(LAST_EVENT) == null) {
+			createNamedQuery(LAST_EVENT,
+					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type ORDER BY e.startTime.localDateTime DESC");
+		}
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OeeEvent> query = em.createNamedQuery(LAST_EVENT, OeeEvent.class);
+			query.setParameter("equipment", equipment);
+			query.setParameter("type", type);
+			query.setMaxResults(1);
+			List<OeeEvent> records = query.getResultList();
+
+			OeeEvent record = null;
+			if (records.size() == 1) {
+				record = records.get(0);
+			}
+
+			return record;
+		} finally {
+			em.close();
+		}
+	}
+
+	// the latest event of each type for each of the equipment
+	public List<OeeEvent> fetchLastEvents(List<Equipment> equipment, List<OeeEventType> types) {
+		final String LAST_EVENTS = "Event.LastAll";
+
+		if (namedQueryMap.get(LAST_EVENTS) == null) {
+			createNamedQuery(LAST_EVENTS,
+					"SELECT e FROM OeeEvent e WHERE e.equipment IN :equipment AND e.eventType IN :types AND e.startTime.localDateTime = (SELECT MAX(e2.startTime.localDateTime) FROM OeeEvent e2 WHERE e2.equipment = e.equipment AND e2.eventType = e.eventType)");
+		}
+
+		List<OeeEvent> events = new ArrayList<>();
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			// IN lists are limited to 1000 values in Oracle
+			for (int i = 0; i < equipment.size(); i += MAX_IN_LIST) {
+				TypedQuery<OeeEvent> query = em.createNamedQuery(LAST_EVENTS, OeeEvent.class);
+				query.setParameter("equipment", equipment.subList(i, Math.min(i + MAX_IN_LIST, equipment.size())));
+				query.setParameter("types", types);
+				events.addAll(query.getResultList());
+			}
+			return events;
+		} finally {
+			em.close();
+		}
+	}
+
+	// the latest event of each type for the equipment
+	public List<OeeEvent> fetchLastEvents(Equipment equipment, List<OeeEventType> types) {
+		final String LAST_EQUIPMENT_EVENTS = "Event.LastEquipment";
+
+		if (namedQueryMap.get(LAST_EQUIPMENT_EVENTS) == null) {
+			createNamedQuery(LAST_EQUIPMENT_EVENTS,
+					"SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType IN :types AND e.startTime.localDateTime = (SELECT MAX(e2.startTime.localDateTime) FROM OeeEvent e2 WHERE e2.equipment = e.equipment AND e2.eventType = e.eventType)");
+		}
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<OeeEvent> query = em.createNamedQuery(LAST_EQUIPMENT_EVENTS, OeeEvent.class);
+			query.setParameter("equipment", equipment);
+			query.setParameter("types", types);
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Delete the rollups that ended before the cutoff
+	 *
+	 * @param equipment {@link Equipment}, or null for all equipment
+	 * @param cutoff    Oldest event start time to keep
+	 * @return Number of rollups deleted
+	 * @throws Exception Exception
+	 */
+	public int purgeRollups(Equipment equipment, OffsetDateTime cutoff) throws Exception {
+		final String PURGE_ROLLUPS = "Rollup.Purge";
+		final String PURGE_ALL_ROLLUPS = "Rollup.PurgeAll";
+
+		if (namedQueryMap.get(PURGE_ROLLUPS) == null) {
+			createNamedQuery(PURGE_ROLLUPS,
+					"DELETE FROM OeeRollup r WHERE r.equipment = :equipment AND r.endTime.localDateTime <= :cutoff");
+		}
+
+		if (namedQueryMap.get(PURGE_ALL_ROLLUPS) == null) {
+			createNamedQuery(PURGE_ALL_ROLLUPS, "DELETE FROM OeeRollup r WHERE r.endTime.localDateTime <= :cutoff");
+		}
+
+		EntityManager em = getEntityManager();
+
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			Query query = null;
+
+			if (equipment != null) {
+				query = em.createNamedQuery(PURGE_ROLLUPS);
+				query.setParameter("equipment", equipment);
+			} else {
+				query = em.createNamedQuery(PURGE_ALL_ROLLUPS);
+			}
+			query.setParameter("cutoff", cutoff.toLocalDateTime());
+			int deletedCount = query.executeUpdate();
+
+			// commit transaction
+			txn.commit();
+
+			return deletedCount;
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
+	}
+
+	public int purge(Equipment equipment, OffsetDateTime cutoff) throws Exception {
+		EntityManager em = getEntityManager();
+
 		// preserve active setup records
 		final String PURGE_OEE = "Oee.Purge";
 
@@ -1623,6 +2745,100 @@ public final class PersistenceService {
 		}
 	}
 
+	/**
+	 * Delete at most the specified number of the equipment's events that
+	 * started before the cutoff. Material setups are only deleted once they
+	 * have ended before the cutoff.
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param cutoff    Oldest event start time to keep
+	 * @param maxRows   Maximum number of events to delete
+	 * @return Number of events deleted
+	 * @throws Exception Exception
+	 */
+	public int purge(Equipment equipment, OffsetDateTime cutoff, int maxRows) throws Exception {
+		final String PURGE_OEE_KEYS = "Oee.PurgeKeys";
+
+		if (namedQueryMap.get(PURGE_OEE_KEYS) == null) {
+			createNamedQuery(PURGE_OEE_KEYS,
+					"SELECT e.primaryKey FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType != :type AND e.startTime.localDateTime < :cutoff");
+		}
+
+		final String PURGE_MATL_KEYS = "Matl.PurgeKeys";
+
+		if (namedQueryMap.get(PURGE_MATL_KEYS) == null) {
+			createNamedQuery(PURGE_MATL_KEYS,
+					"SELECT e.primaryKey FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type AND e.endTime.localDateTime IS NOT NULL AND e.endTime.localDateTime < :cutoff");
+		}
+
+		List<Long> keys = new ArrayList<>();
+
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			// preserve active setup records
+			TypedQuery<Long> query = em.createNamedQuery(PURGE_OEE_KEYS, Long.class);
+			query.setParameter("equipment", equipment);
+			query.setParameter("cutoff", cutoff.toLocalDateTime());
+			query.setParameter("type", OeeEventType.MATL_CHANGE);
+			query.setMaxResults(maxRows);
+			keys.addAll(query.getResultList());
+
+			if (keys.size() < maxRows) {
+				// inactive setup records
+				query = em.createNamedQuery(PURGE_MATL_KEYS, Long.class);
+				query.setParameter("equipment", equipment);
+				query.setParameter("cutoff", cutoff.toLocalDateTime());
+				query.setParameter("type", OeeEventType.MATL_CHANGE);
+				query.setMaxResults(maxRows - keys.size());
+				keys.addAll(query.getResultList());
+			}
+		} finally {
+			em.close();
+		}
+
+		if (keys.isEmpty()) {
+			return 0;
+		}
+
+		final String PURGE_KEYS = "Oee.PurgeByKey";
+
+		if (namedQueryMap.get(PURGE_KEYS) == null) {
+			createNamedQuery(PURGE_KEYS, "DELETE FROM OeeEvent e WHERE e.primaryKey IN :keys");
+		}
+
+		em = getEntityManager();
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			int deletedCount = 0;
+
+			// IN lists are limited to 1000 values in Oracle
+			for (int i = 0; i < keys.size(); i += MAX_IN_LIST) {
+				Query purgeKeys = em.createNamedQuery(PURGE_KEYS);
+				purgeKeys.setParameter("keys", keys.subList(i, Math.min(i + MAX_IN_LIST, keys.size())));
+				deletedCount += purgeKeys.executeUpdate();
+			}
+
+			// commit transaction
+			txn.commit();
+
+			return deletedCount;
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
+	}
+
 	/**
 	 * Execute the SQL insert, update or delete
 	 * 
@@ -1657,17 +2873,56 @@ public final class PersistenceService {
 		}
 	}
 
+	/**
+	 * Execute the SQL statements in one transaction. DDL is only rolled back on
+	 * databases with transactional DDL.
+	 *
+	 * @param statements SQL statements in the order to execute
+	 */
+	public void executeUpdates(List<String> statements) {
+		EntityManager em = getEntityManager();
+
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			for (String sql : statements) {
+				em.createNativeQuery(sql).executeUpdate();
+			}
+
+			// commit transaction
+			txn.commit();
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
+	}
+
 	/**
 	 * Execute the SQL query
-	 * 
+	 *
 	 * @param sql SQL select statement
 	 * @return JSON string of result list
 	 */
 	@SuppressWarnings("unchecked")
 	public String executeQuery(String sql) {
-		List<Object[]> rowList = getEntityManager().createNativeQuery(sql).getResultList();
-		Gson gson = new Gson();
-		return gson.toJson(rowList);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			List<Object[]> rowList = em.createNativeQuery(sql).getResultList();
+			Gson gson = new Gson();
+			return gson.toJson(rowList);
+		} finally {
+			em.close();
+		}
 	}
 
 	/**
@@ -1684,10 +2939,16 @@ public final class PersistenceService {
 					"SELECT event FROM DatabaseEvent event WHERE status = :status ORDER BY event.eventTime.localDateTime ASC");
 		}
 
-		TypedQuery<DatabaseEvent> query = getEntityManager().createNamedQuery(NEW_EVENTS, DatabaseEvent.class);
-		query.setParameter("status", status);
+		EntityManager em = getReadOnlyEntityManager();
 
-		return query.getResultList();
+		try {
+			TypedQuery<DatabaseEvent> query = em.createNamedQuery(NEW_EVENTS, DatabaseEvent.class);
+			query.setParameter("status", status);
+
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
 	}
 
 	/**
@@ -1705,11 +2966,267 @@ public final class PersistenceService {
 					"SELECT event FROM DatabaseEvent event WHERE status = :status AND sourceId = :sourceId ORDER BY event.eventTime.localDateTime ASC");
 		}
 
-		TypedQuery<DatabaseEvent> query = getEntityManager().createNamedQuery(NEW_EVENTS_SOURCE, DatabaseEvent.class);
-		query.setParameter("status", status);
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			TypedQuery<DatabaseEvent> query = em.createNamedQuery(NEW_EVENTS_SOURCE, DatabaseEvent.class);
+			query.setParameter("status", status);
+			query.setParameter("sourceId", sourceId);
+
+			return query.getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Claim up to the maximum number of READY database interface table events
+	 * for the source id by moving them to PROCESSING. Rows claimed by another
+	 * collector are skipped rather than waited for, so that several collectors
+	 * can poll the same table. PostgreSQL and SQL Server claim in a single
+	 * statement, the other databases lock the rows then update them in the
+	 * same transaction. The claim time is recorded in UTC so that rows left in
+	 * PROCESSING can be reclaimed by {@link #reclaimDatabaseEvents}. It is not
+	 * mapped, so the CLAIM_TIME column is only needed when claiming.
+	 * 
+	 * @param sourceId event source identifier
+	 * @param maxRows  Maximum number of events to claim
+	 * @return List of claimed {@link DatabaseEvent} in event time order
+	 * @throws Exception Exception
+	 */
+	@SuppressWarnings("unchecked")
+	public List<DatabaseEvent> claimDatabaseEvents(String sourceId, int maxRows) throws Exception {
+		List<DatabaseEvent> claimed = null;
+		LocalDateTime claimTime = LocalDateTime.now(ZoneOffset.UTC);
+
+		EntityManager em = getEntityManager();
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			switch (databaseType) {
+			case POSTGRES:
+				claimed = em.createNativeQuery("UPDATE DB_EVENT SET STATUS = '" + DatabaseEventStatus.PROCESSING_VALUE
+						+ "', CLAIM_TIME = :claimTime WHERE EVENT_KEY IN (SELECT EVENT_KEY FROM DB_EVENT WHERE STATUS = '"
+						+ DatabaseEventStatus.READY_VALUE + "' AND SOURCE_ID = :sourceId ORDER BY EVENT_TIME LIMIT "
+						+ maxRows + " FOR UPDATE SKIP LOCKED) RETURNING *", DatabaseEvent.class)
+						.setParameter("claimTime", claimTime).setParameter("sourceId", sourceId).getResultList();
+				break;
+
+			case MSSQL:
+				claimed = em.createNativeQuery("WITH CLAIM AS (SELECT TOP (" + maxRows
+						+ ") * FROM DB_EVENT WITH (ROWLOCK, UPDLOCK, READPAST) WHERE STATUS = '"
+						+ DatabaseEventStatus.READY_VALUE
+						+ "' AND SOURCE_ID = :sourceId ORDER BY EVENT_TIME) UPDATE CLAIM SET STATUS = '"
+						+ DatabaseEventStatus.PROCESSING_VALUE + "', CLAIM_TIME = :claimTime OUTPUT inserted.*",
+						DatabaseEvent.class).setParameter("sourceId", sourceId).setParameter("claimTime", claimTime)
+						.getResultList();
+				break;
+
+			default:
+				claimed = lockDatabaseEvents(em, sourceId, maxRows);
+
+				if (!claimed.isEmpty()) {
+					List<Long> keys = new ArrayList<>();
+
+					for (DatabaseEvent event : claimed) {
+						keys.add(event.getKey());
+					}
+
+					// the rows are locked, only the status changes
+					em.clear();
+					markClaimed(em, keys, claimTime);
+
+					for (DatabaseEvent event : claimed) {
+						event.setStatus(DatabaseEventStatus.PROCESSING);
+					}
+				}
+				break;
+			}
+
+			// commit transaction
+			txn.commit();
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
+
+		// returned rows are not ordered
+		List<DatabaseEvent> events = new ArrayList<>(claimed);
+		events.sort(Comparator.comparing(DatabaseEvent::getEventTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparing(DatabaseEvent::getKey));
+
+		return events;
+	}
+
+	// lock the oldest READY rows of the source id
+	@SuppressWarnings("unchecked")
+	private List<DatabaseEvent> lockDatabaseEvents(EntityManager em, String sourceId, int maxRows) {
+		TypedQuery<DatabaseEvent> query = em.createQuery(
+				"SELECT event FROM DatabaseEvent event WHERE event.status = :status AND event.sourceId = :sourceId ORDER BY event.eventTime.localDateTime ASC",
+				DatabaseEvent.class);
+		query.setParameter("status", DatabaseEventStatus.READY);
 		query.setParameter("sourceId", sourceId);
 
-		return query.getResultList();
+		if (databaseType.equals(DatabaseType.HSQL)) {
+			// no row locks to skip
+			return query.setMaxResults(maxRows).getResultList();
+		}
+
+		query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+		query.setHint("javax.persistence.lock.timeout", LockOptions.SKIP_LOCKED);
+
+		if (databaseType.equals(DatabaseType.MYSQL)) {
+			return query.setMaxResults(maxRows).getResultList();
+		}
+
+		// Oracle cannot limit a locking query, skipped rows are locked as fetched
+		List<DatabaseEvent> events = new ArrayList<>();
+		org.hibernate.query.Query<DatabaseEvent> hibernateQuery = query.unwrap(org.hibernate.query.Query.class);
+		hibernateQuery.setFetchSize(maxRows);
+
+		try (ScrollableResults results = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY)) {
+			while (events.size() < maxRows && results.next()) {
+				events.add((DatabaseEvent) results.get(0));
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Save the final status of processed database interface table events.
+	 * Events that passed are updated together, failed events with their error.
+	 * 
+	 * @param events List of {@link DatabaseEvent}
+	 * @throws Exception Exception
+	 */
+	public void updateDatabaseEvents(List<DatabaseEvent> events) throws Exception {
+		final String FAIL_EVENT = "DATABASE_EVENT.FAIL";
+
+		if (namedQueryMap.get(FAIL_EVENT) == null) {
+			createNamedQuery(FAIL_EVENT,
+					"UPDATE DatabaseEvent event SET event.status = :status, event.error = :error WHERE event.primaryKey = :key");
+		}
+
+		List<Long> passed = new ArrayList<>();
+		List<DatabaseEvent> others = new ArrayList<>();
+
+		for (DatabaseEvent event : events) {
+			if (DatabaseEventStatus.PASS.equals(event.getStatus()) && event.getError() == null) {
+				passed.add(event.getKey());
+			} else {
+				others.add(event);
+			}
+		}
+
+		EntityManager em = getEntityManager();
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			updateDatabaseEventStatus(em, passed, DatabaseEventStatus.PASS);
+
+			for (DatabaseEvent event : others) {
+				Query query = em.createNamedQuery(FAIL_EVENT);
+				query.setParameter("status", event.getStatus());
+				query.setParameter("error", event.getError());
+				query.setParameter("key", event.getKey());
+				query.executeUpdate();
+			}
+
+			// commit transaction
+			txn.commit();
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
+	}
+
+	private void updateDatabaseEventStatus(EntityManager em, List<Long> keys, DatabaseEventStatus status) {
+		final String UPDATE_STATUS = "DATABASE_EVENT.STATUS";
+
+		if (namedQueryMap.get(UPDATE_STATUS) == null) {
+			createNamedQuery(UPDATE_STATUS,
+					"UPDATE DatabaseEvent event SET event.status = :status, event.error = NULL WHERE event.primaryKey IN :keys");
+		}
+
+		// IN lists are limited to 1000 values in Oracle
+		for (int i = 0; i < keys.size(); i += MAX_IN_LIST) {
+			Query query = em.createNamedQuery(UPDATE_STATUS);
+			query.setParameter("status", status);
+			query.setParameter("keys", keys.subList(i, Math.min(i + MAX_IN_LIST, keys.size())));
+			query.executeUpdate();
+		}
+	}
+
+	// move the locked rows to PROCESSING with their claim time
+	private void markClaimed(EntityManager em, List<Long> keys, LocalDateTime claimTime) {
+		for (int i = 0; i < keys.size(); i += MAX_IN_LIST) {
+			em.createNativeQuery("UPDATE DB_EVENT SET STATUS = '" + DatabaseEventStatus.PROCESSING_VALUE
+					+ "', CLAIM_TIME = :claimTime, ERROR = NULL WHERE EVENT_KEY IN (:keys)")
+					.setParameter("claimTime", claimTime)
+					.setParameter("keys", keys.subList(i, Math.min(i + MAX_IN_LIST, keys.size()))).executeUpdate();
+		}
+	}
+
+	/**
+	 * Move the database interface table events of the source id that have been
+	 * in PROCESSING for longer than the timeout back to READY, so that they are
+	 * claimed again. Their collector stopped before saving a final status. Rows
+	 * without a claim time were moved to PROCESSING by an earlier version and are
+	 * reclaimed too.
+	 * 
+	 * @param sourceId event source identifier
+	 * @param timeout  Time allowed to process a claimed event
+	 * @return Number of events reclaimed
+	 * @throws Exception Exception
+	 */
+	public int reclaimDatabaseEvents(String sourceId, Duration timeout) throws Exception {
+		EntityManager em = getEntityManager();
+		EntityTransaction txn = null;
+
+		try {
+			// start transaction
+			txn = em.getTransaction();
+			txn.begin();
+
+			// the claim time is not mapped
+			Query query = em.createNativeQuery("UPDATE DB_EVENT SET STATUS = '" + DatabaseEventStatus.READY_VALUE
+					+ "', CLAIM_TIME = NULL WHERE STATUS = '" + DatabaseEventStatus.PROCESSING_VALUE
+					+ "' AND SOURCE_ID = :sourceId AND (CLAIM_TIME IS NULL OR CLAIM_TIME < :cutoff)");
+			query.setParameter("sourceId", sourceId);
+			query.setParameter("cutoff", LocalDateTime.now(ZoneOffset.UTC).minus(timeout));
+			int reclaimedCount = query.executeUpdate();
+
+			// commit transaction
+			txn.commit();
+
+			return reclaimedCount;
+		} catch (Exception e) {
+			// roll back transaction
+			if (txn != null && txn.isActive()) {
+				txn.rollback();
+			}
+			throw e;
+		} finally {
+			em.close();
+		}
 	}
 
 	/**
@@ -1722,7 +3239,41 @@ public final class PersistenceService {
 	 * @return List of {@link OeeEvent}
 	 */
 	public List<OeeEvent> fetchEvents(Equipment equipment, OeeEventType type, OffsetDateTime from, OffsetDateTime to) {
-		String qry = "SELECT e FROM OeeEvent e WHERE e.equipment = :equipment AND e.eventType = :type ";
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return createEventQuery(em, equipment, type, from, to).getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Stream the OEE events for the equipment and event type in start time order
+	 * through a database cursor. The stream holds a connection until it is
+	 * closed.
+	 * 
+	 * @param equipment {@link Equipment}
+	 * @param type      {@link OeeEventType}
+	 * @param from      starting date and time, or null for no lower bound
+	 * @param to        ending date and time, or null for no upper bound
+	 * @return Stream of {@link OeeEvent}
+	 */
+	public Stream<OeeEvent> streamEvents(Equipment equipment, OeeEventType type, OffsetDateTime from,
+			OffsetDateTime to) {
+		EntityManager em = getReadOnlyEntityManager();
+
+		try {
+			return stream(em, createEventQuery(em, equipment, type, from, to));
+		} catch (RuntimeException e) {
+			em.close();
+			throw e;
+		}
+	}
+
+	private TypedQuery<OeeEvent> createEventQuery(EntityManager em, Equipment equipment, OeeEventType type,
+			OffsetDateTime from, OffsetDateTime to) {
+		String qry = EVENT_FETCH_SELECT + "WHERE e.equipment = :equipment AND e.eventType = :type ";
 
 		if (from != null) {
 			qry += "AND e.startTime.localDateTime >= :from ";
@@ -1733,7 +3284,7 @@ public final class PersistenceService {
 		}
 		qry += " ORDER BY e.startTime.localDateTime ASC";
 
-		TypedQuery<OeeEvent> query = getEntityManager().createQuery(qry, OeeEvent.class);
+		TypedQuery<OeeEvent> query = em.createQuery(qry, OeeEvent.class);
 		query.setParameter("type", type);
 		query.setParameter("equipment", equipment);
 
@@ -1744,8 +3295,66 @@ public final class PersistenceService {
 		if (to != null) {
 			query.setParameter("to", to.toLocalDateTime());
 		}
+		return query;
+	}
+
+	// iterate over the query results with a forward-only cursor. Each result is
+	// detached when the next one is read so that memory use stays constant, while
+	// the entities it references stay loaded for the following rows.
+	@SuppressWarnings("unchecked")
+	private <T> Stream<T> stream(EntityManager em, TypedQuery<T> typedQuery) {
+		org.hibernate.query.Query<T> query = typedQuery.unwrap(org.hibernate.query.Query.class);
+		query.setReadOnly(true);
+
+		// a server cursor on MySQL (useCursorFetch), so other queries can still run
+		query.setFetchSize(STREAM_FETCH_SIZE);
+
+		// PostgreSQL only uses a cursor in a transaction
+		EntityTransaction txn = em.getTransaction();
+		txn.begin();
 
-		return query.getResultList();
+		ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+
+		Iterator<T> iterator = new Iterator<T>() {
+			private T previous;
+			private Boolean hasNext;
+
+			@Override
+			public boolean hasNext() {
+				if (hasNext == null) {
+					if (previous != null) {
+						em.detach(previous);
+						previous = null;
+					}
+					hasNext = results.next();
+				}
+				return hasNext;
+			}
+
+			@Override
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				hasNext = null;
+				previous = (T) results.get(0);
+				return previous;
+			}
+		};
+
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				results.close();
+			} finally {
+				if (txn.isActive()) {
+					txn.rollback();
+				}
+				em.close();
+			}
+		});
 	}
 
 	public static String getJdbcConnection() {
@@ -0,0 +1,38 @@
+package org.point85.domain.persistence;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.jpa.spi.IdentifierGeneratorStrategyProvider;
+import org.point85.domain.plant.KeyedObject;
+
+/**
+ * The PooledIdGenerator allocates primary keys from the pooled sequence of
+ * {@link PersistenceService#setPooledIds}, but keeps a key that was already
+ * assigned by {@link PersistenceService#assignKeys}. An object whose key is
+ * known before it is saved, for example in the event journal, is therefore
+ * inserted under that key.
+ *
+ */
+public class PooledIdGenerator extends SequenceStyleGenerator {
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+		Long key = object instanceof KeyedObject ? ((KeyedObject) object).getKey() : null;
+
+		return key != null ? key : super.generate(session, object);
+	}
+
+	/**
+	 * Replaces the sequence generator of the pooled id mapping
+	 */
+	public static class StrategyProvider implements IdentifierGeneratorStrategyProvider {
+		@Override
+		public Map<String, Class<?>> getStrategies() {
+			return Collections.singletonMap(SequenceStyleGenerator.class.getName(), PooledIdGenerator.class);
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package org.point85.domain.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.point85.domain.plant.KeyedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The PooledIdMigration prepares an existing database for primary keys
+ * allocated from a sequence (see {@link PersistenceService#setPooledIds}). It
+ * creates the sequence starting above the largest key in use in any OEE table.
+ * MySQL has no sequences, so a single row table of the same name is used
+ * instead. Keys can only be inserted explicitly into an IDENTITY column that is
+ * generated by default. Oracle and PostgreSQL columns generated always are
+ * altered to generated by default. SQL Server cannot drop the IDENTITY property
+ * of a column, so each key column is replaced by a plain BIGINT column holding
+ * the same values. Its primary key and the foreign keys referencing it are
+ * dropped and recreated. Other indexes on a SQL Server key column must be
+ * dropped first. The migration is run once against a service connected with
+ * IDENTITY keys, before pooled keys are enabled. The statements run in one
+ * transaction. It does nothing if the sequence already exists.
+ *
+ */
+public class PooledIdMigration {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(PooledIdMigration.class);
+
+	// sequence or table in the mapping file
+	public static final String SEQUENCE_NAME = "OEE_ID_SEQ";
+
+	// keys allocated per sequence call in the mapping file
+	public static final int ALLOCATION_SIZE = 50;
+
+	private final PersistenceService persistenceService;
+
+	public PooledIdMigration(PersistenceService persistenceService) {
+		this.persistenceService = persistenceService;
+	}
+
+	/**
+	 * Create the key sequence
+	 *
+	 * @return True if the sequence was created, false if it already exists
+	 * @throws Exception Exception
+	 */
+	public boolean migrate() throws Exception {
+		DatabaseType databaseType = persistenceService.getDatabaseType();
+
+		if (sequenceExists(databaseType)) {
+			logger.info("Key sequence " + SEQUENCE_NAME + " already exists");
+			return false;
+		}
+
+		List<String> statements = getStatements(databaseType, getKeyColumns());
+
+		if (logger.isInfoEnabled()) {
+			for (String statement : statements) {
+				logger.info("Executing: " + statement);
+			}
+		}
+		persistenceService.executeUpdates(statements);
+		return true;
+	}
+
+	/**
+	 * Build the DDL to allow explicit key values and to create the sequence
+	 *
+	 * @param databaseType {@link DatabaseType}
+	 * @param keyColumns   Key column by table name
+	 * @return List of SQL statements
+	 * @throws Exception Exception
+	 */
+	List<String> getStatements(DatabaseType databaseType, Map<String, String> keyColumns) throws Exception {
+		List<String> statements = new ArrayList<>();
+
+		// the pooled optimizer hands out the block ending at the sequence value
+		long start = fetchMaxKey(keyColumns) + ALLOCATION_SIZE;
+
+		switch (databaseType) {
+		case MSSQL:
+			addIdentityConversions(keyColumns, statements);
+			statements.add("CREATE SEQUENCE " + SEQUENCE_NAME + " AS BIGINT START WITH " + start + " INCREMENT BY "
+					+ ALLOCATION_SIZE);
+			break;
+
+		case MYSQL:
+			statements.add("CREATE TABLE " + SEQUENCE_NAME + " (next_val BIGINT)");
+			statements.add("INSERT INTO " + SEQUENCE_NAME + " VALUES (" + start + ")");
+			break;
+
+		case ORACLE:
+			for (Map.Entry<String, String> entry : keyColumns.entrySet()) {
+				if (isGeneratedAlways(databaseType, entry.getKey(), entry.getValue())) {
+					statements.add("ALTER TABLE " + entry.getKey() + " MODIFY (" + entry.getValue()
+							+ " GENERATED BY DEFAULT AS IDENTITY)");
+				}
+			}
+			statements.add("CREATE SEQUENCE " + SEQUENCE_NAME + " START WITH " + start + " INCREMENT BY "
+					+ ALLOCATION_SIZE);
+			break;
+
+		case POSTGRES:
+			for (Map.Entry<String, String> entry : keyColumns.entrySet()) {
+				if (isGeneratedAlways(databaseType, entry.getKey(), entry.getValue())) {
+					statements.add("ALTER TABLE " + entry.getKey() + " ALTER COLUMN " + entry.getValue()
+							+ " SET GENERATED BY DEFAULT");
+				}
+			}
+			statements.add("CREATE SEQUENCE " + SEQUENCE_NAME + " START WITH " + start + " INCREMENT BY "
+					+ ALLOCATION_SIZE);
+			break;
+
+		case HSQL:
+		default:
+			statements.add("CREATE SEQUENCE " + SEQUENCE_NAME + " START WITH " + start + " INCREMENT BY "
+					+ ALLOCATION_SIZE);
+			break;
+		}
+		return statements;
+	}
+
+	// primary key column of each OEE table
+	Map<String, String> getKeyColumns() {
+		Map<String, String> keyColumns = new TreeMap<>();
+
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			SessionFactoryImplementor factory = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+
+			for (EntityPersister persister : factory.getMetamodel().entityPersisters().values()) {
+				if (!(persister instanceof AbstractEntityPersister)
+						|| !KeyedObject.class.isAssignableFrom(persister.getMappedClass())) {
+					continue;
+				}
+
+				AbstractEntityPersister entityPersister = (AbstractEntityPersister) persister;
+
+				// subclasses share the table of the root entity
+				keyColumns.put(entityPersister.getTableName(), entityPersister.getIdentifierColumnNames()[0]);
+			}
+		} finally {
+			em.close();
+		}
+		return keyColumns;
+	}
+
+	private long fetchMaxKey(Map<String, String> keyColumns) {
+		long maxKey = 0;
+
+		for (Map.Entry<String, String> entry : keyColumns.entrySet()) {
+			Number tableMax = (Number) querySingleResult(
+					"SELECT MAX(" + entry.getValue() + ") FROM " + entry.getKey());
+
+			if (tableMax != null) {
+				maxKey = Math.max(maxKey, tableMax.longValue());
+			}
+		}
+		return maxKey;
+	}
+
+	private boolean sequenceExists(DatabaseType databaseType) {
+		String sql = null;
+
+		switch (databaseType) {
+		case MSSQL:
+			sql = "SELECT COUNT(*) FROM sys.sequences WHERE UPPER(name) = '" + SEQUENCE_NAME + "'";
+			break;
+		case MYSQL:
+			sql = "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND UPPER(table_name) = '"
+					+ SEQUENCE_NAME + "'";
+			break;
+		case ORACLE:
+			sql = "SELECT COUNT(*) FROM USER_SEQUENCES WHERE SEQUENCE_NAME = '" + SEQUENCE_NAME + "'";
+			break;
+		case HSQL:
+		case POSTGRES:
+		default:
+			sql = "SELECT COUNT(*) FROM information_schema.sequences WHERE UPPER(sequence_name) = '" + SEQUENCE_NAME
+					+ "'";
+			break;
+		}
+		return ((Number) querySingleResult(sql)).longValue() > 0;
+	}
+
+	private boolean isGeneratedAlways(DatabaseType databaseType, String table, String column) {
+		String sql = null;
+
+		if (databaseType.equals(DatabaseType.ORACLE)) {
+			sql = "SELECT COUNT(*) FROM USER_TAB_IDENTITY_COLUMNS WHERE GENERATION_TYPE = 'ALWAYS' AND TABLE_NAME = '"
+					+ table.toUpperCase() + "' AND COLUMN_NAME = '" + column.toUpperCase() + "'";
+		} else {
+			sql = "SELECT COUNT(*) FROM information_schema.columns WHERE is_identity = 'YES' AND identity_generation = 'ALWAYS' AND table_schema = current_schema() AND UPPER(table_name) = '"
+					+ table.toUpperCase() + "' AND UPPER(column_name) = '" + column.toUpperCase() + "'";
+		}
+		return ((Number) querySingleResult(sql)).longValue() > 0;
+	}
+
+	// SQL Server does not accept explicit values for an IDENTITY column, swap in a
+	// plain column
+	private void addIdentityConversions(Map<String, String> keyColumns, List<String> statements) {
+		List<String> dropForeignKeys = new ArrayList<>();
+		List<String> addForeignKeys = new ArrayList<>();
+		List<String> swapColumns = new ArrayList<>();
+
+		for (Map.Entry<String, String> entry : keyColumns.entrySet()) {
+			String table = entry.getKey();
+			String column = entry.getValue();
+
+			Number count = (Number) querySingleResult(
+					"SELECT COUNT(*) FROM sys.identity_columns WHERE object_id = OBJECT_ID('" + table + "')");
+
+			if (count.longValue() == 0) {
+				continue;
+			}
+
+			// foreign keys to this table
+			for (Object[] row : queryResultList(
+					"SELECT fk.name, OBJECT_NAME(fk.parent_object_id), COL_NAME(fkc.parent_object_id, fkc.parent_column_id), fk.delete_referential_action_desc"
+							+ " FROM sys.foreign_keys fk JOIN sys.foreign_key_columns fkc ON fkc.constraint_object_id = fk.object_id"
+							+ " WHERE fk.referenced_object_id = OBJECT_ID('" + table + "')")) {
+				dropForeignKeys.add("ALTER TABLE " + row[1] + " DROP CONSTRAINT " + row[0]);
+
+				String foreignKey = "ALTER TABLE " + row[1] + " ADD CONSTRAINT " + row[0] + " FOREIGN KEY (" + row[2]
+						+ ") REFERENCES " + table + " (" + column + ")";
+
+				if (!"NO_ACTION".equals(row[3])) {
+					foreignKey += " ON DELETE " + row[3].toString().replace('_', ' ');
+				}
+				addForeignKeys.add(foreignKey);
+			}
+
+			String primaryKey = (String) querySingleResult(
+					"SELECT name FROM sys.key_constraints WHERE type = 'PK' AND parent_object_id = OBJECT_ID('" + table
+							+ "')");
+			String newColumn = column + "_NEW";
+
+			swapColumns.add("ALTER TABLE " + table + " DROP CONSTRAINT " + primaryKey);
+			swapColumns.add("ALTER TABLE " + table + " ADD " + newColumn + " BIGINT NULL");
+			swapColumns.add("UPDATE " + table + " SET " + newColumn + " = " + column);
+			swapColumns.add("ALTER TABLE " + table + " ALTER COLUMN " + newColumn + " BIGINT NOT NULL");
+			swapColumns.add("ALTER TABLE " + table + " DROP COLUMN " + column);
+			swapColumns.add("EXEC sp_rename '" + table + "." + newColumn + "', '" + column + "', 'COLUMN'");
+			swapColumns.add("ALTER TABLE " + table + " ADD CONSTRAINT " + primaryKey + " PRIMARY KEY (" + column + ")");
+		}
+
+		// referencing tables may be swapped too, so drop every foreign key first
+		statements.addAll(dropForeignKeys);
+		statements.addAll(swapColumns);
+		statements.addAll(addForeignKeys);
+	}
+
+	private Object querySingleResult(String sql) {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			return em.createNativeQuery(sql).getSingleResult();
+		} finally {
+			em.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> queryResultList(String sql) {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			return em.createNativeQuery(sql).getResultList();
+		} finally {
+			em.close();
+		}
+	}
+}
@@ -0,0 +1,499 @@
+package org.point85.domain.persistence;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The SchemaMigration creates the indexes that the queries of the
+ * {@link PersistenceService} depend on, since the tables themselves are
+ * created outside of the domain. Indexes are grouped by schema version and
+ * the version applied to each table is recorded in {@link #VERSION_TABLE}, so
+ * that a migration only creates the indexes added since it last ran. An
+ * existing index with the same leading columns is accepted under any name.
+ * The {@link #ROLLUP_TABLE} summarizes the events for the domain only, so it is
+ * created by the migration if it is missing. Timestamp columns added by the
+ * domain to existing tables, such as the claim time of the interface table,
+ * are added in the same way.
+ * Only tables mapped by the connected persistence unit and present in the
+ * database are migrated, so the same migration serves the OEE database and a
+ * database interface table server.<br>
+ * On SQL Server an index of a partitioned event table is created on the
+ * partition scheme, and on Oracle it is created as a local index, so that
+ * partitions can still be dropped by the {@link EventPartitionManager}.
+ *
+ */
+public class SchemaMigration {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(SchemaMigration.class);
+
+	// applied version of each table
+	public static final String VERSION_TABLE = "OEE_SCHEMA_VERSION";
+
+	// table of the OeeRollup entity
+	public static final String ROLLUP_TABLE = "OEE_ROLLUP";
+
+	// indexes of each version
+	private static final List<IndexDefinition> INDEXES = Collections.unmodifiableList(Arrays.asList(
+			// last event, availability and event streams
+			new IndexDefinition(1, "IX_OEE_EVENT_ENT_TYPE_START", "OEE_EVENT", "ENT_KEY", "EVENT_TYPE", "START_TIME"),
+
+			// production of a material
+			new IndexDefinition(1, "IX_OEE_EVENT_ENT_MATL_START", "OEE_EVENT",
+					Arrays.asList("ENT_KEY", "MATL_KEY", "EVENT_TYPE", "START_TIME"),
+					Arrays.asList("START_TIME_OFFSET", "AMOUNT", "UOM_KEY", "REASON_KEY")),
+
+			// rollups of a bucket
+			new IndexDefinition(1, "IX_OEE_ROLLUP_ENT_BUCKET", "OEE_ROLLUP", "ENT_KEY", "BUCKET", "START_TIME"),
+
+			// interface table polling
+			new IndexDefinition(1, "IX_DB_EVENT_STATUS_SOURCE", "DB_EVENT", "STATUS", "SOURCE_ID", "EVENT_TIME")));
+
+	// timestamp columns added to existing tables
+	private static final Map<String, List<String>> TIMESTAMP_COLUMNS = Collections
+			.singletonMap("DB_EVENT", Collections.singletonList("CLAIM_TIME"));
+
+	private final PersistenceService persistenceService;
+
+	public SchemaMigration(PersistenceService persistenceService) {
+		this.persistenceService = persistenceService;
+	}
+
+	/**
+	 * Get the indexes of all schema versions
+	 *
+	 * @return List of {@link IndexDefinition}
+	 */
+	public static List<IndexDefinition> getIndexDefinitions() {
+		return INDEXES;
+	}
+
+	/**
+	 * Get the latest schema version
+	 *
+	 * @return Version
+	 */
+	public static int getLatestVersion() {
+		int latest = 0;
+
+		for (IndexDefinition index : INDEXES) {
+			latest = Math.max(latest, index.getVersion());
+		}
+		return latest;
+	}
+
+	/**
+	 * Create the missing indexes of each table not yet at the latest version
+	 *
+	 * @return Number of indexes created
+	 * @throws Exception Exception
+	 */
+	public int migrate() throws Exception {
+		DatabaseType databaseType = persistenceService.getDatabaseType();
+		Set<String> tables = getExistingTables();
+
+		if (!tables.contains(VERSION_TABLE)) {
+			execute(getCreateVersionTableStatement(databaseType));
+		}
+
+		Set<String> mappedTables = getMappedTables();
+
+		if (mappedTables.contains(ROLLUP_TABLE) && !tables.contains(ROLLUP_TABLE)) {
+			execute(getCreateRollupTableStatement(databaseType));
+			tables.add(ROLLUP_TABLE);
+		}
+
+		int created = 0;
+
+		for (String table : mappedTables) {
+			if (!tables.contains(table)) {
+				logger.warn("Table " + table + " does not exist and is not migrated");
+				continue;
+			}
+
+			for (String column : findMissingColumns(table)) {
+				execute(getAddColumnStatement(databaseType, table, column));
+			}
+
+			int current = fetchVersion(table);
+
+			for (int version = current + 1; version <= getLatestVersion(); version++) {
+				Map<String, List<String>> existing = fetchIndexColumns(table);
+
+				for (IndexDefinition index : getIndexes(table, version)) {
+					if (isCovered(index, existing)) {
+						continue;
+					}
+
+					if (existing.containsKey(index.getName())) {
+						logger.warn("Index " + index.getName() + " exists with columns " + existing.get(index.getName())
+								+ " instead of " + index.getColumns());
+						continue;
+					}
+
+					execute(getCreateIndexStatement(databaseType, index));
+					created++;
+				}
+
+				execute("INSERT INTO " + VERSION_TABLE + " (TABLE_NAME, VERSION, APPLIED) VALUES ('" + table + "', "
+						+ version + ", CURRENT_TIMESTAMP)");
+
+				if (logger.isInfoEnabled()) {
+					logger.info("Migrated table " + table + " to schema version " + version);
+				}
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * Find the indexes of the mapped tables that are missing. An index with the
+	 * same leading columns under a different name is not missing.
+	 *
+	 * @return List of missing {@link IndexDefinition}
+	 * @throws Exception Exception
+	 */
+	public List<IndexDefinition> findMissingIndexes() throws Exception {
+		List<IndexDefinition> missing = new ArrayList<>();
+		Set<String> tables = getExistingTables();
+
+		for (String table : getMappedTables()) {
+			if (!tables.contains(table)) {
+				continue;
+			}
+
+			Map<String, List<String>> existing = fetchIndexColumns(table);
+
+			for (IndexDefinition index : getIndexes(table, 0)) {
+				if (!isCovered(index, existing)) {
+					missing.add(index);
+				}
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Log a warning for each missing index or added column
+	 *
+	 * @return True if no index or column is missing
+	 * @throws Exception Exception
+	 */
+	public boolean checkIndexes() throws Exception {
+		List<IndexDefinition> missing = findMissingIndexes();
+
+		for (IndexDefinition index : missing) {
+			logger.warn("Missing index " + index + ". Run the schema migration to create it.");
+		}
+
+		boolean columns = true;
+		Set<String> tables = getExistingTables();
+
+		for (String table : getMappedTables()) {
+			if (!tables.contains(table)) {
+				continue;
+			}
+
+			for (String column : findMissingColumns(table)) {
+				logger.warn("Missing column " + table + "." + column + ". Run the schema migration to add it.");
+				columns = false;
+			}
+		}
+		return missing.isEmpty() && columns;
+	}
+
+	/**
+	 * Build the DDL to create the index
+	 *
+	 * @param databaseType {@link DatabaseType}
+	 * @param index        {@link IndexDefinition}
+	 * @return SQL statement
+	 * @throws Exception Exception
+	 */
+	String getCreateIndexStatement(DatabaseType databaseType, IndexDefinition index) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append("CREATE INDEX ").append(index.getName()).append(" ON ").append(index.getTableName()).append(" (")
+				.append(String.join(", ", index.getColumns())).append(')');
+
+		boolean partitioned = isPartitioned(databaseType, index.getTableName());
+
+		switch (databaseType) {
+		case MSSQL:
+			if (!index.getIncludedColumns().isEmpty()) {
+				sb.append(" INCLUDE (").append(String.join(", ", index.getIncludedColumns())).append(')');
+			}
+
+			if (partitioned) {
+				// aligned with the table so that a partition can be truncated
+				sb.append(" ON ").append(EventPartitionManager.PARTITION_SCHEME).append(" (")
+						.append(EventPartitionManager.PARTITION_COLUMN).append(')');
+			}
+			break;
+
+		case ORACLE:
+			if (partitioned) {
+				sb.append(" LOCAL");
+			}
+			break;
+
+		default:
+			break;
+		}
+		return sb.toString();
+	}
+
+	String getCreateVersionTableStatement(DatabaseType databaseType) {
+		String timestamp = databaseType.equals(DatabaseType.MSSQL) ? "DATETIME2" : "TIMESTAMP";
+
+		return "CREATE TABLE " + VERSION_TABLE + " (TABLE_NAME VARCHAR(64) NOT NULL, VERSION INT NOT NULL, APPLIED "
+				+ timestamp + ", PRIMARY KEY (TABLE_NAME, VERSION))";
+	}
+
+	String getAddColumnStatement(DatabaseType databaseType, String table, String column) {
+		String timestamp = "TIMESTAMP";
+
+		if (databaseType.equals(DatabaseType.MSSQL)) {
+			timestamp = "DATETIME2";
+		} else if (databaseType.equals(DatabaseType.MYSQL)) {
+			timestamp = "DATETIME(6)";
+		}
+		return "ALTER TABLE " + table + " ADD " + column + " " + timestamp;
+	}
+
+	String getCreateRollupTableStatement(DatabaseType databaseType) {
+		String key = null;
+		String timestamp = "TIMESTAMP";
+		String integer = "INTEGER";
+		String bigint = "BIGINT";
+		String real = "DOUBLE PRECISION";
+		String varchar = "VARCHAR";
+
+		switch (databaseType) {
+		case MSSQL:
+			key = "BIGINT IDENTITY(1,1)";
+			timestamp = "DATETIME2";
+			real = "FLOAT";
+			break;
+		case ORACLE:
+			key = "NUMBER(19) GENERATED BY DEFAULT AS IDENTITY";
+			integer = "NUMBER(10)";
+			bigint = "NUMBER(19)";
+			real = "BINARY_DOUBLE";
+			varchar = "VARCHAR2";
+			break;
+		case MYSQL:
+			key = "BIGINT AUTO_INCREMENT";
+			timestamp = "DATETIME(6)";
+			break;
+		case POSTGRES:
+			key = "BIGSERIAL";
+			break;
+		case HSQL:
+		default:
+			key = "BIGINT GENERATED BY DEFAULT AS IDENTITY";
+			break;
+		}
+
+		return "CREATE TABLE " + ROLLUP_TABLE + " (ROLLUP_KEY " + key + " NOT NULL, ENT_KEY " + bigint + ", MATL_KEY "
+				+ bigint + ", BUCKET " + varchar + "(16), SHIFT_KEY " + bigint + ", START_TIME " + timestamp
+				+ ", START_TIME_OFFSET " + integer + ", END_TIME " + timestamp + ", END_TIME_OFFSET " + integer
+				+ ", NOT_SCHEDULED " + bigint + ", UNSCHEDULED " + bigint + ", PLANNED_DOWN " + bigint + ", SETUP "
+				+ bigint + ", UNPLANNED_DOWN " + bigint + ", MINOR_STOPS " + bigint + ", GOOD_AMOUNT " + real
+				+ ", REJECT_AMOUNT " + real + ", STARTUP_AMOUNT " + real + ", PRIMARY KEY (ROLLUP_KEY), "
+				+ "FOREIGN KEY (ENT_KEY) REFERENCES PLANT_ENTITY (ENT_KEY), "
+				+ "FOREIGN KEY (MATL_KEY) REFERENCES MATERIAL (MAT_KEY), "
+				+ "FOREIGN KEY (SHIFT_KEY) REFERENCES SHIFT (SHIFT_KEY))";
+	}
+
+	private List<IndexDefinition> getIndexes(String table, int version) {
+		List<IndexDefinition> indexes = new ArrayList<>();
+
+		for (IndexDefinition index : INDEXES) {
+			if (index.getTableName().equals(table) && (version == 0 || index.getVersion() == version)) {
+				indexes.add(index);
+			}
+		}
+		return indexes;
+	}
+
+	private boolean isCovered(IndexDefinition index, Map<String, List<String>> existing) {
+		for (List<String> columns : existing.values()) {
+			if (index.isCoveredBy(columns)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the event table of another persistence unit is not partitioned here
+	private boolean isPartitioned(DatabaseType databaseType, String table) throws Exception {
+		if (!table.equals(EventPartitionManager.TABLE_NAME)
+				|| !(databaseType.equals(DatabaseType.MSSQL) || databaseType.equals(DatabaseType.ORACLE))) {
+			return false;
+		}
+		return new EventPartitionManager(persistenceService, PartitionInterval.MONTH).isPartitioned();
+	}
+
+	private int fetchVersion(String table) {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			Number version = (Number) em
+					.createNativeQuery("SELECT MAX(VERSION) FROM " + VERSION_TABLE + " WHERE TABLE_NAME = '" + table + "'")
+					.getSingleResult();
+			return version != null ? version.intValue() : 0;
+		} finally {
+			em.close();
+		}
+	}
+
+	// tables of the entities in this persistence unit
+	private Set<String> getMappedTables() {
+		Set<String> tables = new TreeSet<>();
+
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			SessionFactoryImplementor factory = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+
+			for (EntityPersister persister : factory.getMetamodel().entityPersisters().values()) {
+				if (persister instanceof AbstractEntityPersister) {
+					tables.add(((AbstractEntityPersister) persister).getTableName().toUpperCase());
+				}
+			}
+		} finally {
+			em.close();
+		}
+		return tables;
+	}
+
+	// upper case names of all tables
+	private Set<String> getExistingTables() {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			return em.unwrap(Session.class).doReturningWork(connection -> {
+				Set<String> tables = new TreeSet<>();
+
+				try (ResultSet rs = connection.getMetaData().getTables(connection.getCatalog(), null, null,
+						new String[] { "TABLE", "PARTITIONED TABLE" })) {
+					while (rs.next()) {
+						tables.add(rs.getString("TABLE_NAME").toUpperCase());
+					}
+				}
+				return tables;
+			});
+		} finally {
+			em.close();
+		}
+	}
+
+	// added columns that the table does not have yet
+	private List<String> findMissingColumns(String table) {
+		List<String> missing = new ArrayList<>();
+		List<String> added = TIMESTAMP_COLUMNS.get(table);
+
+		if (added == null) {
+			return missing;
+		}
+
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			Set<String> columns = em.unwrap(Session.class).doReturningWork(connection -> {
+				Set<String> names = new TreeSet<>();
+				DatabaseMetaData metaData = connection.getMetaData();
+
+				String name = table;
+
+				if (metaData.storesLowerCaseIdentifiers()) {
+					name = table.toLowerCase();
+				} else if (metaData.storesUpperCaseIdentifiers()) {
+					name = table.toUpperCase();
+				}
+
+				try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, name, null)) {
+					while (rs.next()) {
+						names.add(rs.getString("COLUMN_NAME").toUpperCase());
+					}
+				}
+				return names;
+			});
+
+			for (String column : added) {
+				if (!columns.contains(column)) {
+					missing.add(column);
+				}
+			}
+		} finally {
+			em.close();
+		}
+		return missing;
+	}
+
+	// upper case key columns in order by index name
+	private Map<String, List<String>> fetchIndexColumns(String table) {
+		EntityManager em = persistenceService.getEntityManager();
+
+		try {
+			return em.unwrap(Session.class).doReturningWork(connection -> {
+				Map<String, List<String>> indexes = new TreeMap<>();
+				DatabaseMetaData metaData = connection.getMetaData();
+
+				String name = table;
+
+				if (metaData.storesLowerCaseIdentifiers()) {
+					name = table.toLowerCase();
+				} else if (metaData.storesUpperCaseIdentifiers()) {
+					name = table.toUpperCase();
+				}
+
+				try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, name, false, true)) {
+					while (rs.next()) {
+						String indexName = rs.getString("INDEX_NAME");
+						String column = rs.getString("COLUMN_NAME");
+
+						if (indexName == null || column == null
+								|| rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+							continue;
+						}
+
+						List<String> columns = indexes.computeIfAbsent(indexName.toUpperCase(), k -> new ArrayList<>());
+						int position = rs.getShort("ORDINAL_POSITION");
+
+						while (columns.size() < position) {
+							columns.add(null);
+						}
+						columns.set(position - 1, column.toUpperCase());
+					}
+				}
+				return indexes;
+			});
+		} finally {
+			em.close();
+		}
+	}
+
+	private void execute(String statement) {
+		if (logger.isInfoEnabled()) {
+			logger.info("Executing: " + statement);
+		}
+		persistenceService.executeUpdate(statement);
+	}
+}
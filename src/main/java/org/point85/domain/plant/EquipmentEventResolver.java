@@ -3,14 +3,21 @@ package org.point85.domain.plant;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
+import org.point85.domain.collector.CollectorDataSource;
 import org.point85.domain.collector.DataCollector;
+import org.point85.domain.collector.LastEventCache;
 import org.point85.domain.collector.OeeEvent;
 import org.point85.domain.i18n.DomainLocalizer;
 import org.point85.domain.persistence.PersistenceService;
@@ -19,6 +26,8 @@ import org.point85.domain.schedule.ShiftInstance;
 import org.point85.domain.schedule.Team;
 import org.point85.domain.schedule.WorkSchedule;
 import org.point85.domain.script.EventResolver;
+import org.point85.domain.script.NativeResolver;
+import org.point85.domain.script.NativeResolvers;
 import org.point85.domain.script.OeeContext;
 import org.point85.domain.script.OeeEventType;
 import org.point85.domain.script.ResolverFunction;
@@ -39,28 +48,139 @@ public class EquipmentEventResolver {
 	// material cache
 	private final ConcurrentMap<String, Material> materialCache = new ConcurrentHashMap<>();
 
-	// resolvers by source id
+	// resolvers by equipment
 	private final ConcurrentMap<Equipment, List<EventResolver>> resolverCache = new ConcurrentHashMap<>();
 
-	// engine to evaluate java script
-	private final ScriptEngine scriptEngine;
+	// resolvers by source id
+	private final ConcurrentMap<String, EventResolver> sourceIdIndex = new ConcurrentHashMap<>();
 
-	public EquipmentEventResolver() {
-		scriptEngine = new ScriptEngineManager().getEngineByName(SCRIPT_ENGINE_NAME);
-	}
+	// resolvers by source id for each data source
+	private final ConcurrentMap<CollectorDataSource, ConcurrentMap<String, EventResolver>> dataSourceIndex =
+			new ConcurrentHashMap<>();
+
+	// true when the resolvers have been loaded
+	private volatile boolean resolversCached = false;
+
+	// isolated engine and compiled functions for each worker thread
+	private final ThreadLocal<ScriptRuntime> scriptRuntime = ThreadLocal.withInitial(ScriptRuntime::new);
+
+	// Java resolvers by source id, shared by all threads
+	private final ConcurrentMap<String, CompiledFunction> nativeCache = new ConcurrentHashMap<>();
 
-	public void clearCache() {
+	// incremented to discard the compiled functions in every thread
+	private final AtomicInteger functionGeneration = new AtomicInteger();
+
+	// latest setup by equipment, queried if not set
+	private LastEventCache lastEventCache;
+
+	public synchronized void clearCache() {
+		resolversCached = false;
 		reasonCache.clear();
 		materialCache.clear();
 		resolverCache.clear();
+		sourceIdIndex.clear();
+		dataSourceIndex.clear();
+		nativeCache.clear();
+		functionGeneration.incrementAndGet();
+	}
+
+	// force the resolver scripts to be compiled again
+	public void invalidateScripts() {
+		nativeCache.clear();
+		functionGeneration.incrementAndGet();
+	}
+
+	// compile the script on first use in this thread and after it has been edited
+	private Object getCompiledFunction(EventResolver eventResolver) throws Exception {
+		ScriptRuntime runtime = scriptRuntime.get();
+
+		if (runtime.generation != functionGeneration.get()) {
+			runtime.functions.clear();
+			runtime.generation = functionGeneration.get();
+		}
+
+		String sourceId = eventResolver.getSourceId();
+		String script = eventResolver.getScript();
+
+		CompiledFunction compiled = runtime.functions.get(sourceId);
+
+		if (compiled == null || !compiled.isCompiledFrom(script)) {
+			if (logger.isInfoEnabled()) {
+				logger.info("Compiling script resolver for source id " + sourceId + " on thread "
+						+ Thread.currentThread().getName());
+			}
+
+			Object function = new ResolverFunction(script).compile(runtime.engine);
+			compiled = new CompiledFunction(script, function);
+			runtime.functions.put(sourceId, compiled);
+		}
+		return compiled.function;
+	}
+
+	// create the Java resolver on first use and after the script has been edited
+	private NativeResolver getNativeResolver(EventResolver eventResolver) throws Exception {
+		String sourceId = eventResolver.getSourceId();
+		String script = eventResolver.getScript();
+
+		CompiledFunction compiled = nativeCache.get(sourceId);
+
+		if (compiled == null || !compiled.isCompiledFrom(script)) {
+			compiled = new CompiledFunction(script, NativeResolvers.create(script));
+			nativeCache.put(sourceId, compiled);
+		}
+		return (NativeResolver) compiled.function;
+	}
+
+	// compile the selected resolver scripts in the calling thread's engine
+	public void precompile(Predicate<EventResolver> filter) throws Exception {
+		cacheResolvers();
+
+		for (List<EventResolver> resolvers : resolverCache.values()) {
+			for (EventResolver resolver : resolvers) {
+				String script = resolver.getScript();
+
+				if (script == null || script.length() == 0 || !filter.test(resolver)) {
+					continue;
+				}
+
+				try {
+					if (NativeResolvers.isNative(script)) {
+						getNativeResolver(resolver);
+					} else {
+						getCompiledFunction(resolver);
+					}
+				} catch (Exception e) {
+					// reported again when an event arrives
+					logger.warn("Unable to compile script for source id " + resolver.getSourceId() + ". "
+							+ e.getMessage());
+				}
+			}
+		}
+	}
+
+	public LastEventCache getLastEventCache() {
+		return lastEventCache;
+	}
+
+	public void setLastEventCache(LastEventCache lastEventCache) {
+		this.lastEventCache = lastEventCache;
 	}
 
+	// the calling thread's engine
 	public ScriptEngine getScriptEngine() {
-		return scriptEngine;
+		return scriptRuntime.get().engine;
 	}
 
 	private void cacheResolvers() {
-		if (resolverCache.size() == 0) {
+		if (resolversCached) {
+			return;
+		}
+
+		synchronized (this) {
+			if (resolversCached) {
+				return;
+			}
+
 			// query db
 			List<EventResolver> resolvers = PersistenceService.instance().fetchEventResolvers();
 
@@ -75,7 +195,21 @@ public class EquipmentEventResolver {
 					resolverCache.put(equipment, equipmentResolvers);
 				}
 				equipmentResolvers.add(resolver);
+
+				// index by source id
+				EventResolver existing = sourceIdIndex.putIfAbsent(resolver.getSourceId(), resolver);
+
+				if (existing != null) {
+					logger.warn("Source id " + resolver.getSourceId() + " is defined for both " + existing.getEquipment()
+							+ " and " + equipment + ".  Using " + existing.getEquipment());
+				}
+
+				if (resolver.getDataSource() != null) {
+					dataSourceIndex.computeIfAbsent(resolver.getDataSource(), source -> new ConcurrentHashMap<>())
+							.putIfAbsent(resolver.getSourceId(), resolver);
+				}
 			}
+			resolversCached = true;
 		}
 	}
 
@@ -86,23 +220,35 @@ public class EquipmentEventResolver {
 		return resolverCache.get(equipment);
 	}
 
+	// find the resolvers for the data source
+	public Collection<EventResolver> getResolvers(CollectorDataSource dataSource) throws Exception {
+		cacheResolvers();
+
+		Map<String, EventResolver> sourceResolvers = dataSourceIndex.get(dataSource);
+
+		return sourceResolvers != null ? sourceResolvers.values() : Collections.emptyList();
+	}
+
 	// find the resolver by source id (must be unique)
 	public EventResolver getResolver(String sourceId) throws Exception {
 		cacheResolvers();
 
-		Collection<List<EventResolver>> equipmentResolvers = resolverCache.values();
-
-		EventResolver configuredResolver = null;
+		EventResolver configuredResolver = sourceIdIndex.get(sourceId);
 
-		for (List<EventResolver> resolvers : equipmentResolvers) {
-			for (EventResolver resolver : resolvers) {
-				if (resolver.getSourceId().equals(sourceId)) {
-					configuredResolver = resolver;
-					break;
-				}
-			}
+		if (configuredResolver == null) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("no.resolver", sourceId));
 		}
 
+		return configuredResolver;
+	}
+
+	// find the resolver by source id within the data source
+	public EventResolver getResolver(CollectorDataSource dataSource, String sourceId) throws Exception {
+		cacheResolvers();
+
+		Map<String, EventResolver> sourceResolvers = dataSourceIndex.get(dataSource);
+		EventResolver configuredResolver = sourceResolvers != null ? sourceResolvers.get(sourceId) : null;
+
 		if (configuredResolver == null) {
 			throw new Exception(DomainLocalizer.instance().getErrorString("no.resolver", sourceId));
 		}
@@ -137,10 +283,16 @@ public class EquipmentEventResolver {
 			logger.trace("for script \n" + script);
 		}
 
-		ResolverFunction resolverFunction = new ResolverFunction(script);
-
 		// result of script execution
-		Object result = resolverFunction.invoke(getScriptEngine(), context, sourceValue, eventResolver);
+		Object result = null;
+
+		if (NativeResolvers.isNative(script)) {
+			// Java implementation
+			result = getNativeResolver(eventResolver).resolve(context, sourceValue, eventResolver);
+		} else {
+			Object function = getCompiledFunction(eventResolver);
+			result = ResolverFunction.invokeCompiled(getScriptEngine(), function, context, sourceValue, eventResolver);
+		}
 
 		// set last value
 		eventResolver.setLastValue(sourceValue);
@@ -196,7 +348,13 @@ public class EquipmentEventResolver {
 
 			if (material == null) {
 				// query for last setup
-				OeeEvent setup = PersistenceService.instance().fetchLastEvent(equipment, OeeEventType.MATL_CHANGE);
+				OeeEvent setup = null;
+
+				if (lastEventCache != null) {
+					setup = lastEventCache.getLastEvent(equipment, OeeEventType.MATL_CHANGE);
+				} else {
+					setup = PersistenceService.instance().fetchLastEvent(equipment, OeeEventType.MATL_CHANGE);
+				}
 
 				if (setup != null) {
 					// material
@@ -422,4 +580,32 @@ public class EquipmentEventResolver {
 		return material;
 	}
 
+
+	// script engine confined to one thread
+	private static class ScriptRuntime {
+		private final ScriptEngine engine = new ScriptEngineManager().getEngineByName(SCRIPT_ENGINE_NAME);
+
+		// compiled functions by source id
+		private final Map<String, CompiledFunction> functions = new HashMap<>();
+
+		// function generation when last cleared
+		private int generation;
+	}
+
+	// function object or Java resolver created from a script
+	private static class CompiledFunction {
+		private final int scriptHash;
+		private final String script;
+		private final Object function;
+
+		CompiledFunction(String script, Object function) {
+			this.scriptHash = script.hashCode();
+			this.script = script;
+			this.function = function;
+		}
+
+		private boolean isCompiledFrom(String other) {
+			return other != null && other.hashCode() == scriptHash && other.equals(script);
+		}
+	}
 }
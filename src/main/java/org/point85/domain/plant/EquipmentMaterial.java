@@ -3,18 +3,23 @@ package org.point85.domain.plant;
 import java.util.Objects;
 
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.point85.domain.uom.Quantity;
 import org.point85.domain.uom.UnitOfMeasure;
 
 @Entity
 @Table(name = "EQUIPMENT_MATERIAL")
 @AttributeOverride(name = "primaryKey", column = @Column(name = "EM_KEY"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 public class EquipmentMaterial extends KeyedObject {
 
@@ -1,13 +1,19 @@
 package org.point85.domain.plant;
 
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 @Entity
 @Table(name = "MATERIAL")
 @AttributeOverride(name = "primaryKey", column = @Column(name = "MAT_KEY"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 public class Material extends NamedObject {
 	// the one and only root material in the hierarchy
@@ -4,6 +4,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Convert;
@@ -14,6 +15,8 @@ import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.point85.domain.oee.TimeLoss;
 import org.point85.domain.persistence.TimeLossConverter;
 
@@ -27,6 +30,8 @@ import org.point85.domain.persistence.TimeLossConverter;
 @Entity
 @Table(name = "REASON")
 @AttributeOverride(name = "primaryKey", column = @Column(name = "REASON_KEY"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 public class Reason extends NamedObject {
 	// the one and only root reason in the hierarchy
@@ -106,6 +106,10 @@ public class ExceptionPeriod extends Named implements Comparable<ExceptionPeriod
 		}
 
 		this.startDateTime = startDateTime;
+
+		if (workSchedule != null) {
+			workSchedule.invalidateShiftCalendar();
+		}
 	}
 
 	/**
@@ -139,6 +143,10 @@ public class ExceptionPeriod extends Named implements Comparable<ExceptionPeriod
 		}
 
 		this.duration = duration;
+
+		if (workSchedule != null) {
+			workSchedule.invalidateShiftCalendar();
+		}
 	}
 
 	/**
@@ -192,6 +200,10 @@ public class ExceptionPeriod extends Named implements Comparable<ExceptionPeriod
 
 	public void setLossCategory(TimeLoss loss) {
 		this.timeLoss = loss;
+
+		if (workSchedule != null) {
+			workSchedule.invalidateShiftCalendar();
+		}
 	}
 
 	/**
@@ -0,0 +1,155 @@
+package org.point85.domain.schedule;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class ShiftCalendar is a materialized timeline of the working shift
+ * instances of a {@link WorkSchedule} for the days around a centre date. The
+ * instances are sorted by start time so that the shifts in effect at a date and
+ * time are found with a binary search. A calendar is immutable and is replaced
+ * by the work schedule when the schedule changes or a time outside of the
+ * horizon is requested.
+ *
+ */
+final class ShiftCalendar {
+	// default number of days before and after the centre date
+	static final int DEFAULT_HORIZON_DAYS = 30;
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	// first and last day with complete coverage
+	private final LocalDate firstDay;
+	private final LocalDate lastDay;
+
+	// instances sorted by start time
+	private final ShiftInstance[] instances;
+
+	// start and end of each instance in UTC epoch nanoseconds
+	private final long[] starts;
+	private final long[] ends;
+
+	// longest shift, bounds the backward scan
+	private final long maxDuration;
+
+	private ShiftCalendar(LocalDate firstDay, LocalDate lastDay, List<ShiftInstance> timeline) {
+		this.firstDay = firstDay;
+		this.lastDay = lastDay;
+
+		int count = timeline.size();
+		instances = timeline.toArray(new ShiftInstance[count]);
+		starts = new long[count];
+		ends = new long[count];
+
+		long longest = 0;
+		for (int i = 0; i < count; i++) {
+			starts[i] = toNanos(instances[i].getStartTime());
+			ends[i] = toNanos(instances[i].getEndTime());
+			longest = Math.max(longest, ends[i] - starts[i]);
+		}
+		maxDuration = longest;
+	}
+
+	/**
+	 * Build the calendar for the days around the centre date
+	 *
+	 * @param schedule {@link WorkSchedule}
+	 * @param centre   Centre date
+	 * @param horizon  Number of days before and after the centre date
+	 * @return {@link ShiftCalendar}
+	 * @throws Exception exception
+	 */
+	static ShiftCalendar build(WorkSchedule schedule, LocalDate centre, int horizon) throws Exception {
+		LocalDate fromDay = centre.minusDays(horizon);
+		LocalDate toDay = centre.plusDays(horizon);
+
+		// no instances before a rotation starts
+		for (Team team : schedule.getTeams()) {
+			if (team.getRotationStart() != null && team.getRotationStart().isAfter(fromDay)) {
+				fromDay = team.getRotationStart();
+			}
+		}
+
+		List<ShiftInstance> timeline = new ArrayList<>();
+
+		// each day's instances are already sorted
+		for (LocalDate day = fromDay; !day.isAfter(toDay); day = day.plusDays(1)) {
+			timeline.addAll(schedule.getShiftInstancesForDay(day));
+		}
+
+		// a shift is at most one day long, so the first day can only be reached
+		// from the day before it
+		return new ShiftCalendar(fromDay.plusDays(1), toDay, timeline);
+	}
+
+	/**
+	 * Check to see if the instances in effect at this time are in the calendar.
+	 * A time before the second day of every team's rotation is not covered.
+	 *
+	 * @param dateTime Date and time of day
+	 * @return True if covered
+	 */
+	boolean covers(LocalDateTime dateTime) {
+		LocalDate day = dateTime.toLocalDate();
+		return !day.isBefore(firstDay) && !day.isAfter(lastDay);
+	}
+
+	/**
+	 * Get the shift instances in effect at this time sorted by start time. The
+	 * start and end of an instance are both inclusive.
+	 *
+	 * @param dateTime Date and time of day
+	 * @return List of {@link ShiftInstance}
+	 */
+	List<ShiftInstance> getShiftInstancesForTime(LocalDateTime dateTime) {
+		long time = toNanos(dateTime);
+
+		// last instance starting at or before the time
+		int high = upperBound(time) - 1;
+
+		// earliest start that can still be in effect
+		long earliest = time - maxDuration;
+
+		int low = high;
+		while (low >= 0 && starts[low] >= earliest) {
+			low--;
+		}
+
+		List<ShiftInstance> workingShifts = new ArrayList<>(2);
+
+		for (int i = low + 1; i <= high; i++) {
+			if (ends[i] >= time) {
+				workingShifts.add(instances[i]);
+			}
+		}
+		return workingShifts;
+	}
+
+	int size() {
+		return instances.length;
+	}
+
+	// index of the first instance starting after the time
+	private int upperBound(long time) {
+		int low = 0;
+		int high = starts.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (starts[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static long toNanos(LocalDateTime dateTime) {
+		return dateTime.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + dateTime.getNano();
+	}
+}
@@ -95,6 +95,10 @@ public class Team extends Named implements Comparable<Team> {
 	 */
 	public void setRotationStart(LocalDate rotationStart) {
 		this.rotationStart = rotationStart;
+
+		if (workSchedule != null) {
+			workSchedule.invalidateShiftCalendar();
+		}
 	}
 
 	private long getDayFrom() {
@@ -117,6 +121,10 @@ public class Team extends Named implements Comparable<Team> {
 	 */
 	public void setRotation(Rotation rotation) {
 		this.rotation = rotation;
+
+		if (workSchedule != null) {
+			workSchedule.invalidateShiftCalendar();
+		}
 	}
 
 	/**
@@ -35,12 +35,15 @@ import java.util.Collections;
 import java.util.List;
 
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.point85.domain.i18n.DomainLocalizer;
 import org.point85.domain.oee.TimeLoss;
 import org.point85.domain.plant.NamedObject;
@@ -56,6 +59,8 @@ import org.point85.domain.plant.NamedObject;
 @Entity
 @Table(name = "WORK_SCHEDULE")
 @AttributeOverride(name = "primaryKey", column = @Column(name = "WS_KEY"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 public class WorkSchedule extends NamedObject {
 	// cached UTC time zone for working time calculations
@@ -77,6 +82,9 @@ public class WorkSchedule extends NamedObject {
 	@OneToMany(mappedBy = "workSchedule", cascade = CascadeType.ALL, orphanRemoval = true)
 	private final List<Rotation> rotations = new ArrayList<>();
 
+	// materialized shift instances for time lookups
+	private transient volatile ShiftCalendar shiftCalendar;
+
 	public WorkSchedule() {
 		super();
 	}
@@ -100,6 +108,7 @@ public class WorkSchedule extends NamedObject {
 	public void deleteTeam(Team team) {
 		if (teams.contains(team)) {
 			teams.remove(team);
+			invalidateShiftCalendar();
 		}
 	}
 
@@ -120,6 +129,7 @@ public class WorkSchedule extends NamedObject {
 	public void deleteExceptionPeriod(ExceptionPeriod period) {
 		if (this.exceptionPeriods.contains(period)) {
 			this.exceptionPeriods.remove(period);
+			invalidateShiftCalendar();
 		}
 	}
 
@@ -241,6 +251,22 @@ public class WorkSchedule extends NamedObject {
 	 * @throws Exception exception
 	 */
 	public List<ShiftInstance> getShiftInstancesForTime(LocalDateTime dateTime) throws Exception {
+		ShiftCalendar calendar = shiftCalendar;
+
+		if (calendar == null || !calendar.covers(dateTime)) {
+			// rebuild around this time
+			calendar = ShiftCalendar.build(this, dateTime.toLocalDate(), ShiftCalendar.DEFAULT_HORIZON_DAYS);
+			shiftCalendar = calendar;
+
+			if (!calendar.covers(dateTime)) {
+				// before a rotation start
+				return getShiftInstancesForTimeByDay(dateTime);
+			}
+		}
+		return calendar.getShiftInstancesForTime(dateTime);
+	}
+
+	private List<ShiftInstance> getShiftInstancesForTimeByDay(LocalDateTime dateTime) throws Exception {
 		List<ShiftInstance> workingShifts = new ArrayList<>();
 
 		// shifts from this date and yesterday
@@ -257,6 +283,17 @@ public class WorkSchedule extends NamedObject {
 		return workingShifts;
 	}
 
+	/**
+	 * Discard the materialized shift instances used by
+	 * {@link #getShiftInstancesForTime(LocalDateTime)}. They are rebuilt on the
+	 * next lookup. The schedule's own methods do this when a team, shift or
+	 * exception period changes. Call it after editing a rotation, a shift or one
+	 * of the schedule's lists directly.
+	 */
+	public void invalidateShiftCalendar() {
+		shiftCalendar = null;
+	}
+
 	/**
 	 * Create a team
 	 * 
@@ -277,6 +314,7 @@ public class WorkSchedule extends NamedObject {
 
 		teams.add(team);
 		team.setWorkSchedule(this);
+		invalidateShiftCalendar();
 		return team;
 	}
 
@@ -297,6 +335,7 @@ public class WorkSchedule extends NamedObject {
 
 		rotations.add(rotation);
 		rotation.setWorkSchedule(this);
+		invalidateShiftCalendar();
 		return rotation;
 	}
 
@@ -318,6 +357,7 @@ public class WorkSchedule extends NamedObject {
 		}
 		shifts.add(shift);
 		shift.setWorkSchedule(this);
+		invalidateShiftCalendar();
 		return shift;
 	}
 
@@ -346,6 +386,7 @@ public class WorkSchedule extends NamedObject {
 		}
 
 		shifts.remove(shift);
+		invalidateShiftCalendar();
 	}
 
 	/**
@@ -370,6 +411,7 @@ public class WorkSchedule extends NamedObject {
 		exceptionPeriods.add(period);
 
 		Collections.sort(exceptionPeriods);
+		invalidateShiftCalendar();
 
 		return period;
 	}
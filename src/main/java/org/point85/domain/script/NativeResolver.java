@@ -0,0 +1,22 @@
+package org.point85.domain.script;
+
+/**
+ * A NativeResolver is a Java implementation of an event resolver script. It
+ * receives the same arguments as a JavaScript resolver function and returns the
+ * same result. A null result means that the input value is to be ignored.
+ * Implementations are shared by all collector threads and must be thread-safe.
+ *
+ */
+@FunctionalInterface
+public interface NativeResolver {
+	/**
+	 * Resolve the input value
+	 *
+	 * @param context  {@link OeeContext}
+	 * @param value    Input value from the data source
+	 * @param resolver {@link EventResolver}
+	 * @return Output value or null
+	 * @throws Exception Exception
+	 */
+	Object resolve(OeeContext context, Object value, EventResolver resolver) throws Exception;
+}
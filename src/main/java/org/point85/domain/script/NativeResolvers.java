@@ -0,0 +1,107 @@
+package org.point85.domain.script;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.point85.domain.i18n.DomainLocalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the {@link ResolverProvider}s on the class path
+ *
+ */
+public final class NativeResolvers {
+	// logger
+	private static final Logger logger = LoggerFactory.getLogger(NativeResolvers.class);
+
+	// script prefix for a native resolver
+	public static final String PREFIX = "java:";
+
+	// providers by name
+	private static final Map<String, ResolverProvider> providers = new ConcurrentHashMap<>();
+
+	private static volatile boolean loaded = false;
+
+	private NativeResolvers() {
+	}
+
+	private static synchronized void loadProviders() {
+		if (loaded) {
+			return;
+		}
+
+		for (ResolverProvider provider : ServiceLoader.load(ResolverProvider.class)) {
+			providers.putIfAbsent(provider.getName(), provider);
+
+			if (logger.isInfoEnabled()) {
+				logger.info("Registered native resolver " + provider.getName() + " from " + provider.getClass().getName());
+			}
+		}
+		loaded = true;
+	}
+
+	/**
+	 * Determine if the resolver script refers to a native resolver
+	 *
+	 * @param script Resolver script
+	 * @return True if native
+	 */
+	public static boolean isNative(String script) {
+		return script != null && script.trim().startsWith(PREFIX);
+	}
+
+	/**
+	 * Create the native resolver referenced by the script
+	 *
+	 * @param script Script of the form "java:name configuration"
+	 * @return {@link NativeResolver}
+	 * @throws Exception Exception
+	 */
+	public static NativeResolver create(String script) throws Exception {
+		if (!loaded) {
+			loadProviders();
+		}
+
+		String reference = script.trim().substring(PREFIX.length()).trim();
+
+		String name = reference;
+		String configuration = "";
+
+		int idx = indexOfWhitespace(reference);
+
+		if (idx != -1) {
+			name = reference.substring(0, idx);
+			configuration = reference.substring(idx + 1).trim();
+		}
+
+		ResolverProvider provider = providers.get(name);
+
+		if (provider == null) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("no.native.resolver", name));
+		}
+		return provider.create(configuration);
+	}
+
+	/**
+	 * Register a provider that is not on the service path
+	 *
+	 * @param provider {@link ResolverProvider}
+	 */
+	public static void register(ResolverProvider provider) {
+		if (!loaded) {
+			loadProviders();
+		}
+		providers.put(provider.getName(), provider);
+	}
+
+	private static int indexOfWhitespace(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
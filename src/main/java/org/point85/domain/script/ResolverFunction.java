@@ -4,6 +4,8 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
 
@@ -98,6 +100,30 @@ public class ResolverFunction {
 		return ((Invocable) engine).invokeFunction(getName(), args);
 	}
 
+	// compile the script once and evaluate it to a function object
+	public Object compile(ScriptEngine engine) throws Exception {
+		if (scriptFunction == null || scriptFunction.length() == 0) {
+			return null;
+		}
+
+		// declare the function and return a reference to it
+		CompiledScript compiled = ((Compilable) engine).compile(scriptFunction + "\n" + getName() + ";");
+		return compiled.eval();
+	}
+
+	// call a function object returned from compile()
+	public static Object invokeCompiled(ScriptEngine engine, Object function, Object... args) throws Exception {
+		if (function == null) {
+			return null;
+		}
+
+		Object[] callArgs = new Object[args.length + 1];
+		System.arraycopy(args, 0, callArgs, 1, args.length);
+
+		// Function.prototype.call with an undefined 'this'
+		return ((Invocable) engine).invokeMethod(function, "call", callArgs);
+	}
+
 	public static String functionFromBody(String script) {
 		return "function " + ResolverFunction.generateFunctionName() + "(context, value, resolver) {" + script + "}";
 	}
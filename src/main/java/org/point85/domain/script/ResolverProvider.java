@@ -0,0 +1,26 @@
+package org.point85.domain.script;
+
+/**
+ * A ResolverProvider creates {@link NativeResolver}s. Providers are discovered
+ * with the {@link java.util.ServiceLoader} and are registered in
+ * META-INF/services/org.point85.domain.script.ResolverProvider. A resolver
+ * script of the form "java:name configuration" selects the provider by name.
+ *
+ */
+public interface ResolverProvider {
+	/**
+	 * Get the name used in a resolver script
+	 *
+	 * @return Provider name
+	 */
+	String getName();
+
+	/**
+	 * Create a resolver
+	 *
+	 * @param configuration Text following the name in the script, possibly empty
+	 * @return {@link NativeResolver}
+	 * @throws Exception Exception
+	 */
+	NativeResolver create(String configuration) throws Exception;
+}
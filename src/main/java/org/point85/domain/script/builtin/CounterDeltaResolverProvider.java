@@ -0,0 +1,85 @@
+package org.point85.domain.script.builtin;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.point85.domain.i18n.DomainLocalizer;
+import org.point85.domain.script.EventResolver;
+import org.point85.domain.script.NativeResolver;
+import org.point85.domain.script.OeeContext;
+import org.point85.domain.script.ResolverProvider;
+
+/**
+ * Converts a cumulative counter into the amount produced since the previous
+ * reading. The first reading is ignored. A smaller reading is a counter reset
+ * and counts from zero, or from the rollover value if one is configured.
+ * Script: "java:delta" or "java:delta rollover=65536"
+ *
+ */
+public class CounterDeltaResolverProvider implements ResolverProvider {
+	public static final String NAME = "delta";
+
+	private static final String ROLLOVER = "rollover";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public NativeResolver create(String configuration) throws Exception {
+		double rollover = 0;
+
+		if (configuration.length() > 0) {
+			String[] setting = configuration.split("=");
+
+			if (setting.length != 2 || !setting[0].trim().equals(ROLLOVER)) {
+				throw new Exception(
+						DomainLocalizer.instance().getErrorString("invalid.native.config", configuration, NAME));
+			}
+			rollover = Double.parseDouble(setting[1].trim());
+		}
+
+		return new CounterDelta(rollover);
+	}
+
+	// the previous raw reading is kept here, since the collector replaces the
+	// last value of a production resolver with its result
+	private static class CounterDelta implements NativeResolver {
+		private final double rollover;
+
+		// previous reading by equipment and source id
+		private final Map<List<Object>, Double> readings = new ConcurrentHashMap<>();
+
+		private CounterDelta(double rollover) {
+			this.rollover = rollover;
+		}
+
+		@Override
+		public Object resolve(OeeContext context, Object value, EventResolver resolver) throws Exception {
+			double current = toDouble(value);
+			Double previous = readings.put(Arrays.asList(resolver.getEquipment(), resolver.getSourceId()), current);
+
+			if (previous == null) {
+				// no previous reading
+				return null;
+			}
+
+			if (current >= previous) {
+				return current - previous;
+			}
+
+			// counter reset
+			return rollover > 0 ? (rollover - previous) + current : current;
+		}
+	}
+
+	static double toDouble(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		return Double.parseDouble(value.toString().trim());
+	}
+}
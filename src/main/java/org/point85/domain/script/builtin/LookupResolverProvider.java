@@ -0,0 +1,65 @@
+package org.point85.domain.script.builtin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.point85.domain.i18n.DomainLocalizer;
+import org.point85.domain.script.NativeResolver;
+import org.point85.domain.script.ResolverProvider;
+
+/**
+ * Maps an input value to an output value, typically a numeric code to a reason
+ * name. Script: "java:lookup 1=Running;2=Blocked;default=Unknown". Without a
+ * default entry an unmapped value is ignored.
+ *
+ */
+public class LookupResolverProvider implements ResolverProvider {
+	public static final String NAME = "lookup";
+
+	// key for an unmapped value
+	public static final String DEFAULT_KEY = "default";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public NativeResolver create(String configuration) throws Exception {
+		Map<String, String> table = new HashMap<>();
+
+		for (String entry : configuration.split(";")) {
+			if (entry.trim().length() == 0) {
+				continue;
+			}
+
+			int idx = entry.indexOf('=');
+
+			if (idx == -1) {
+				throw new Exception(DomainLocalizer.instance().getErrorString("invalid.native.config", entry, NAME));
+			}
+			table.put(normalize(entry.substring(0, idx).trim()), entry.substring(idx + 1).trim());
+		}
+
+		String defaultValue = table.remove(DEFAULT_KEY);
+
+		return (context, value, resolver) -> {
+			String output = table.get(normalize(value.toString()));
+			return output != null ? output : defaultValue;
+		};
+	}
+
+	// "1", "1.0" and 1.0 are the same key
+	static String normalize(String key) {
+		try {
+			double number = Double.parseDouble(key);
+
+			if (number == Math.rint(number) && !Double.isInfinite(number)) {
+				return Long.toString((long) number);
+			}
+			return Double.toString(number);
+		} catch (NumberFormatException e) {
+			return key;
+		}
+	}
+}
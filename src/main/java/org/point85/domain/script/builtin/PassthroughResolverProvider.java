@@ -0,0 +1,22 @@
+package org.point85.domain.script.builtin;
+
+import org.point85.domain.script.NativeResolver;
+import org.point85.domain.script.ResolverProvider;
+
+/**
+ * Returns the input value unchanged. Script: "java:passthrough"
+ *
+ */
+public class PassthroughResolverProvider implements ResolverProvider {
+	public static final String NAME = "passthrough";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public NativeResolver create(String configuration) throws Exception {
+		return (context, value, resolver) -> value;
+	}
+}
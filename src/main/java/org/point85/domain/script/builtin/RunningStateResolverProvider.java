@@ -0,0 +1,48 @@
+package org.point85.domain.script.builtin;
+
+import org.point85.domain.i18n.DomainLocalizer;
+import org.point85.domain.script.NativeResolver;
+import org.point85.domain.script.ResolverProvider;
+
+/**
+ * Maps a boolean input to a running or stopped reason. Numbers other than zero
+ * and the strings "true", "on" and "1" are running. Script:
+ * "java:running Running;Stopped" where the two reason names are the running
+ * and stopped reasons.
+ *
+ */
+public class RunningStateResolverProvider implements ResolverProvider {
+	public static final String NAME = "running";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public NativeResolver create(String configuration) throws Exception {
+		String[] reasons = configuration.split(";");
+
+		if (reasons.length != 2 || reasons[0].trim().length() == 0 || reasons[1].trim().length() == 0) {
+			throw new Exception(DomainLocalizer.instance().getErrorString("invalid.native.config", configuration, NAME));
+		}
+
+		final String runningReason = reasons[0].trim();
+		final String stoppedReason = reasons[1].trim();
+
+		return (context, value, resolver) -> isRunning(value) ? runningReason : stoppedReason;
+	}
+
+	static boolean isRunning(Object value) {
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue() != 0;
+		}
+
+		String text = value.toString().trim();
+		return text.equalsIgnoreCase("true") || text.equalsIgnoreCase("on") || text.equals("1");
+	}
+}
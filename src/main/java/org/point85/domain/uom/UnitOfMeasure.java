@@ -34,6 +34,7 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.AttributeOverride;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -43,6 +44,8 @@ import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.point85.domain.i18n.DomainLocalizer;
 import org.point85.domain.plant.NamedObject;
 
@@ -97,6 +100,8 @@ import org.point85.domain.plant.NamedObject;
 @Entity
 @Table(name = "UOM")
 @AttributeOverride(name = "primaryKey", column = @Column(name = "UOM_KEY"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 public class UnitOfMeasure extends NamedObject {
 	// root UOM (not persistent)
@@ -0,0 +1,133 @@
+package org.point85.domain.collector.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.point85.domain.collector.EventPipeline;
+import org.point85.domain.collector.OverloadPolicy;
+
+public class TestEventPipeline {
+	private static final String KEY = "equipment";
+
+	private EventPipeline pipeline;
+
+	// values in the order run
+	private final List<String> values = Collections.synchronizedList(new ArrayList<>());
+
+	// holds the lane busy until released
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@After
+	public void shutdown() {
+		release.countDown();
+
+		if (pipeline != null) {
+			pipeline.shutdown(1000);
+		}
+	}
+
+	private void blockLane() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+
+		pipeline.execute(KEY, () -> {
+			started.countDown();
+
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+	}
+
+	private void offer(String sourceId, OverloadPolicy policy, String value) {
+		pipeline.execute(KEY, sourceId, policy, () -> values.add(value));
+	}
+
+	private void drain() throws Exception {
+		CountDownLatch done = new CountDownLatch(1);
+
+		release.countDown();
+		pipeline.execute(KEY, done::countDown);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCoalesceOnlyWhenFull() throws Exception {
+		pipeline = new EventPipeline(1, 3);
+		blockLane();
+
+		// room in the lane, every value is kept
+		offer("a", OverloadPolicy.COALESCE, "a1");
+		offer("a", OverloadPolicy.COALESCE, "a2");
+		offer("b", OverloadPolicy.COALESCE, "b1");
+
+		// full, the latest queued value for the source is replaced in place
+		offer("a", OverloadPolicy.COALESCE, "a3");
+
+		assertEquals(1, pipeline.getCoalescedCount());
+		assertEquals(0, pipeline.getDroppedCount());
+
+		drain();
+		assertEquals(Arrays.asList("a1", "a3", "b1"), values);
+	}
+
+	@Test
+	public void testCoalesceNewSourceDropsOldest() throws Exception {
+		pipeline = new EventPipeline(1, 2);
+		blockLane();
+
+		offer("a", OverloadPolicy.COALESCE, "a1");
+		offer("b", OverloadPolicy.COALESCE, "b1");
+
+		// no queued value for this source
+		offer("c", OverloadPolicy.COALESCE, "c1");
+
+		assertEquals(0, pipeline.getCoalescedCount());
+		assertEquals(1, pipeline.getDroppedCount());
+
+		drain();
+		assertEquals(Arrays.asList("b1", "c1"), values);
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		pipeline = new EventPipeline(1, 2);
+		blockLane();
+
+		offer("a", OverloadPolicy.DROP_OLDEST, "a1");
+		offer("a", OverloadPolicy.DROP_OLDEST, "a2");
+		offer("a", OverloadPolicy.DROP_OLDEST, "a3");
+
+		assertEquals(1, pipeline.getDroppedCount());
+
+		drain();
+		assertEquals(Arrays.asList("a2", "a3"), values);
+	}
+
+	@Test
+	public void testOrderPerKey() throws Exception {
+		pipeline = new EventPipeline(4, 100);
+
+		for (int i = 0; i < 50; i++) {
+			offer("a", OverloadPolicy.BLOCK, Integer.toString(i));
+		}
+		drain();
+
+		assertEquals(50, values.size());
+
+		for (int i = 0; i < 50; i++) {
+			assertEquals(Integer.toString(i), values.get(i));
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package org.point85.domain.oee.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+import org.junit.Test;
+import org.point85.domain.oee.EquipmentLoss;
+import org.point85.domain.oee.TimeLoss;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.plant.Reason;
+import org.point85.domain.uom.MeasurementSystem;
+import org.point85.domain.uom.Quantity;
+import org.point85.domain.uom.Unit;
+import org.point85.domain.uom.UnitOfMeasure;
+
+public class TestEquipmentLoss {
+	private static final float DELTA = 0.001f;
+
+	private static Reason createReason(String name, TimeLoss category) {
+		Reason reason = new Reason(name, name);
+		reason.setLossCategory(category);
+		return reason;
+	}
+
+	private static Duration minutes(long minutes) {
+		return Duration.ofMinutes(minutes);
+	}
+
+	// an 8 hour period with a loss in each time category up to net production
+	private EquipmentLoss createLoss() throws Exception {
+		EquipmentLoss loss = new EquipmentLoss(new Equipment("Filler", "Filler"));
+
+		OffsetDateTime start = OffsetDateTime.now().withNano(0);
+		loss.setStartDateTime(start);
+		loss.setEndDateTime(start.plusHours(8));
+
+		loss.incrementLoss(createReason("No orders", TimeLoss.NOT_SCHEDULED), minutes(30));
+		loss.incrementLoss(createReason("Holiday", TimeLoss.UNSCHEDULED), minutes(30));
+		loss.incrementLoss(createReason("Break", TimeLoss.PLANNED_DOWNTIME), minutes(20));
+		loss.incrementLoss(createReason("Changeover", TimeLoss.SETUP), minutes(20));
+		loss.incrementLoss(createReason("Jam", TimeLoss.UNPLANNED_DOWNTIME), minutes(20));
+		loss.incrementLoss(createReason("Breakdown", TimeLoss.UNPLANNED_DOWNTIME), minutes(10));
+		loss.incrementLoss(createReason("Blocked", TimeLoss.MINOR_STOPPAGES), minutes(10));
+
+		// 10 units a minute
+		MeasurementSystem sys = MeasurementSystem.instance();
+		UnitOfMeasure one = sys.getUOM(Unit.ONE);
+		UnitOfMeasure perMinute = sys.createQuotientUOM(one, sys.getUOM(Unit.MINUTE));
+		loss.setDesignSpeed(new Quantity(10.0d, perMinute));
+
+		// 240, 10 and 5 minutes at the design speed
+		loss.setGoodQuantity(new Quantity(2400.0d, one));
+		loss.setRejectQuantity(new Quantity(100.0d, one));
+		loss.setStartupQuantity(new Quantity(50.0d, one));
+
+		return loss;
+	}
+
+	@Test
+	public void testTimes() throws Exception {
+		EquipmentLoss loss = createLoss();
+
+		assertEquals(minutes(480), loss.getDuration());
+		assertEquals(minutes(450), loss.getRequiredOperationsTime());
+		assertEquals(minutes(420), loss.getAvailableTime());
+		assertEquals(minutes(400), loss.getScheduledProductionTime());
+		assertEquals(minutes(380), loss.getProductionTime());
+		assertEquals(minutes(350), loss.getReportedProductionTime());
+		assertEquals(minutes(340), loss.getNetProductionTime());
+
+		// no quantity losses yet
+		assertEquals(minutes(340), loss.getValueAddingTime());
+	}
+
+	@Test
+	public void testReasonsByCategory() throws Exception {
+		EquipmentLoss loss = createLoss();
+
+		assertEquals(minutes(30), loss.getLoss(TimeLoss.UNPLANNED_DOWNTIME));
+
+		Map<Reason, Duration> reasons = loss.getLossReasonsByCategory(TimeLoss.UNPLANNED_DOWNTIME);
+		assertEquals(2, reasons.size());
+		assertEquals(minutes(20), reasons.get(createReason("Jam", TimeLoss.UNPLANNED_DOWNTIME)));
+		assertEquals(minutes(10), reasons.get(createReason("Breakdown", TimeLoss.UNPLANNED_DOWNTIME)));
+
+		assertTrue(loss.getLossReasonsByCategory(TimeLoss.REDUCED_SPEED).isEmpty());
+	}
+
+	@Test
+	public void testReducedSpeedLoss() throws Exception {
+		EquipmentLoss loss = createLoss();
+		loss.calculateReducedSpeedLoss();
+
+		assertEquals(minutes(240), loss.getLoss(TimeLoss.NO_LOSS));
+		assertEquals(minutes(10), loss.getLoss(TimeLoss.REJECT_REWORK));
+		assertEquals(minutes(5), loss.getLoss(TimeLoss.STARTUP_YIELD));
+
+		// net production less good and quality time
+		assertEquals(minutes(85), loss.getLoss(TimeLoss.REDUCED_SPEED));
+
+		assertEquals(minutes(255), loss.getEfficientNetProductionTime());
+		assertEquals(minutes(245), loss.getEffectiveNetProductionTime());
+		assertEquals(minutes(240), loss.getValueAddingTime());
+	}
+
+	@Test
+	public void testPercentages() throws Exception {
+		EquipmentLoss loss = createLoss();
+		loss.calculateReducedSpeedLoss();
+
+		// value adding over available
+		assertEquals(240.0f / 420.0f * 100.0f, loss.calculateOeePercentage(), DELTA);
+
+		// reported production over available
+		assertEquals(350.0f / 420.0f * 100.0f, loss.calculateAvailabilityPercentage(), DELTA);
+
+		// efficient net over reported production
+		assertEquals(255.0f / 350.0f * 100.0f, loss.calculatePerformancePercentage(), DELTA);
+
+		// value adding over efficient net
+		assertEquals(240.0f / 255.0f * 100.0f, loss.calculateQualityPercentage(), DELTA);
+
+		// the product of the three
+		float product = loss.calculateAvailabilityPercentage() * loss.calculatePerformancePercentage()
+				* loss.calculateQualityPercentage() / 10000.0f;
+		assertEquals(loss.calculateOeePercentage(), product, DELTA);
+	}
+
+	@Test
+	public void testNoTime() throws Exception {
+		EquipmentLoss loss = new EquipmentLoss(new Equipment("Capper", "Capper"));
+
+		assertEquals(Duration.ZERO, loss.getAvailableTime());
+		assertEquals(0.0f, loss.calculateOeePercentage(), DELTA);
+		assertEquals(0.0f, loss.calculateAvailabilityPercentage(), DELTA);
+		assertEquals(0.0f, loss.calculatePerformancePercentage(), DELTA);
+		assertEquals(0.0f, loss.calculateQualityPercentage(), DELTA);
+	}
+}
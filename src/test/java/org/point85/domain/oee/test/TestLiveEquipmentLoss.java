@@ -0,0 +1,127 @@
+package org.point85.domain.oee.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+
+import org.junit.Test;
+import org.point85.domain.collector.OeeEvent;
+import org.point85.domain.oee.EquipmentLoss;
+import org.point85.domain.oee.LiveEquipmentLoss;
+import org.point85.domain.oee.TimeLoss;
+import org.point85.domain.plant.EntitySchedule;
+import org.point85.domain.plant.Equipment;
+import org.point85.domain.plant.Reason;
+import org.point85.domain.schedule.Rotation;
+import org.point85.domain.schedule.Shift;
+import org.point85.domain.schedule.WorkSchedule;
+import org.point85.domain.script.OeeEventType;
+
+public class TestLiveEquipmentLoss {
+	private final Reason unplanned = createReason("Jam", TimeLoss.UNPLANNED_DOWNTIME);
+	private final Reason planned = createReason("Break", TimeLoss.PLANNED_DOWNTIME);
+
+	private static Reason createReason(String name, TimeLoss category) {
+		Reason reason = new Reason(name, name);
+		reason.setLossCategory(category);
+		return reason;
+	}
+
+	// a day and a night shift every day
+	private Equipment createEquipment() throws Exception {
+		WorkSchedule schedule = new WorkSchedule("Two shifts", "Two 12 hr shifts");
+
+		Shift day = schedule.createShift("Day", "Day shift", LocalTime.of(6, 0), Duration.ofHours(12));
+		Shift night = schedule.createShift("Night", "Night shift", LocalTime.of(18, 0), Duration.ofHours(12));
+
+		Rotation dayRotation = schedule.createRotation("Day", "Day");
+		dayRotation.addSegment(day, 1, 0);
+
+		Rotation nightRotation = schedule.createRotation("Night", "Night");
+		nightRotation.addSegment(night, 1, 0);
+
+		LocalDateTime now = LocalDateTime.now();
+		schedule.createTeam("A", "Day team", dayRotation, now.toLocalDate().minusDays(30));
+		schedule.createTeam("B", "Night team", nightRotation, now.toLocalDate().minusDays(30));
+
+		Equipment equipment = new Equipment("Filler", "Filler");
+		equipment.addEntitySchedule(new EntitySchedule(equipment, schedule, now.minusDays(30), now.plusDays(30)));
+		return equipment;
+	}
+
+	private OeeEvent createEvent(Equipment equipment, Reason reason, OffsetDateTime start, Duration duration) {
+		OeeEvent event = new OeeEvent(equipment);
+		event.setEventType(OeeEventType.AVAILABILITY);
+		event.setReason(reason);
+		event.setStartTime(start);
+
+		if (duration != null) {
+			event.setEndTime(start.plus(duration));
+			event.setDuration(duration);
+		}
+		return event;
+	}
+
+	@Test
+	public void testLateEventKeepsShiftWindow() throws Exception {
+		Equipment equipment = createEquipment();
+		LiveEquipmentLoss live = new LiveEquipmentLoss(equipment);
+
+		OffsetDateTime shiftStart = live.getShiftLoss().getStartDateTime();
+
+		live.record(createEvent(equipment, unplanned, shiftStart, Duration.ofMinutes(10)));
+
+		// in the previous shift
+		live.record(createEvent(equipment, unplanned, shiftStart.minusHours(1), Duration.ofMinutes(30)));
+
+		EquipmentLoss shiftLoss = live.getShiftLoss();
+		assertEquals(shiftStart, shiftLoss.getStartDateTime());
+		assertEquals(Duration.ofMinutes(10), shiftLoss.getLoss(TimeLoss.UNPLANNED_DOWNTIME));
+
+		// only the part in the current shift is counted
+		live.record(createEvent(equipment, unplanned, shiftStart.minusMinutes(5), Duration.ofMinutes(15)));
+
+		shiftLoss = live.getShiftLoss();
+		assertEquals(shiftStart, shiftLoss.getStartDateTime());
+		assertEquals(Duration.ofMinutes(20), shiftLoss.getLoss(TimeLoss.UNPLANNED_DOWNTIME));
+	}
+
+	@Test
+	public void testLateEventKeepsDayWindow() throws Exception {
+		Equipment equipment = new Equipment("Capper", "Capper");
+		LiveEquipmentLoss live = new LiveEquipmentLoss(equipment);
+
+		OffsetDateTime dayStart = live.getDayLoss().getStartDateTime();
+
+		live.record(createEvent(equipment, unplanned, dayStart, Duration.ofMinutes(10)));
+		live.record(createEvent(equipment, unplanned, dayStart.minusHours(2), Duration.ofMinutes(30)));
+
+		EquipmentLoss dayLoss = live.getDayLoss();
+		assertEquals(dayStart, dayLoss.getStartDateTime());
+		assertEquals(Duration.ofMinutes(10), dayLoss.getLoss(TimeLoss.UNPLANNED_DOWNTIME));
+	}
+
+	@Test
+	public void testLateOpenReasonKeepsReasonInEffect() throws Exception {
+		Equipment equipment = new Equipment("Labeler", "Labeler");
+		LiveEquipmentLoss live = new LiveEquipmentLoss(equipment);
+
+		OffsetDateTime now = OffsetDateTime.now();
+		OffsetDateTime dayStart = live.getDayLoss().getStartDateTime();
+		assumeTrue(Duration.between(dayStart, now).toMinutes() > 10);
+
+		OffsetDateTime start = now.minusMinutes(5);
+		live.record(createEvent(equipment, unplanned, start, null));
+
+		// ended when the reason in effect started
+		live.record(createEvent(equipment, planned, start.minusMinutes(2), null));
+
+		EquipmentLoss dayLoss = live.getDayLoss();
+		assertEquals(Duration.ofMinutes(2), dayLoss.getLoss(TimeLoss.PLANNED_DOWNTIME));
+		assertEquals(5, dayLoss.getLoss(TimeLoss.UNPLANNED_DOWNTIME).toMinutes());
+	}
+}
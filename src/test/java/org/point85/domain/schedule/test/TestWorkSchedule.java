@@ -32,6 +32,7 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -978,4 +979,74 @@ public class TestWorkSchedule extends BaseTest {
 		duration = schedule.calculateWorkingTime(from, to);
 		assertTrue(duration.equals(Duration.ofHours(48)));
 	}
+
+	@Test
+	public void testShiftInstancesForTime() throws Exception {
+		schedule = new WorkSchedule("Shift Calendar", "Test shift instance lookup");
+
+		// overlapping day and night shifts with a shift ending at midnight
+		Shift day = schedule.createShift("Day", "Day shift", LocalTime.of(7, 0, 0), Duration.ofHours(10));
+		Shift night = schedule.createShift("Night", "Night shift", LocalTime.of(16, 0, 0), Duration.ofHours(16));
+		Shift late = schedule.createShift("Late", "Late shift", LocalTime.of(12, 0, 0), Duration.ofHours(12));
+
+		Rotation dayRotation = schedule.createRotation("Day", "Day");
+		dayRotation.addSegment(day, 5, 2);
+
+		Rotation nightRotation = schedule.createRotation("Night", "Night");
+		nightRotation.addSegment(night, 3, 1);
+
+		Rotation lateRotation = schedule.createRotation("Late", "Late");
+		lateRotation.addSegment(late, 2, 2);
+
+		LocalDate rotationStart = LocalDate.of(2020, 1, 6);
+
+		schedule.createTeam("A", "Day team", dayRotation, rotationStart);
+		Team teamB = schedule.createTeam("B", "Night team", nightRotation, rotationStart);
+		schedule.createTeam("C", "Late team", lateRotation, rotationStart);
+
+		schedule.createExceptionPeriod("Holiday", "Holiday", LocalDateTime.of(2020, 1, 20, 0, 0, 0),
+				Duration.ofHours(24), TimeLoss.NOT_SCHEDULED);
+
+		// every half hour over a window wider than the calendar horizon
+		LocalDateTime start = LocalDateTime.of(2020, 1, 8, 0, 0, 0);
+		for (LocalDateTime dateTime = start; dateTime.isBefore(start.plusDays(90)); dateTime = dateTime
+				.plusMinutes(30)) {
+			checkShiftInstances(dateTime);
+			checkShiftInstances(dateTime.plusNanos(1));
+			checkShiftInstances(dateTime.minusNanos(1));
+		}
+
+		// a schedule change is seen by the next lookup
+		LocalDateTime dateTime = LocalDateTime.of(2020, 1, 10, 20, 0, 0);
+		assertTrue(schedule.getShiftInstancesForTime(dateTime).size() == 2);
+
+		teamB.setRotationStart(rotationStart.plusDays(1));
+		assertTrue(schedule.getShiftInstancesForTime(dateTime).size() == 1);
+		checkShiftInstances(dateTime);
+
+		teamB.setRotationStart(rotationStart);
+
+		schedule.deleteTeam(teamB);
+		assertTrue(schedule.getShiftInstancesForTime(dateTime).size() == 1);
+		checkShiftInstances(dateTime);
+	}
+
+	// compare the lookup with the instances worked on the day
+	private void checkShiftInstances(LocalDateTime dateTime) throws Exception {
+		List<ShiftInstance> expected = new ArrayList<>();
+
+		for (ShiftInstance instance : schedule.getAllShiftInstancesForDay(dateTime.toLocalDate())) {
+			if (instance.isInShiftInstance(dateTime)) {
+				expected.add(instance);
+			}
+		}
+
+		List<ShiftInstance> instances = schedule.getShiftInstancesForTime(dateTime);
+		assertTrue(instances.size() == expected.size());
+
+		for (int i = 0; i < instances.size(); i++) {
+			assertTrue(instances.get(i).getTeam().equals(expected.get(i).getTeam()));
+			assertTrue(instances.get(i).getStartTime().equals(expected.get(i).getStartTime()));
+		}
+	}
 }
@@ -0,0 +1,69 @@
+package org.point85.domain.script.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.point85.domain.script.EventResolver;
+import org.point85.domain.script.NativeResolver;
+import org.point85.domain.script.NativeResolvers;
+
+public class TestNativeResolvers {
+	private static final double DELTA = 1.0E-09;
+
+	private EventResolver createResolver(String sourceId) {
+		EventResolver resolver = new EventResolver();
+		resolver.setSourceId(sourceId);
+		return resolver;
+	}
+
+	// invoke as the collector does, replacing the last value with the result
+	private Object resolve(NativeResolver nativeResolver, EventResolver resolver, Object value) throws Exception {
+		Object result = nativeResolver.resolve(null, value, resolver);
+		resolver.setLastValue(result != null ? result : value);
+		return result;
+	}
+
+	@Test
+	public void testCounterDelta() throws Exception {
+		NativeResolver delta = NativeResolvers.create("java:delta");
+		EventResolver resolver = createResolver("counter");
+
+		// first reading
+		assertNull(resolve(delta, resolver, 100));
+
+		assertEquals(10.0, (Double) resolve(delta, resolver, 110), DELTA);
+		assertEquals(10.0, (Double) resolve(delta, resolver, "120"), DELTA);
+		assertEquals(5.0, (Double) resolve(delta, resolver, 125.0d), DELTA);
+
+		// reset counts from zero
+		assertEquals(3.0, (Double) resolve(delta, resolver, 3), DELTA);
+		assertEquals(7.0, (Double) resolve(delta, resolver, 10), DELTA);
+	}
+
+	@Test
+	public void testCounterDeltaRollover() throws Exception {
+		NativeResolver delta = NativeResolvers.create("java:delta rollover=65536");
+		EventResolver resolver = createResolver("counter");
+
+		assertNull(resolve(delta, resolver, 65500));
+		assertEquals(30.0, (Double) resolve(delta, resolver, 65530), DELTA);
+
+		// wraps around
+		assertEquals(10.0, (Double) resolve(delta, resolver, 4), DELTA);
+		assertEquals(6.0, (Double) resolve(delta, resolver, 10), DELTA);
+	}
+
+	@Test
+	public void testCounterDeltaBySource() throws Exception {
+		NativeResolver delta = NativeResolvers.create("java:delta");
+		EventResolver first = createResolver("first");
+		EventResolver second = createResolver("second");
+
+		assertNull(resolve(delta, first, 100));
+		assertNull(resolve(delta, second, 1000));
+
+		assertEquals(1.0, (Double) resolve(delta, first, 101), DELTA);
+		assertEquals(2.0, (Double) resolve(delta, second, 1002), DELTA);
+	}
+}